@@ -0,0 +1,268 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker.benchmark;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.BasicStartable;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.SoftwareProcess;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.location.docker.DockerHostLocation;
+import brooklyn.location.docker.DockerPlacementTrace;
+import brooklyn.location.docker.DockerPlacementTrace.HostState;
+import brooklyn.location.docker.DockerPlacementTrace.Request;
+import brooklyn.location.docker.benchmark.SyntheticFleet.PlacementPipeline;
+import brooklyn.location.docker.strategy.DockerAwarePlacementStrategy;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.flags.SetFromFlag;
+import brooklyn.util.flags.TypeCoercions;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Longs;
+
+/**
+ * Replays a {@link DockerPlacementTrace placement trace} against alternative strategy configurations.
+ * <p>
+ * Each configuration is run on a fresh {@link SyntheticFleet fleet} built from the host snapshot in the first
+ * record. Every request is placed by the {@link PlacementPipeline placement pipeline} and reserving a slot on the first host
+ * with room, adding a host like the largest in the snapshot when none is available. Entities are replayed as
+ * children of one synthetic parent per recorded parent, with the recorded CPU and memory requirements, so
+ * their original types are not used by affinity rules. Reports the hosts used, the packing efficiency, the
+ * decision latency and how often the same host was chosen as in the trace.
+ * <p>
+ * Run with {@code java -cp benchmarks/target/benchmarks.jar brooklyn.location.docker.benchmark.PlacementReplay
+ * trace.json maxContainers [config ...]}, where each config is a comma separated list of strategies, as
+ * {@code Class[:key=value;...]}. Class names without a package are in {@code brooklyn.location.docker.strategy}
+ * and keys are config key names or flags. With no configs the strategies recorded in the trace are replayed.
+ */
+public class PlacementReplay {
+
+    private static final String STRATEGY_PACKAGE = "brooklyn.location.docker.strategy";
+
+    private final List<Request> trace;
+    private final int maxContainers;
+
+    public PlacementReplay(List<Request> trace, int maxContainers) {
+        this.trace = trace;
+        this.maxContainers = maxContainers;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: PlacementReplay trace.json maxContainers [Class[:key=value;...][,Class...] ...]");
+            System.exit(1);
+        }
+        List<Request> trace = DockerPlacementTrace.read(new File(args[0]));
+        if (trace.isEmpty()) {
+            System.err.println("No placement decisions in " + args[0]);
+            System.exit(1);
+        }
+        PlacementReplay replay = new PlacementReplay(trace, Integer.parseInt(args[1]));
+
+        List<String> configs = Lists.newArrayList();
+        for (int i = 2; i < args.length; i++) {
+            configs.add(args[i]);
+        }
+        if (configs.isEmpty()) {
+            List<String> recorded = trace.get(0).strategies;
+            configs.add(recorded == null ? "" : Joiner.on(',').join(recorded));
+        }
+        for (String config : configs) {
+            System.out.println(config + ": " + replay.run(config));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Replay the trace with the strategies in the configuration.
+     */
+    public Result run(String config) {
+        SyntheticFleet fleet = new SyntheticFleet(trace.get(0).hosts);
+        try {
+            List<DockerAwarePlacementStrategy> strategies = Lists.newArrayList();
+            for (String spec : Splitter.on(',').omitEmptyStrings().trimResults().split(config)) {
+                strategies.add(fleet.configure(newStrategy(spec)));
+            }
+            PlacementPipeline pipeline = fleet.newPipeline(strategies);
+
+            // Hosts in the initial snapshot, by their recorded ID
+            Map<String, DockerHostLocation> recorded = Maps.newHashMap();
+            for (int i = 0; i < trace.get(0).hosts.size(); i++) {
+                recorded.put(trace.get(0).hosts.get(i).id, fleet.getLocations().get(i));
+            }
+            HostState largest = getLargest(trace.get(0).hosts);
+
+            Map<String, Entity> parents = Maps.newHashMap();
+            Result result = new Result();
+            List<Long> latencies = Lists.newArrayListWithCapacity(trace.size());
+            for (Request request : trace) {
+                Entity entity = newEntity(fleet, parents, request);
+
+                Stopwatch stopwatch = Stopwatch.createStarted();
+                List<DockerHostLocation> available = pipeline.place(fleet.getLocations(), entity);
+                DockerHostLocation chosen = null;
+                for (DockerHostLocation host : available) {
+                    if (host.reserve(maxContainers)) {
+                        chosen = host;
+                        break;
+                    }
+                }
+                latencies.add(stopwatch.elapsed(TimeUnit.NANOSECONDS));
+
+                if (chosen == null) {
+                    chosen = fleet.addHost(largest.cores == null ? 1 : largest.cores.intValue(), largest.memory == null ? 0 : largest.memory,
+                            0d, 0, largest.zone);
+                    fleet.awaitCapacityIndex(fleet.getLocations().size());
+                    chosen.reserve(maxContainers);
+                    result.added++;
+                }
+                chosen.allocate(entity);
+
+                if (request.chosen != null && recorded.containsKey(request.chosen)) {
+                    result.compared++;
+                    if (recorded.get(request.chosen).equals(chosen)) result.agreed++;
+                }
+            }
+
+            int containers = 0;
+            for (DockerHostLocation host : fleet.getLocations()) {
+                int allocated = host.getAllocatedCount();
+                if (allocated > 0) result.hosts++;
+                containers += allocated;
+            }
+            result.packing = result.hosts == 0 ? 0d : (double) containers / (result.hosts * maxContainers);
+            Collections.sort(latencies);
+            long total = 0L;
+            for (Long latency : latencies) {
+                total += latency;
+            }
+            result.meanLatencyMicros = total / 1000d / latencies.size();
+            result.p99LatencyMicros = latencies.get(Math.min(latencies.size() - 1, (int) Math.ceil(latencies.size() * 0.99d) - 1)) / 1000d;
+            return result;
+        } finally {
+            fleet.close();
+        }
+    }
+
+    /** A synthetic entity with the requirements of the request, under a parent standing in for the recorded one. */
+    private Entity newEntity(SyntheticFleet fleet, Map<String, Entity> parents, Request request) {
+        Entity parent = fleet.getApplication();
+        if (request.parentId != null) {
+            parent = parents.get(request.parentId);
+            if (parent == null) {
+                parent = fleet.getApplication().addChild(EntitySpec.create(BasicStartable.class));
+                Entities.manage(parent);
+                parents.put(request.parentId, parent);
+            }
+        }
+        Entity entity = parent.addChild(EntitySpec.create(BasicStartable.class)
+                .configure(SoftwareProcess.PROVISIONING_PROPERTIES, ImmutableMap.<String, Object>of(
+                        "minRam", request.memory, "minCores", request.cores)));
+        Entities.manage(entity);
+        return entity;
+    }
+
+    /** The host with the most cores, then the most memory. */
+    private static HostState getLargest(List<HostState> hosts) {
+        HostState largest = hosts.isEmpty() ? new HostState() : hosts.get(0);
+        for (HostState host : hosts) {
+            double cores = host.cores == null ? 0d : host.cores;
+            double largestCores = largest.cores == null ? 0d : largest.cores;
+            if (cores > largestCores || (cores == largestCores && Longs.compare(nullToZero(host.memory), nullToZero(largest.memory)) > 0)) {
+                largest = host;
+            }
+        }
+        return largest;
+    }
+
+    private static long nullToZero(Integer value) {
+        return value == null ? 0L : value;
+    }
+
+    /**
+     * Create a strategy from {@code Class[:key=value;...]}.
+     */
+    @SuppressWarnings("unchecked")
+    static DockerAwarePlacementStrategy newStrategy(String spec) {
+        List<String> parts = ImmutableList.copyOf(Splitter.on(':').limit(2).trimResults().split(spec));
+        String type = parts.get(0).contains(".") ? parts.get(0) : STRATEGY_PACKAGE + "." + parts.get(0);
+        try {
+            Class<?> clazz = Class.forName(type);
+            DockerAwarePlacementStrategy strategy = (DockerAwarePlacementStrategy) clazz.newInstance();
+            if (parts.size() > 1) {
+                Map<String, String> values = Splitter.on(';').omitEmptyStrings().trimResults().withKeyValueSeparator('=').split(parts.get(1));
+                for (Map.Entry<String, String> entry : values.entrySet()) {
+                    ConfigKey<Object> key = (ConfigKey<Object>) findConfigKey(clazz, entry.getKey());
+                    strategy.config().set(key, TypeCoercions.coerce(entry.getValue(), key.getType()));
+                }
+            }
+            return strategy;
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /** The static config key on the class with the given name or flag. */
+    private static ConfigKey<?> findConfigKey(Class<?> clazz, String name) throws IllegalAccessException {
+        for (Field field : clazz.getFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) || !ConfigKey.class.isAssignableFrom(field.getType())) continue;
+            ConfigKey<?> key = (ConfigKey<?>) field.get(null);
+            SetFromFlag flag = field.getAnnotation(SetFromFlag.class);
+            if (key.getName().equals(name) || (flag != null && flag.value().equals(name))) return key;
+        }
+        throw new IllegalArgumentException("No config key " + name + " on " + clazz.getName());
+    }
+
+    /**
+     * The outcome of replaying a trace.
+     */
+    public static class Result {
+        /** Hosts with containers after the replay. */
+        public int hosts;
+        /** Hosts added because no host was available. */
+        public int added;
+        /** Containers as a fraction of the slots on the hosts used. */
+        public double packing;
+        public double meanLatencyMicros;
+        public double p99LatencyMicros;
+        /** Decisions whose recorded host was in the initial snapshot. */
+        public int compared;
+        /** Decisions choosing the same host as recorded. */
+        public int agreed;
+
+        @Override
+        public String toString() {
+            return String.format("hosts=%d added=%d packing=%.3f latency mean=%.1fus p99=%.1fus agreement=%d/%d",
+                    hosts, added, packing, meanLatencyMicros, p99LatencyMicros, agreed, compared);
+        }
+    }
+
+}
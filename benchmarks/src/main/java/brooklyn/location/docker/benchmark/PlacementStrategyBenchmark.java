@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import brooklyn.location.docker.DockerHostLocation;
+import brooklyn.location.docker.benchmark.SyntheticFleet.PlacementPipeline;
+import brooklyn.location.docker.strategy.BinPackingPlacementStrategy;
+import brooklyn.location.docker.strategy.DockerAwarePlacementStrategy;
+import brooklyn.location.docker.strategy.ForecastCpuUsagePlacementStrategy;
+import brooklyn.location.docker.strategy.LeastContainersPlacementStrategy;
+import brooklyn.location.docker.strategy.LowestCpuUsagePlacementStrategy;
+import brooklyn.location.docker.strategy.MaxContainersPlacementStrategy;
+import brooklyn.location.docker.strategy.ProvisioningFlagsPlacementStrategy;
+import brooklyn.location.docker.strategy.affinity.DockerAffinityRuleStrategy;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Benchmarks {@link DockerAwarePlacementStrategy#filterLocations(List, brooklyn.entity.Entity)} for
+ * individual strategies, and the full {@link PlacementPipeline placement pipeline} of the infrastructure,
+ * over {@link SyntheticFleet synthetic fleets} of hosts.
+ * <p>
+ * Run with {@code java -jar benchmarks/target/benchmarks.jar PlacementStrategyBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PlacementStrategyBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int hosts;
+
+    private SyntheticFleet fleet;
+    private List<DockerHostLocation> locations;
+    private LeastContainersPlacementStrategy leastContainers;
+    private LowestCpuUsagePlacementStrategy lowestCpuUsage;
+    private DockerAffinityRuleStrategy affinityRules;
+    private ProvisioningFlagsPlacementStrategy provisioningFlags;
+    private BinPackingPlacementStrategy binPacking;
+    private ForecastCpuUsagePlacementStrategy forecastCpuUsage;
+    private PlacementPipeline pipeline;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fleet = new SyntheticFleet(hosts, 42L);
+        locations = fleet.getLocations();
+        leastContainers = fleet.configure(new LeastContainersPlacementStrategy());
+        lowestCpuUsage = fleet.configure(new LowestCpuUsagePlacementStrategy());
+        affinityRules = fleet.configure(new DockerAffinityRuleStrategy());
+        provisioningFlags = fleet.configure(new ProvisioningFlagsPlacementStrategy());
+        binPacking = fleet.configure(new BinPackingPlacementStrategy());
+        forecastCpuUsage = fleet.configure(new ForecastCpuUsagePlacementStrategy());
+        MaxContainersPlacementStrategy maxContainers = fleet.configure(new MaxContainersPlacementStrategy());
+        maxContainers.config().set(MaxContainersPlacementStrategy.DOCKER_CONTAINER_CLUSTER_MAX_SIZE, 8);
+        pipeline = fleet.newPipeline(ImmutableList.<DockerAwarePlacementStrategy>of(
+                maxContainers, affinityRules, provisioningFlags, leastContainers, binPacking));
+
+        // Every stage of the chain must have hosts to work on, or the benchmark measures an empty pipeline
+        if (fullChain().isEmpty()) {
+            throw new IllegalStateException(String.format("No hosts left by the placement pipeline for %d hosts", hosts));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (fleet != null) fleet.close();
+    }
+
+    @Benchmark
+    public List<DockerHostLocation> leastContainers() {
+        return leastContainers.filterLocations(locations, fleet.getContext());
+    }
+
+    @Benchmark
+    public List<DockerHostLocation> lowestCpuUsage() {
+        return lowestCpuUsage.filterLocations(locations, fleet.getContext());
+    }
+
+    @Benchmark
+    public List<DockerHostLocation> affinityRules() {
+        return affinityRules.filterLocations(locations, fleet.getContext());
+    }
+
+    @Benchmark
+    public List<DockerHostLocation> provisioningFlags() {
+        return provisioningFlags.filterLocations(locations, fleet.getContext());
+    }
+
+    @Benchmark
+    public List<DockerHostLocation> binPacking() {
+        return binPacking.filterLocations(locations, fleet.getContext());
+    }
+
+    @Benchmark
+    public List<DockerHostLocation> forecastCpuUsage() {
+        return forecastCpuUsage.filterLocations(locations, fleet.getContext());
+    }
+
+    /** The placement pipeline of the infrastructure, filtering with each strategy then ranking by weighted score. */
+    @Benchmark
+    public List<DockerHostLocation> fullChain() {
+        return pipeline.place(locations, fleet.getContext());
+    }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.BasicApplication;
+import brooklyn.entity.basic.BasicEntity;
+import brooklyn.entity.basic.BasicStartable;
+import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.EntityLocal;
+import brooklyn.entity.basic.SoftwareProcess;
+import brooklyn.entity.container.docker.DockerHost;
+import brooklyn.entity.container.docker.DockerInfrastructure;
+import brooklyn.entity.container.policy.DockerHostCapacityIndex;
+import brooklyn.entity.group.DynamicCluster;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.location.LocationSpec;
+import brooklyn.location.MachineDetails;
+import brooklyn.location.basic.BasicHardwareDetails;
+import brooklyn.location.basic.BasicMachineDetails;
+import brooklyn.location.basic.BasicOsDetails;
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.location.docker.DockerHostLocation;
+import brooklyn.location.docker.DockerLocation;
+import brooklyn.location.docker.DockerPlacementTrace;
+import brooklyn.location.docker.DockerPlacementTrace.HostState;
+import brooklyn.location.docker.strategy.DockerAwarePlacementStrategy;
+import brooklyn.location.docker.strategy.affinity.AffinityRules;
+import brooklyn.management.ManagementContextInjectable;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+/**
+ * A synthetic fleet of {@link DockerHostLocation hosts} for benchmarking placement.
+ * <p>
+ * The infrastructure, hosts and deployed entities are real Brooklyn entities in a local
+ * management context, but are never started. Container counts, CPU usage and hardware
+ * details are set directly, so no cloud or Docker daemon is needed.
+ */
+public class SyntheticFleet {
+
+    /**
+     * Entities deployed on each host. Every host has a {@link BasicApplication}, and every other host also
+     * has a {@link BasicStartable}, the type of the {@link #getContext() context}, so its {@code NOT TYPE}
+     * affinity rule rejects half the hosts and the later strategies still have hosts to work on.
+     */
+    public static final int ENTITIES_PER_HOST = 2;
+
+    private final LocalManagementContext managementContext;
+    private final BasicApplication application;
+    private final DockerInfrastructure infrastructure;
+    private final DockerLocation dockerLocation;
+    private final List<DockerHostLocation> locations = Lists.newArrayList();
+    private final Entity context;
+
+    public SyntheticFleet(int size, long seed) {
+        this();
+        Random random = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            DockerHostLocation location = addHost(2 + random.nextInt(7), 4096 * (1 + random.nextInt(8)), random.nextDouble(), random.nextInt(9), null);
+            for (int j = 0; j < ENTITIES_PER_HOST; j++) {
+                Class<? extends Entity> type = j % 2 == 1 ? BasicApplication.class : i % 2 == 0 ? BasicStartable.class : BasicEntity.class;
+                Entity deployed = application.addChild(EntitySpec.create(type)
+                        .configure(SoftwareProcess.PROVISIONING_PROPERTIES, ImmutableMap.<String, Object>of("minRam", 256, "minCores", 1))
+                        .location(location));
+                Entities.manage(deployed);
+            }
+        }
+        awaitCapacityIndex(size);
+    }
+
+    /**
+     * A fleet of hosts matching a snapshot from a {@link DockerPlacementTrace placement trace}.
+     */
+    public SyntheticFleet(List<HostState> hosts) {
+        this();
+        for (HostState state : hosts) {
+            addHost(state.cores == null ? 1 : state.cores.intValue(), state.memory == null ? 0 : state.memory,
+                    state.cpuUsage == null ? 0d : state.cpuUsage, state.containers, state.zone);
+        }
+        awaitCapacityIndex(hosts.size());
+    }
+
+    private SyntheticFleet() {
+        managementContext = new LocalManagementContext(BrooklynProperties.Factory.newEmpty());
+        application = ApplicationBuilder.newManagedApp(EntitySpec.create(BasicApplication.class), managementContext);
+
+        infrastructure = application.addChild(EntitySpec.create(DockerInfrastructure.class)
+                .configure(DockerInfrastructure.DOCKER_HOST_CLUSTER_MIN_SIZE, 0));
+        Entities.manage(infrastructure);
+        dockerLocation = managementContext.getLocationManager().createLocation(LocationSpec.create(DockerLocation.class)
+                .configure("owner", infrastructure)
+                .configure("strategies", ImmutableList.<DockerAwarePlacementStrategy>of()));
+
+        context = application.addChild(EntitySpec.create(BasicStartable.class)
+                .configure(AffinityRules.AFFINITY_RULES, ImmutableList.of("NOT TYPE"))
+                .configure(SoftwareProcess.PROVISIONING_PROPERTIES, ImmutableMap.<String, Object>of("minRam", 1024, "minCores", 1)));
+        Entities.manage(context);
+    }
+
+    /**
+     * Add a host to the fleet, with the given hardware, CPU usage, container count and zone.
+     */
+    public DockerHostLocation addHost(int cpuCount, int ram, double cpuUsage, int containers, String zone) {
+        int i = locations.size();
+        DynamicCluster cluster = infrastructure.getDockerHostCluster();
+        DockerHost host = cluster.addChild(EntitySpec.create(DockerHost.class)
+                .configure(DockerHost.DOCKER_INFRASTRUCTURE, infrastructure)
+                .configure(DockerHost.DOCKER_HOST_ZONE, zone));
+        Entities.manage(host);
+
+        SshMachineLocation machine = managementContext.getLocationManager().createLocation(LocationSpec.create(StubMachineLocation.class)
+                .configure("address", "10.0." + (i / 256) + "." + (i % 256))
+                .configure(StubMachineLocation.CPU_COUNT, cpuCount)
+                .configure(StubMachineLocation.RAM, ram));
+        DockerHostLocation location = managementContext.getLocationManager().createLocation(LocationSpec.create(DockerHostLocation.class)
+                .parent(dockerLocation)
+                .configure("owner", host)
+                .configure("machine", machine));
+        ((EntityLocal) host).setAttribute(DockerHost.DYNAMIC_LOCATION, location);
+        ((EntityLocal) host).setAttribute(DockerHost.CPU_USAGE, cpuUsage);
+
+        // Host container counts are read from the members of the container cluster
+        DynamicCluster containerCluster = host.getDockerContainerCluster();
+        for (int j = 0; j < containers; j++) {
+            Entity container = containerCluster.addChild(EntitySpec.create(BasicEntity.class));
+            Entities.manage(container);
+            containerCluster.addMember(container);
+        }
+        cluster.addMember(host);
+        locations.add(location);
+        return location;
+    }
+
+    /**
+     * Sensor updates reach the capacity index asynchronously, so wait until it has seen every host.
+     *
+     * @throws IllegalStateException if the index has not seen every host within a minute
+     */
+    public void awaitCapacityIndex(int size) {
+        DockerHostCapacityIndex index = dockerLocation.getCapacityIndex().get();
+        long deadline = System.currentTimeMillis() + Duration.ONE_MINUTE.toMilliseconds();
+        while (index.size() < size) {
+            if (System.currentTimeMillis() >= deadline) {
+                throw new IllegalStateException(String.format("Capacity index has %d of %d hosts after %s", index.size(), size, Duration.ONE_MINUTE));
+            }
+            Time.sleep(Duration.millis(10));
+        }
+    }
+
+    /**
+     * A {@link PlacementPipeline pipeline} for the fleet, placing with the given strategies as the infrastructure would.
+     */
+    public PlacementPipeline newPipeline(List<DockerAwarePlacementStrategy> strategies) {
+        return managementContext.getLocationManager().createLocation(LocationSpec.create(PlacementPipeline.class)
+                .configure("owner", infrastructure)
+                .configure("strategies", strategies));
+    }
+
+    /** Prepare a strategy for use against this fleet. */
+    public <T extends DockerAwarePlacementStrategy> T configure(T strategy) {
+        strategy.config().set(DockerAwarePlacementStrategy.DOCKER_INFRASTRUCTURE, infrastructure);
+        ((ManagementContextInjectable) strategy).injectManagementContext(managementContext);
+        return strategy;
+    }
+
+    public List<DockerHostLocation> getLocations() {
+        return locations;
+    }
+
+    /** The application the synthetic entities belong to. */
+    public BasicApplication getApplication() {
+        return application;
+    }
+
+    /** The entity being placed. */
+    public Entity getContext() {
+        return context;
+    }
+
+    public void close() {
+        Entities.destroyAll(managementContext);
+    }
+
+    /**
+     * A {@link DockerLocation} exposing its placement pipeline, where each strategy filters the
+     * hosts in turn and the remaining hosts are ranked by the weighted scores of the scoring strategies.
+     */
+    public static class PlacementPipeline extends DockerLocation {
+
+        public PlacementPipeline() {
+        }
+
+        public PlacementPipeline(Map<?,?> properties) {
+            super(properties);
+        }
+
+        public List<DockerHostLocation> place(List<DockerHostLocation> hosts, Entity entity) {
+            return filterDockerHostLocations(hosts, entity);
+        }
+    }
+
+    /**
+     * An {@link SshMachineLocation} with fixed hardware details, that never connects.
+     */
+    public static class StubMachineLocation extends SshMachineLocation {
+
+        public static final ConfigKey<Integer> CPU_COUNT = ConfigKeys.newIntegerConfigKey("stub.cpuCount");
+        public static final ConfigKey<Integer> RAM = ConfigKeys.newIntegerConfigKey("stub.ram");
+
+        public StubMachineLocation() {
+        }
+
+        public StubMachineLocation(Map<?,?> properties) {
+            super(properties);
+        }
+
+        @Override
+        public MachineDetails getMachineDetails() {
+            return new BasicMachineDetails(new BasicHardwareDetails(config().get(CPU_COUNT), config().get(RAM)), BasicOsDetails.Factory.ANONYMOUS_LINUX);
+        }
+    }
+}
@@ -31,6 +31,7 @@ import brooklyn.location.docker.strategy.DockerAwarePlacementStrategy;
 import brooklyn.util.flags.TypeCoercions;
 import brooklyn.util.internal.ssh.SshTool;
 import brooklyn.util.javalang.Reflections;
+import brooklyn.util.time.Duration;
 
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
@@ -84,6 +85,33 @@ public class DockerAttributes {
     public static final ConfigKey<Boolean> MANAGED = ConfigKeys.newBooleanConfigKey(
             "docker.container.managed", "Set to false if the container is not managed by Brooklyn and Clocker", Boolean.TRUE);
 
+    public static final ConfigKey<Integer> DOCKER_CONTAINER_POOL_SIZE = ConfigKeys.newIntegerConfigKey(
+            "docker.container.pool.size", "Number of pre-created containers to keep on each host for each pooled image", 0);
+
+    public static final ConfigKey<Integer> DOCKER_CONTAINER_POOL_IMAGES = ConfigKeys.newIntegerConfigKey(
+            "docker.container.pool.images", "Maximum number of the most used images to pool containers for on each host", 2);
+
+    public static final ConfigKey<Boolean> DOCKER_CONTAINER_POOL_PAUSED = ConfigKeys.newBooleanConfigKey(
+            "docker.container.pool.paused", "Pause pooled containers until they are claimed", Boolean.FALSE);
+
+    public static final ConfigKey<Integer> DOCKER_HOST_DISK_CAPACITY = ConfigKeys.newIntegerConfigKey(
+            "docker.host.disk.capacity", "Disk capacity of each Docker host in GB for placement, unlimited if not set");
+
+    public static final ConfigKey<Integer> DOCKER_HOST_PORT_CAPACITY = ConfigKeys.newIntegerConfigKey(
+            "docker.host.ports.capacity", "Number of ports each Docker host can forward to containers for placement, unlimited if not set");
+
+    public static final ConfigKey<Duration> DOCKER_HOST_LOAD_SETTLE_PERIOD = ConfigKeys.newConfigKey(Duration.class,
+            "docker.host.load.settle", "Time after placement for the CPU usage of a new container to show in the Docker host load", Duration.minutes(2));
+
+    public static final ConfigKey<Boolean> DOCKER_CONTAINER_STATELESS = ConfigKeys.newBooleanConfigKey(
+            "docker.container.stateless", "Whether an entity can be moved to a new container by replacing it in its cluster", Boolean.FALSE);
+
+    public static final AttributeSensorAndConfigKey<Duration, Duration> DOCKER_INFRASTRUCTURE_LATENCY = ConfigKeys.newSensorAndConfigKey(Duration.class,
+            "docker.infrastructure.latency", "Network latency to a Docker infrastructure from its clients, for placement across a federation");
+
+    public static final ConfigKey<String> DOCKER_HOST_ZONE = ConfigKeys.newStringConfigKey(
+            "docker.host.zone", "Failure domain of each Docker host for placement, such as a rack, instead of its availability zone or region");
+
     public static final AttributeSensorAndConfigKey<Map<String, String>, Map<String, String>> DOCKER_HOST_VOLUME_MAPPING = ConfigKeys.newSensorAndConfigKey(
             new TypeToken<Map<String, String>>() { },
             "docker.host.volumes", "Host volume mapping configuration");
@@ -96,6 +124,17 @@ public class DockerAttributes {
             new TypeToken<List<DockerAwarePlacementStrategy>>() { },
             "docker.container.strategies", "Placement strategy list for Docker containers");
 
+    public static final ConfigKey<Integer> DOCKER_PLACEMENT_GANG_SIZE = ConfigKeys.newIntegerConfigKey(
+            "docker.placement.gang.size", "Number of container requests to collect for the application before placing them together, if known");
+
+    public static final ConfigKey<List<Entity>> DOCKER_PLACEMENT_PEERS = ConfigKeys.newConfigKey(
+            new TypeToken<List<Entity>>() { },
+            "docker.container.peers", "Entities this entity communicates with, to be placed on the same Docker host if possible");
+
+    public static final AttributeSensor<Map<String, Double>> DOCKER_TRAFFIC_PEERS = Sensors.newSensor(
+            new TypeToken<Map<String, Double>>() { },
+            "docker.container.traffic.peers", "Observed network traffic rate to peer entities, by entity ID");
+
     public static final AttributeSensorAndConfigKey<Entity, Entity> DOCKER_INFRASTRUCTURE = ConfigKeys.newSensorAndConfigKey(Entity.class,
             "docker.infrastructure", "The Docker infrastructure");
 
@@ -130,12 +169,48 @@ public class DockerAttributes {
     public static final AttributeSensor<Integer> DOCKER_CONTAINER_COUNT = Sensors.newIntegerSensor(
             "docker.containers.total", "Number of Docker containers");
 
+    public static final AttributeSensor<Integer> DOCKER_STANDBY_HOST_COUNT = Sensors.newIntegerSensor(
+            "docker.hosts.standby.total", "Number of standby Docker hosts");
+
+    public static final AttributeSensor<Integer> DOCKER_HOST_PROVISIONING_COUNT = Sensors.newIntegerSensor(
+            "docker.hosts.provisioning", "Number of Docker hosts being provisioned");
+
+    public static final AttributeSensor<Integer> DOCKER_HOST_DEMAND_COUNT = Sensors.newIntegerSensor(
+            "docker.hosts.demand", "Number of container requests waiting for a new Docker host");
+
+    public static final AttributeSensor<Map<String, Map<String, Double>>> DOCKER_PLACEMENT_STRATEGY_LATENCY = Sensors.newSensor(
+            new TypeToken<Map<String, Map<String, Double>>>() { },
+            "docker.placement.strategy.latency", "Latency summary in milliseconds for each placement strategy filter");
+
+    public static final AttributeSensor<Map<String, Long>> DOCKER_PLACEMENT_STRATEGY_REJECTED = Sensors.newSensor(
+            new TypeToken<Map<String, Long>>() { },
+            "docker.placement.strategy.rejected", "Total number of hosts rejected by each placement strategy");
+
+    public static final AttributeSensor<Map<String, Map<String, Double>>> DOCKER_PLACEMENT_STAGE_LATENCY = Sensors.newSensor(
+            new TypeToken<Map<String, Map<String, Double>>>() { },
+            "docker.placement.stage.latency", "Latency summary in milliseconds for each stage of obtaining a container");
+
+    public static final AttributeSensor<Long> DOCKER_OBTAIN_SUCCESS_COUNT = Sensors.newLongSensor(
+            "docker.obtain.success", "Number of containers obtained successfully");
+
+    public static final AttributeSensor<Long> DOCKER_OBTAIN_FAILURE_COUNT = Sensors.newLongSensor(
+            "docker.obtain.failure", "Number of failed attempts to obtain a container");
+
+    public static final AttributeSensor<Double> DOCKER_OBTAIN_SUCCESS_RATE = Sensors.newDoubleSensor(
+            "docker.obtain.success.perSec", "Containers obtained successfully per second");
+
+    public static final AttributeSensor<Double> DOCKER_OBTAIN_FAILURE_RATE = Sensors.newDoubleSensor(
+            "docker.obtain.failure.perSec", "Failed attempts to obtain a container per second");
+
     public static final AttributeSensor<Integer> DOCKER_IDLE_HOST_COUNT = Sensors.newIntegerSensor(
             "docker.hosts.idle", "Number of idle Docker hosts");
 
     public static final AttributeSensor<Integer> DOCKER_IDLE_CONTAINER_COUNT = Sensors.newIntegerSensor(
             "docker.containers.idle", "Number of idle Docker containers");
 
+    public static final AttributeSensor<String> DOCKER_REGISTRY_ENDPOINT = Sensors.newStringSensor(
+            "docker.registry.endpoint", "The host and port of the Docker registry for the infrastructure");
+
     private static AtomicBoolean initialized = new AtomicBoolean(false);
 
     /** Setup custom type coercions. */
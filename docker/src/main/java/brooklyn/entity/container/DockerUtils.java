@@ -21,8 +21,14 @@ import java.util.Set;
 
 import javax.annotation.Nullable;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.SoftwareProcess;
+import brooklyn.entity.container.docker.DockerHost;
+import brooklyn.entity.container.docker.DockerInfrastructure;
+import brooklyn.entity.container.docker.DockerRegistry;
 import brooklyn.entity.database.DatastoreMixins;
 import brooklyn.entity.messaging.MessageBroker;
 import brooklyn.entity.nosql.couchbase.CouchbaseCluster;
@@ -35,8 +41,10 @@ import brooklyn.location.Location;
 import brooklyn.location.LocationDefinition;
 import brooklyn.location.docker.DockerContainerLocation;
 import brooklyn.management.ManagementContext;
+import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.text.Identifiers;
 import brooklyn.util.text.Strings;
+import brooklyn.util.time.Duration;
 
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Charsets;
@@ -53,6 +61,8 @@ import com.google.common.hash.Hashing;
 
 public class DockerUtils {
 
+    private static final Logger LOG = LoggerFactory.getLogger(DockerUtils.class);
+
     /** Do not instantiate. */
     private DockerUtils() { }
 
@@ -159,6 +169,60 @@ public class DockerUtils {
         return Identifiers.makeIdFromHash(Hashing.md5().hashString(label, Charsets.UTF_8).asLong()).toLowerCase(Locale.ENGLISH);
     }
 
+    /** The name of an image in a registry, as {@code host:port/name}. */
+    public static String registryImageName(String endpoint, String imageName) {
+        return endpoint + "/" + imageName;
+    }
+
+    /**
+     * Push an image from the host to the {@link DockerRegistry registry} of its infrastructure, if there is one.
+     *
+     * @return true if the image was pushed
+     */
+    public static boolean pushImage(DockerHost host, String imageName) {
+        String endpoint = getRegistryEndpoint(host);
+        if (Strings.isBlank(endpoint)) return false;
+        String tagged = registryImageName(endpoint, imageName);
+        try {
+            host.runDockerCommand(String.format("tag -f %s:latest %s:latest", imageName, tagged));
+            host.runDockerCommandTimeout(String.format("push %s", tagged), Duration.minutes(20));
+            LOG.info("Pushed image {} from {} to registry {}", new Object[] { imageName, host, endpoint });
+            return true;
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.warn("Failed to push image " + imageName + " from " + host + " to registry " + endpoint, e);
+            return false;
+        }
+    }
+
+    /**
+     * Pull an image onto the host from the {@link DockerRegistry registry} of its infrastructure, and tag it with its
+     * original name.
+     *
+     * @return the image ID, or absent if there is no registry or it does not have the image
+     */
+    public static Optional<String> pullImage(DockerHost host, String imageName) {
+        String endpoint = getRegistryEndpoint(host);
+        if (Strings.isBlank(endpoint)) return Optional.absent();
+        String tagged = registryImageName(endpoint, imageName);
+        try {
+            host.runDockerCommandTimeout(String.format("pull %s:latest", tagged), Duration.minutes(20));
+            if (!host.getImageNamed(tagged).isPresent()) return Optional.absent();
+            host.runDockerCommand(String.format("tag -f %s:latest %s:latest", tagged, imageName));
+            LOG.info("Pulled image {} onto {} from registry {}", new Object[] { imageName, host, endpoint });
+            return host.getImageNamed(imageName);
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.debug("Failed to pull image {} onto {} from registry {}: {}", new Object[] { imageName, host, endpoint, e.getMessage() });
+            return Optional.absent();
+        }
+    }
+
+    private static String getRegistryEndpoint(DockerHost host) {
+        DockerInfrastructure infrastructure = host.getInfrastructure();
+        return infrastructure == null ? null : infrastructure.getAttribute(DockerAttributes.DOCKER_REGISTRY_ENDPOINT);
+    }
+
     public static final Predicate<Entity> sameInfrastructure(Entity entity) {
         Preconditions.checkNotNull(entity, "entity");
         return new SameInfrastructurePredicate(entity.getId());
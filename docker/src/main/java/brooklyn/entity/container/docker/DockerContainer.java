@@ -100,6 +100,10 @@ public interface DockerContainer extends BasicStartable, HasNetworkAddresses, Ha
     AttributeSensorAndConfigKey<Entity, Entity> ENTITY = ConfigKeys.newSensorAndConfigKey(Entity.class,
             "docker.container.entity", "The entity running in this Docker container");
 
+    @SetFromFlag("pooled")
+    ConfigKey<Boolean> DOCKER_CONTAINER_POOLED = ConfigKeys.newBooleanConfigKey(
+            "docker.container.pooled", "Create the container for a pool, using the entity only as a template", Boolean.FALSE);
+
     ConfigKey<String> DOCKER_CONTAINER_NAME_FORMAT = ConfigKeys.newStringConfigKey(
             "docker.container.nameFormat", "Format for generating Docker container names");
 
@@ -116,6 +120,8 @@ public interface DockerContainer extends BasicStartable, HasNetworkAddresses, Ha
     AttributeSensor<Boolean> CONTAINER_RUNNING = Sensors.newBooleanSensor("docker.container.running", "The Docker container process running status");
     AttributeSensor<Boolean> CONTAINER_PAUSED = Sensors.newBooleanSensor("docker.container.paused", "The Docker container process paused status");
 
+    AttributeSensor<Boolean> CONTAINER_POOLED = Sensors.newBooleanSensor("docker.container.pool.idle", "Whether the Docker container is waiting in a pool to be claimed");
+
     AttributeSensor<Lifecycle> SERVICE_STATE_ACTUAL = SoftwareProcess.SERVICE_STATE_ACTUAL;
 
     AttributeSensor<SshMachineLocation> SSH_MACHINE_LOCATION = Sensors.newSensor(SshMachineLocation.class, "docker.container.ssh", "The SSHable machine");
@@ -150,6 +156,13 @@ public interface DockerContainer extends BasicStartable, HasNetworkAddresses, Ha
 
     void setRunningEntity(Entity entity);
 
+    /**
+     * Claim a pooled container for an entity.
+     * <p>
+     * Links the entity to this container, attaches any SDN networks and records the port mappings for the entity.
+     */
+    void claim(Entity entity);
+
     DockerHost getDockerHost();
 
     SshMachineLocation getMachine();
@@ -121,7 +121,11 @@ public class DockerContainerImpl extends BasicStartableImpl implements DockerCon
 
         ConfigToAttributes.apply(this, DOCKER_INFRASTRUCTURE);
         ConfigToAttributes.apply(this, DOCKER_HOST);
-        ConfigToAttributes.apply(this, ENTITY);
+        if (config().get(DOCKER_CONTAINER_POOLED)) {
+            setAttribute(CONTAINER_POOLED, true);
+        } else {
+            ConfigToAttributes.apply(this, ENTITY);
+        }
     }
 
     protected void connectSensors() {
@@ -188,6 +192,24 @@ public class DockerContainerImpl extends BasicStartableImpl implements DockerCon
         setAttribute(ENTITY, entity);
     }
 
+    /**
+     * The entity used to configure the container; the running entity, or the
+     * template entity for a pooled container that has not been claimed yet.
+     */
+    private Entity getTemplateEntity() {
+        Entity entity = getRunningEntity();
+        return entity != null ? entity : config().get(ENTITY);
+    }
+
+    @Override
+    public void claim(Entity entity) {
+        LOG.info("Claiming pooled container {} for {}", getDockerContainerName(), entity);
+        setRunningEntity(entity);
+        linkEntity(entity);
+        getDynamicLocation().mapPorts(getRequiredOpenPorts(entity));
+        setAttribute(CONTAINER_POOLED, false);
+    }
+
     @Override
     public String getDockerContainerName() {
         return getAttribute(DOCKER_CONTAINER_NAME);
@@ -256,7 +278,7 @@ public class DockerContainerImpl extends BasicStartableImpl implements DockerCon
     }
 
     private DockerTemplateOptions getDockerTemplateOptions() {
-        Entity entity = getRunningEntity();
+        Entity entity = getTemplateEntity();
         DockerTemplateOptions options = new DockerTemplateOptions();
 
         // Use DockerHost hostname for the container
@@ -420,7 +442,8 @@ public class DockerContainerImpl extends BasicStartableImpl implements DockerCon
         DockerTemplateOptions options = getDockerTemplateOptions();
 
         // Check the running entity for alternative container name
-        String containerName = getRunningEntity().config().get(DOCKER_CONTAINER_NAME);
+        Entity entity = getRunningEntity();
+        String containerName = entity == null ? null : entity.config().get(DOCKER_CONTAINER_NAME);
         if (Strings.isBlank(containerName)) {
             containerName = getAttribute(DOCKER_CONTAINER_NAME);
         }
@@ -439,7 +462,7 @@ public class DockerContainerImpl extends BasicStartableImpl implements DockerCon
                 .put(LocationConfigKeys.PRIVATE_KEY_DATA, null)
                 .put(LocationConfigKeys.PRIVATE_KEY_FILE, null)
                 .put(CloudLocationConfig.WAIT_FOR_SSHABLE, false)
-                .put(JcloudsLocationConfig.INBOUND_PORTS, getRequiredOpenPorts(getRunningEntity()))
+                .put(JcloudsLocationConfig.INBOUND_PORTS, getRequiredOpenPorts(getTemplateEntity()))
                 .put(JcloudsLocation.USE_PORT_FORWARDING, true)
                 .put(JcloudsLocation.PORT_FORWARDER, subnetTier.getPortForwarderExtension())
                 .put(JcloudsLocation.PORT_FORWARDING_MANAGER, subnetTier.getPortForwardManager())
@@ -452,36 +475,10 @@ public class DockerContainerImpl extends BasicStartableImpl implements DockerCon
             JcloudsSshMachineLocation container = host.getJcloudsLocation().obtain(dockerFlags);
             String containerId = container.getNode().getId();
             setAttribute(CONTAINER_ID, containerId);
-            Entity entity = getRunningEntity();
-
-            // Link the entity to the container
-            ((EntityLocal) entity).setAttribute(DockerContainer.DOCKER_INFRASTRUCTURE, dockerHost.getInfrastructure());
-            ((EntityLocal) entity).setAttribute(DockerContainer.DOCKER_HOST, dockerHost);
-            ((EntityLocal) entity).setAttribute(DockerContainer.CONTAINER, this);
-            ((EntityLocal) entity).setAttribute(DockerContainer.CONTAINER_ID, containerId);
-
-            // If SDN is enabled, attach networks
-            if (config().get(SdnAttributes.SDN_ENABLE)) {
-                SdnAgent agent = Entities.attributeSupplierWhenReady(dockerHost, SdnAgent.SDN_AGENT).get();
-
-                // Save attached network list
-                Set<String> networks = Sets.newHashSet(entity.getApplicationId());
-                Collection<String> extra = entity.config().get(SdnAttributes.NETWORK_LIST);
-                if (extra != null) networks.addAll(extra);
-                setAttribute(SdnAttributes.ATTACHED_NETWORKS, networks);
-                ((EntityLocal) entity).setAttribute(SdnAttributes.ATTACHED_NETWORKS, networks);
-
-                // Save container addresses
-                Set<String> addresses = Sets.newHashSet();
-                for (String networkId : networks) {
-                    InetAddress address = agent.attachNetwork(containerId, networkId);
-                    addresses.add(address.getHostAddress().toString());
-                    if (networkId.equals(entity.getApplicationId())) {
-                        setAttribute(Attributes.SUBNET_ADDRESS, address.getHostAddress());
-                    }
-                }
-                setAttribute(CONTAINER_ADDRESSES, addresses);
-                ((EntityLocal) entity).setAttribute(CONTAINER_ADDRESSES, addresses);
+
+            // Link the entity, unless the container is being pooled
+            if (entity != null) {
+                linkEntity(entity);
             }
 
             // Create our wrapper location around the container
@@ -505,6 +502,43 @@ public class DockerContainerImpl extends BasicStartableImpl implements DockerCon
         }
     }
 
+    /**
+     * Link the entity to this container, and attach it to its application networks if SDN is enabled.
+     */
+    private void linkEntity(Entity entity) {
+        DockerHost dockerHost = getDockerHost();
+        String containerId = getContainerId();
+
+        ((EntityLocal) entity).setAttribute(DockerContainer.DOCKER_INFRASTRUCTURE, dockerHost.getInfrastructure());
+        ((EntityLocal) entity).setAttribute(DockerContainer.DOCKER_HOST, dockerHost);
+        ((EntityLocal) entity).setAttribute(DockerContainer.CONTAINER, this);
+        ((EntityLocal) entity).setAttribute(DockerContainer.CONTAINER_ID, containerId);
+
+        // If SDN is enabled, attach networks
+        if (config().get(SdnAttributes.SDN_ENABLE)) {
+            SdnAgent agent = Entities.attributeSupplierWhenReady(dockerHost, SdnAgent.SDN_AGENT).get();
+
+            // Save attached network list
+            Set<String> networks = Sets.newHashSet(entity.getApplicationId());
+            Collection<String> extra = entity.config().get(SdnAttributes.NETWORK_LIST);
+            if (extra != null) networks.addAll(extra);
+            setAttribute(SdnAttributes.ATTACHED_NETWORKS, networks);
+            ((EntityLocal) entity).setAttribute(SdnAttributes.ATTACHED_NETWORKS, networks);
+
+            // Save container addresses
+            Set<String> addresses = Sets.newHashSet();
+            for (String networkId : networks) {
+                InetAddress address = agent.attachNetwork(containerId, networkId);
+                addresses.add(address.getHostAddress().toString());
+                if (networkId.equals(entity.getApplicationId())) {
+                    setAttribute(Attributes.SUBNET_ADDRESS, address.getHostAddress());
+                }
+            }
+            setAttribute(CONTAINER_ADDRESSES, addresses);
+            ((EntityLocal) entity).setAttribute(CONTAINER_ADDRESSES, addresses);
+        }
+    }
+
     @Override
     public void deleteLocation() {
         DockerContainerLocation location = getDynamicLocation();
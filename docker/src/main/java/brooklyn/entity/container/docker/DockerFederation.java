@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.entity.container.docker;
+
+import java.util.List;
+
+import brooklyn.catalog.Catalog;
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.basic.BasicStartable;
+import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.entity.container.DockerAttributes;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.proxying.ImplementedBy;
+import brooklyn.event.AttributeSensor;
+import brooklyn.location.docker.FederatedDockerLocation;
+import brooklyn.location.dynamic.LocationOwner;
+import brooklyn.util.flags.SetFromFlag;
+import brooklyn.util.time.Duration;
+
+/**
+ * A federation of {@link DockerInfrastructure Docker infrastructures}, one in each location it is started in.
+ * <p>
+ * Containers are placed through a {@link FederatedDockerLocation} that picks an infrastructure and then
+ * delegates to its {@link brooklyn.location.docker.DockerLocation}. Host and container counts are aggregated
+ * across the infrastructures.
+ */
+@Catalog(name = "Docker Federation",
+        description = "A federation of Docker infrastructures across clouds or regions.",
+        iconUrl = "classpath:///docker-top-logo.png")
+@ImplementedBy(DockerFederationImpl.class)
+public interface DockerFederation extends BasicStartable, LocationOwner<FederatedDockerLocation, DockerFederation> {
+
+    @SetFromFlag("infrastructureSpec")
+    ConfigKey<EntitySpec> DOCKER_INFRASTRUCTURE_SPEC = ConfigKeys.newConfigKey(EntitySpec.class,
+            "docker.federation.infrastructureSpec", "Specification to use when creating a Docker infrastructure in each location",
+            EntitySpec.create(DockerInfrastructure.class));
+
+    @SetFromFlag("latencyTolerance")
+    ConfigKey<Duration> LATENCY_TOLERANCE = ConfigKeys.newConfigKey(Duration.class,
+            "docker.federation.latencyTolerance", "Difference in latency within which infrastructures are chosen by their free capacity",
+            Duration.millis(50));
+
+    AttributeSensor<Integer> DOCKER_HOST_COUNT = DockerAttributes.DOCKER_HOST_COUNT;
+    AttributeSensor<Integer> DOCKER_CONTAINER_COUNT = DockerAttributes.DOCKER_CONTAINER_COUNT;
+
+    List<DockerInfrastructure> getDockerInfrastructures();
+
+}
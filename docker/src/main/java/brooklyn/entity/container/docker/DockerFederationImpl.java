@@ -0,0 +1,216 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.entity.container.docker;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.enricher.Enrichers;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.Attributes;
+import brooklyn.entity.basic.BasicStartableImpl;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.EntityLocal;
+import brooklyn.entity.container.DockerUtils;
+import brooklyn.entity.machine.MachineAttributes;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.trait.Startable;
+import brooklyn.location.Location;
+import brooklyn.location.LocationDefinition;
+import brooklyn.location.basic.BasicLocationDefinition;
+import brooklyn.location.docker.DockerResolver;
+import brooklyn.location.docker.FederatedDockerLocation;
+import brooklyn.management.LocationManager;
+import brooklyn.management.ManagementContext;
+import brooklyn.management.Task;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.text.Strings;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+
+public class DockerFederationImpl extends BasicStartableImpl implements DockerFederation {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DockerFederation.class);
+
+    @Override
+    public void init() {
+        LOG.info("Starting Docker federation id {}", getId());
+        super.init();
+
+        addEnricher(Enrichers.builder()
+                .aggregating(DOCKER_HOST_COUNT)
+                .computingSum()
+                .fromChildren()
+                .publishing(DOCKER_HOST_COUNT)
+                .build());
+        addEnricher(Enrichers.builder()
+                .aggregating(DOCKER_CONTAINER_COUNT)
+                .computingSum()
+                .fromChildren()
+                .publishing(DOCKER_CONTAINER_COUNT)
+                .build());
+        addEnricher(Enrichers.builder()
+                .aggregating(MachineAttributes.AVERAGE_CPU_USAGE)
+                .computingAverage()
+                .fromChildren()
+                .publishing(MachineAttributes.AVERAGE_CPU_USAGE)
+                .build());
+    }
+
+    @Override
+    public List<DockerInfrastructure> getDockerInfrastructures() {
+        return ImmutableList.copyOf(Iterables.filter(getChildren(), DockerInfrastructure.class));
+    }
+
+    @Override
+    public FederatedDockerLocation getDynamicLocation() {
+        return (FederatedDockerLocation) getAttribute(DYNAMIC_LOCATION);
+    }
+
+    @Override
+    public boolean isLocationAvailable() {
+        return getDynamicLocation() != null;
+    }
+
+    @Override
+    public FederatedDockerLocation createLocation(Map<String, ?> flags) {
+        String locationName = config().get(LOCATION_NAME);
+        if (Strings.isBlank(locationName)) {
+            String prefix = config().get(LOCATION_NAME_PREFIX);
+            String suffix = config().get(LOCATION_NAME_SUFFIX);
+            locationName = Joiner.on("-").skipNulls().join(prefix, getId(), suffix);
+        }
+        LocationDefinition check = getManagementContext().getLocationRegistry().getDefinedLocationByName(locationName);
+        if (check != null) {
+            throw new IllegalStateException("Location " + locationName + " is already defined: " + check);
+        }
+
+        String locationSpec = String.format(DockerResolver.DOCKER_INFRASTRUCTURE_SPEC, getId()) + String.format(":(name=\"%s\")", locationName);
+        setAttribute(LOCATION_SPEC, locationSpec);
+        LocationDefinition definition = new BasicLocationDefinition(locationName, locationSpec, flags);
+        Location location = getManagementContext().getLocationRegistry().resolve(definition);
+        getManagementContext().getLocationRegistry().updateDefinedLocation(definition);
+        getManagementContext().getLocationManager().manage(location);
+
+        ManagementContext.PropertiesReloadListener listener = DockerUtils.reloadLocationListener(getManagementContext(), definition);
+        getManagementContext().addPropertiesReloadListener(listener);
+        setAttribute(Attributes.PROPERTIES_RELOAD_LISTENER, listener);
+
+        setAttribute(LOCATION_DEFINITION, definition);
+        setAttribute(DYNAMIC_LOCATION, location);
+        setAttribute(LOCATION_NAME, location.getId());
+
+        LOG.info("New Docker federation location {} created", location);
+        return (FederatedDockerLocation) location;
+    }
+
+    @Override
+    public void rebind() {
+        super.rebind();
+
+        // Reload our location definition on rebind
+        ManagementContext.PropertiesReloadListener listener = getAttribute(Attributes.PROPERTIES_RELOAD_LISTENER);
+        if (listener != null) {
+            listener.reloaded();
+        }
+    }
+
+    @Override
+    public void deleteLocation() {
+        FederatedDockerLocation location = getDynamicLocation();
+
+        if (location != null) {
+            LocationManager mgr = getManagementContext().getLocationManager();
+            if (mgr.isManaged(location)) {
+                mgr.unmanage(location);
+            }
+            final LocationDefinition definition = getAttribute(LOCATION_DEFINITION);
+            if (definition != null) {
+                getManagementContext().getLocationRegistry().removeDefinedLocation(definition.getId());
+            }
+        }
+        ManagementContext.PropertiesReloadListener listener = getAttribute(Attributes.PROPERTIES_RELOAD_LISTENER);
+        if (listener != null) {
+            getManagementContext().removePropertiesReloadListener(listener);
+        }
+
+        setAttribute(LOCATION_DEFINITION, null);
+        setAttribute(DYNAMIC_LOCATION, null);
+        setAttribute(LOCATION_NAME, null);
+    }
+
+    /**
+     * Start a child {@link DockerInfrastructure} in each location, unless one already exists there.
+     */
+    @Override
+    public void start(Collection<? extends Location> locations) {
+        setAttribute(SERVICE_UP, Boolean.FALSE);
+        addLocations(locations);
+
+        List<Task<?>> tasks = MutableList.of();
+        for (Location location : locations) {
+            DockerInfrastructure infrastructure = getDockerInfrastructure(location);
+            if (infrastructure == null) {
+                EntitySpec<?> spec = config().get(DOCKER_INFRASTRUCTURE_SPEC);
+                infrastructure = (DockerInfrastructure) addChild(spec);
+                ((EntityLocal) infrastructure).setDisplayName("Docker Infrastructure (" + location.getDisplayName() + ")");
+                Entities.manage(infrastructure);
+            }
+            LOG.info("Starting Docker infrastructure {} in {}", infrastructure, location);
+            tasks.add(Entities.invokeEffector(this, infrastructure, Startable.START, ImmutableMap.of("locations", ImmutableList.of(location))));
+        }
+        for (Task<?> task : tasks) {
+            task.getUnchecked();
+        }
+
+        createLocation(config().get(LOCATION_FLAGS));
+
+        setAttribute(SERVICE_UP, Boolean.TRUE);
+    }
+
+    @Override
+    public void stop() {
+        setAttribute(SERVICE_UP, Boolean.FALSE);
+        Duration timeout = config().get(DockerInfrastructure.SHUTDOWN_TIMEOUT);
+
+        try {
+            List<DockerInfrastructure> infrastructures = getDockerInfrastructures();
+            LOG.debug("Stopping infrastructures: {}", Iterables.toString(infrastructures));
+            Entities.invokeEffectorList(this, infrastructures, Startable.STOP).get(timeout);
+        } catch (Exception e) {
+            LOG.warn("Error stopping infrastructures", e);
+        }
+
+        deleteLocation();
+    }
+
+    private DockerInfrastructure getDockerInfrastructure(Location location) {
+        for (DockerInfrastructure infrastructure : getDockerInfrastructures()) {
+            if (Iterables.any(infrastructure.getLocations(), Predicates.equalTo(location))) return infrastructure;
+        }
+        return null;
+    }
+
+}
@@ -111,6 +111,9 @@ public interface DockerHost extends MachineEntity, Resizable, HasShortName, Loca
     @SetFromFlag("password")
     ConfigKey<String> DOCKER_PASSWORD = DockerAttributes.DOCKER_PASSWORD;
 
+    @SetFromFlag("zone")
+    ConfigKey<String> DOCKER_HOST_ZONE = DockerAttributes.DOCKER_HOST_ZONE;
+
     @SetFromFlag("affinityRules")
     ConfigKey<List<String>> DOCKER_HOST_AFFINITY_RULES = AffinityRules.AFFINITY_RULES;
 
@@ -125,6 +128,10 @@ public interface DockerHost extends MachineEntity, Resizable, HasShortName, Loca
             "docker.host.scanInterval", "Interval between scans of Docker containers", Duration.TEN_SECONDS);
     AttributeSensor<Void> SCAN = Sensors.newSensor(Void.class, "docker.host.scan", "Notification of host scan");
 
+    ConfigKey<Duration> IMAGE_SCAN_INTERVAL = ConfigKeys.newConfigKey(Duration.class,
+            "docker.host.imageScanInterval", "Interval between reconciling the image catalog with the Docker images on the host", Duration.ONE_MINUTE);
+    AttributeSensor<Integer> IMAGE_COUNT = Sensors.newIntegerSensor("docker.host.imageCount", "Number of tagged images in the image catalog");
+
     AttributeSensor<DynamicCluster> DOCKER_CONTAINER_CLUSTER = Sensors.newSensor(DynamicCluster.class,
             "docker.container.cluster", "The cluster of Docker containers");
     AttributeSensor<JcloudsLocation> JCLOUDS_DOCKER_LOCATION = Sensors.newSensor(JcloudsLocation.class,
@@ -156,9 +163,17 @@ public interface DockerHost extends MachineEntity, Resizable, HasShortName, Loca
 
     /**
      * @return an Optional containing the ID of the named and tagged image.
+     * <p>
+     * This reads the in-memory image catalog of the host, which is loaded on first use, updated for the
+     * images named by Docker commands that change images, and reconciled every {@link #IMAGE_SCAN_INTERVAL}.
      */
     Optional<String> getImageNamed(String name, String tag);
 
+    /**
+     * Reload the image catalog, after images are changed other than by {@link #runDockerCommand(String)}.
+     */
+    void scanImages();
+
     MethodEffector<String> CREATE_SSHABLE_IMAGE = new MethodEffector<String>(DockerHost.class, "createSshableImage");
     MethodEffector<String> RUN_DOCKER_COMMAND = new MethodEffector<String>(DockerHost.class, "runDockerCommand");
     MethodEffector<String> RUN_DOCKER_COMMAND_TIMEOUT = new MethodEffector<String>(DockerHost.class, "runDockerCommandTimeout");
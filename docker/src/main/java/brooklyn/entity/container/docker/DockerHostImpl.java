@@ -15,7 +15,10 @@
  */
 package brooklyn.entity.container.docker;
 
+import java.io.File;
+import java.io.InputStream;
 import java.net.URI;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -60,6 +63,7 @@ import brooklyn.location.basic.BasicLocationDefinition;
 import brooklyn.location.basic.Machines;
 import brooklyn.location.basic.SshMachineLocation;
 import brooklyn.location.docker.DockerHostLocation;
+import brooklyn.location.docker.DockerImageCache;
 import brooklyn.location.docker.DockerLocation;
 import brooklyn.location.docker.DockerResolver;
 import brooklyn.location.jclouds.JcloudsLocation;
@@ -77,12 +81,16 @@ import brooklyn.policy.PolicySpec;
 import brooklyn.policy.ha.ServiceFailureDetector;
 import brooklyn.policy.ha.ServiceReplacer;
 import brooklyn.policy.ha.ServiceRestarter;
+import brooklyn.util.ResourceUtils;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.collections.QuorumCheck.QuorumChecks;
 import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.file.ArchiveUtils.ArchiveType;
 import brooklyn.util.guava.Maybe;
 import brooklyn.util.net.Cidr;
+import brooklyn.util.net.Urls;
 import brooklyn.util.ssh.BashCommands;
+import brooklyn.util.stream.Streams;
 import brooklyn.util.task.DynamicTasks;
 import brooklyn.util.task.Tasks;
 import brooklyn.util.task.system.ProcessTaskWrapper;
@@ -100,6 +108,9 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
  * The host running the Docker service.
@@ -110,6 +121,24 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
 
     private transient FunctionFeed scan;
 
+    /** Docker commands that add, retag or remove images, after which the images they name are updated in the catalog. */
+    private static final Set<String> IMAGE_COMMANDS = ImmutableSet.of("build", "commit", "tag", "pull", "load", "import", "rmi");
+
+    /** Options of image commands that take a value, which is not an image name unless it is a tag. */
+    private static final Set<String> IMAGE_COMMAND_VALUE_OPTIONS = ImmutableSet.of("-a", "--author", "-m", "--message", "-c", "--change");
+
+    private static final CharMatcher HEX = CharMatcher.anyOf("0123456789abcdef");
+
+    /** Image IDs by {@code name:tag}, loaded on first use and replaced rather than modified. */
+    private transient volatile Map<String, String> images;
+
+    /** Images updated while a full scan is running, which the scan must not overwrite. */
+    private transient Set<String> updatedImages;
+
+    private transient Object imagesMutex = new Object[0];
+
+    private transient Object scanMutex = new Object[0];
+
     @Override
     public void init() {
         LOG.info("Starting Docker host id {}", getId());
@@ -318,19 +347,99 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
 
     /** {@inheritDoc} */
     @Override
-    public String createSshableImage(String dockerFile, String name) {
-        String imageId = getDriver().buildImage(dockerFile, name);
+    public String createSshableImage(final String dockerFile, final String name) {
+        Callable<String> build = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                Optional<String> pulled = DockerUtils.pullImage(DockerHostImpl.this, name);
+                if (pulled.isPresent()) return pulled.get();
+                String imageId = getDriver().buildImage(dockerFile, name);
+                DockerUtils.pushImage(DockerHostImpl.this, name);
+                return imageId;
+            }
+        };
+        Optional<DockerImageCache> cache = getImageCache();
+        String imageId;
+        if (cache.isPresent()) {
+            String content = getDockerfileContent(dockerFile);
+            Optional<String> base = DockerImageCache.getBaseImage(content);
+            String key = DockerImageCache.key(content, base.isPresent() ? getImageId(base.get()) : null,
+                    getResourceContent(DockerUtils.SSHD_DOCKERFILE), name,
+                    getInfrastructure().config().get(DockerInfrastructure.DOCKERFILE_SUBSTITUTIONS));
+            imageId = cache.get().getImage(this, key, name, build);
+        } else {
+            try {
+                imageId = build.call();
+            } catch (Exception e) {
+                throw Exceptions.propagate(e);
+            }
+        }
         LOG.debug("Successfully created image {} ({})", new Object[] { imageId, name });
         return imageId;
     }
 
     @Override
-    public String layerSshableImageOn(String baseImage, String tag) {
-        String imageId = getDriver().layerSshableImageOn(baseImage, tag);
+    public String layerSshableImageOn(final String baseImage, final String tag) {
+        Callable<String> build = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return getDriver().layerSshableImageOn(baseImage, tag);
+            }
+        };
+        Optional<DockerImageCache> cache = getImageCache();
+        String imageId;
+        if (cache.isPresent()) {
+            String key = DockerImageCache.key(getResourceContent(DockerUtils.SSHD_DOCKERFILE), getImageId(baseImage + ":" + tag));
+            imageId = cache.get().getImage(this, key, baseImage, build);
+        } else {
+            imageId = getDriver().layerSshableImageOn(baseImage, tag);
+        }
         LOG.debug("Successfully created SSHable image {} from {}", imageId, baseImage);
         return imageId;
     }
 
+    /**
+     * The {@link DockerImageCache image cache} shared by the hosts in the infrastructure, if enabled.
+     */
+    private Optional<DockerImageCache> getImageCache() {
+        DockerInfrastructure infrastructure = getInfrastructure();
+        if (infrastructure == null || infrastructure.getDynamicLocation() == null) return Optional.absent();
+        return infrastructure.getDynamicLocation().getImageCache();
+    }
+
+    /** The Dockerfile template, or the content hash of an archive or directory. */
+    private String getDockerfileContent(String dockerFile) {
+        if (Urls.isDirectory(dockerFile)) {
+            return DockerImageCache.hash(new File(dockerFile.startsWith("file://") ? dockerFile.substring("file://".length()) : dockerFile));
+        }
+        if (!ArchiveType.UNKNOWN.equals(ArchiveType.of(dockerFile))) {
+            InputStream archive = ResourceUtils.create(this).getResourceFromUrl(dockerFile);
+            try {
+                return DockerImageCache.hash(archive);
+            } finally {
+                Streams.closeQuietly(archive);
+            }
+        }
+        return getResourceContent(dockerFile);
+    }
+
+    /**
+     * The ID of an image on this host, or its name if it is not here yet, so images built on
+     * different base images are cached separately.
+     */
+    private String getImageId(String image) {
+        int slash = image.lastIndexOf('/');
+        int colon = image.lastIndexOf(':');
+        Optional<String> imageId = colon > slash
+                ? getImageNamed(image.substring(0, colon), image.substring(colon + 1))
+                : getImageNamed(image);
+        return imageId.or(image);
+    }
+
+    private String getResourceContent(String url) {
+        return ResourceUtils.create(this).getResourceAsString(url);
+    }
+
     /** {@inheritDoc} */
     @Override
     public String runDockerCommand(String command) {
@@ -343,9 +452,128 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
         // FIXME Set DOCKER_OPTS values in command-line for when running on localhost
         String stdout = execCommandTimeout(BashCommands.sudo(String.format("docker %s", command)), timeout);
         if (LOG.isDebugEnabled()) LOG.debug("Successfully executed Docker {}: {}", Strings.getFirstWord(command), Strings.getFirstLine(stdout));
+        if (images != null && IMAGE_COMMANDS.contains(Strings.getFirstWord(command))) updateImages(command, stdout);
         return stdout;
     }
 
+    /**
+     * Update the catalog entries for the images named by a Docker command, looking up only those images.
+     * If the images cannot be worked out from the command the catalog is discarded, and loaded again when
+     * it is next used.
+     */
+    private void updateImages(String command, String stdout) {
+        Optional<List<String>> arguments = imageArguments(command, stdout);
+        if (!arguments.isPresent()) {
+            LOG.debug("Discarding image catalog on {} after: docker {}", this, command);
+            synchronized (imagesMutex) {
+                images = null;
+            }
+            return;
+        }
+        boolean removed = "rmi".equals(Strings.getFirstWord(command));
+        Map<String, Optional<String>> changes = Maps.newLinkedHashMap();
+        for (String image : arguments.get()) {
+            String key = imageKey(image);
+            if (removed) {
+                changes.put(key, Optional.<String>absent());
+            } else {
+                String id = Strings.getFirstWord(execCommandTimeout(BashCommands.sudo("docker inspect --format {{.Id}} " + key), Duration.ONE_MINUTE));
+                changes.put(key, Strings.isBlank(id) ? Optional.<String>absent() : Optional.of(id));
+            }
+        }
+
+        int size;
+        synchronized (imagesMutex) {
+            if (images == null) return;
+            Map<String, String> catalog = Maps.newHashMap(images);
+            if (removed) {
+                // An image can also be removed by ID, which removes all its tags
+                for (String image : arguments.get()) {
+                    String id = image.startsWith("sha256:") ? image.substring("sha256:".length()) : image;
+                    if (id.length() < 12 || !HEX.matchesAllOf(id)) continue;
+                    for (Iterator<Map.Entry<String, String>> entries = catalog.entrySet().iterator(); entries.hasNext();) {
+                        Map.Entry<String, String> entry = entries.next();
+                        if (entry.getValue().startsWith(id) || entry.getValue().startsWith("sha256:" + id)) {
+                            entries.remove();
+                            if (updatedImages != null) updatedImages.add(entry.getKey());
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<String, Optional<String>> change : changes.entrySet()) {
+                if (change.getValue().isPresent()) {
+                    catalog.put(change.getKey(), change.getValue().get());
+                } else {
+                    catalog.remove(change.getKey());
+                }
+                if (updatedImages != null) updatedImages.add(change.getKey());
+            }
+            images = catalog;
+            size = catalog.size();
+        }
+        setAttribute(IMAGE_COUNT, size);
+        LOG.debug("Updated images {} on {}", changes.keySet(), this);
+    }
+
+    /**
+     * The images named by a Docker command that adds, retags or removes images, as given on the command line,
+     * or named as loaded in its output.
+     *
+     * @return the images, which may be empty if only untagged images changed, or absent if they cannot be worked out
+     */
+    static Optional<List<String>> imageArguments(String command, String stdout) {
+        if (command.indexOf('"') >= 0 || command.indexOf('\'') >= 0) return Optional.absent();
+        List<String> words = Splitter.on(CharMatcher.WHITESPACE).omitEmptyStrings().splitToList(command);
+        if (words.isEmpty()) return Optional.absent();
+        String action = words.get(0);
+        List<String> tags = Lists.newArrayList();
+        List<String> positional = Lists.newArrayList();
+        for (int i = 1; i < words.size(); i++) {
+            String word = words.get(i);
+            if (word.equals("-t") || word.equals("--tag")) {
+                if (++i < words.size()) tags.add(words.get(i));
+            } else if (word.startsWith("-t=") || word.startsWith("--tag=")) {
+                tags.add(word.substring(word.indexOf('=') + 1));
+            } else if (word.equals("-a") && action.equals("pull") || word.startsWith("--all-tags")) {
+                return Optional.absent();
+            } else if (IMAGE_COMMAND_VALUE_OPTIONS.contains(word)) {
+                i++;
+            } else if (!word.startsWith("-")) {
+                positional.add(word);
+            }
+        }
+
+        List<String> result = Lists.newArrayList();
+        if (action.equals("build")) {
+            result.addAll(tags);
+        } else if (action.equals("commit") || action.equals("tag") || action.equals("import")) {
+            // The container, source image or file comes first
+            if (positional.size() > 1) result.add(positional.get(1));
+        } else if (action.equals("pull") || action.equals("rmi")) {
+            result.addAll(positional);
+        } else if (action.equals("load")) {
+            for (String line : Splitter.on(CharMatcher.anyOf("\r\n")).omitEmptyStrings().split(stdout == null ? "" : stdout)) {
+                if (line.startsWith("Loaded image: ")) result.add(line.substring("Loaded image: ".length()).trim());
+            }
+            if (result.isEmpty()) return Optional.absent();
+        } else {
+            return Optional.absent();
+        }
+        for (String image : result) {
+            if (image.contains("@")) return Optional.absent();
+        }
+        return Optional.of(result);
+    }
+
+    /**
+     * The {@code name:tag} key of an image in the catalog, with the {@code latest} tag if none is given.
+     */
+    static String imageKey(String image) {
+        int slash = image.lastIndexOf('/');
+        int colon = image.lastIndexOf(':');
+        return colon > slash ? image : image + ":latest";
+    }
+
     /** {@inheritDoc} */
     @Override
     public String deployArchive(String url) {
@@ -408,8 +636,61 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
 
     @Override
     public Optional<String> getImageNamed(String name, String tag) {
-        String imageList = runDockerCommand("images --no-trunc " + name);
-        return Optional.fromNullable(Strings.getFirstWordAfter(imageList, tag));
+        Map<String, String> catalog = images;
+        if (catalog == null) {
+            scanImages();
+            catalog = images;
+        }
+        return Optional.fromNullable(catalog.get(name + ":" + tag));
+    }
+
+    @Override
+    public void scanImages() {
+        synchronized (scanMutex) {
+            synchronized (imagesMutex) {
+                updatedImages = Sets.newHashSet();
+            }
+            Map<String, String> catalog = null;
+            try {
+                String output = execCommandTimeout(BashCommands.sudo("docker images --no-trunc"), Duration.FIVE_MINUTES);
+                catalog = parseImages(output);
+            } finally {
+                synchronized (imagesMutex) {
+                    if (catalog != null) {
+                        // Keep the images updated by commands that ran during the scan, which it may have missed
+                        Map<String, String> current = images == null ? ImmutableMap.<String, String>of() : images;
+                        for (String key : updatedImages) {
+                            if (current.containsKey(key)) {
+                                catalog.put(key, current.get(key));
+                            } else {
+                                catalog.remove(key);
+                            }
+                        }
+                        images = catalog;
+                    }
+                    updatedImages = null;
+                }
+            }
+            setAttribute(IMAGE_COUNT, catalog.size());
+            LOG.debug("Found {} images on {}", catalog.size(), this);
+        }
+    }
+
+    /**
+     * Parse the output of {@code docker images} into a map from {@code name:tag} to image ID,
+     * skipping the header and untagged images.
+     */
+    static Map<String, String> parseImages(String output) {
+        Map<String, String> catalog = Maps.newHashMap();
+        if (output == null) return catalog;
+        List<String> lines = Splitter.on(CharMatcher.anyOf("\r\n")).omitEmptyStrings().splitToList(output);
+        for (String line : Iterables.skip(lines, 1)) {
+            // REPOSITORY TAG IMAGE_ID CREATED VIRTUAL_SIZE
+            List<String> words = Splitter.on(CharMatcher.WHITESPACE).omitEmptyStrings().limit(4).splitToList(line);
+            if (words.size() < 3 || "<none>".equals(words.get(0)) || "<none>".equals(words.get(1))) continue;
+            catalog.put(words.get(0) + ":" + words.get(1), words.get(2));
+        }
+        return catalog;
     }
 
     /**
@@ -504,6 +785,10 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
         setAttribute(DOCKER_IMAGE_ID, imageId);
 
         scan = scanner();
+
+        // Copy the images held by the other hosts to this one, peer to peer
+        Optional<DockerImageCache> cache = getImageCache();
+        if (cache.isPresent()) cache.get().seed(this);
     }
 
     private FunctionFeed scanner() {
@@ -521,6 +806,17 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
                                 }
                             })
                         .onFailureOrException(Functions.<Void>constant(null)))
+                .poll(new FunctionPollConfig<Object, Void>(SCAN)
+                        .period(config().get(IMAGE_SCAN_INTERVAL))
+                        .description("Scan Images")
+                        .callable(new Callable<Void>() {
+                                @Override
+                                public Void call() throws Exception {
+                                    scanImages();
+                                    return null;
+                                }
+                            })
+                        .onFailureOrException(Functions.<Void>constant(null)))
                 .build();
     }
 
@@ -532,6 +828,12 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
         if (scan == null) {
             scan = scanner();
         }
+
+        // Entities may have been deployed or removed since the index was seeded
+        DockerHostLocation location = getDynamicLocation();
+        if (location != null) {
+            location.getDeployedEntities().rebuild();
+        }
     }
 
     @Override
@@ -592,6 +894,7 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
                     getDockerContainerCluster().addMember(added);
                     ((EntityLocal) added).setAttribute(DockerContainer.CONTAINER_ID, containerId);
                     added.start(ImmutableList.of(getDynamicLocation().getMachine()));
+                    getDynamicLocation().getDeployedEntities().rebuild();
                 }
             }
         } finally {
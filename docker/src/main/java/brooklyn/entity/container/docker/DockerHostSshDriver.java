@@ -36,8 +36,10 @@ import org.jclouds.net.domain.IpPermission;
 import org.jclouds.net.domain.IpProtocol;
 
 import brooklyn.entity.basic.AbstractSoftwareProcessSshDriver;
+import brooklyn.entity.basic.Attributes;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.lifecycle.ScriptHelper;
+import brooklyn.entity.container.DockerAttributes;
 import brooklyn.entity.container.DockerUtils;
 import brooklyn.entity.software.SshEffectorTasks;
 import brooklyn.location.OsDetails;
@@ -183,6 +185,30 @@ public class DockerHostSshDriver extends AbstractSoftwareProcessSshDriver implem
         return DockerUtils.checkId(imageId);
     }
 
+    /**
+     * Trust the infrastructure registry without TLS, if it is enabled.
+     * <p>
+     * Unless {@link DockerInfrastructure#DOCKER_REGISTRY_CIDR} is set, only the registry endpoint is trusted
+     * once it is running, and before that the subnet of this host, since the registry runs on one of the
+     * first hosts of the infrastructure.
+     */
+    private String getRegistryOptions() {
+        DockerInfrastructure infrastructure = ((DockerHost) getEntity()).getInfrastructure();
+        if (!infrastructure.config().get(DockerInfrastructure.DOCKER_REGISTRY_ENABLE)) return "";
+        String trusted = infrastructure.config().get(DockerInfrastructure.DOCKER_REGISTRY_CIDR);
+        if (Strings.isBlank(trusted)) trusted = infrastructure.getAttribute(DockerAttributes.DOCKER_REGISTRY_ENDPOINT);
+        if (Strings.isBlank(trusted)) {
+            String address = getEntity().getAttribute(Attributes.SUBNET_ADDRESS);
+            if (Strings.isBlank(address)) address = getEntity().getAttribute(Attributes.ADDRESS);
+            if (Strings.isBlank(address)) {
+                log.warn("No address for {} to trust the Docker registry from", getEntity());
+                return "";
+            }
+            trusted = new Cidr(address + "/24").toString();
+        }
+        return format(" --insecure-registry %s", trusted);
+    }
+
     public String getEpelRelease() {
         return getEntity().config().get(DockerHost.EPEL_RELEASE);
     }
@@ -405,12 +431,12 @@ public class DockerHostSshDriver extends AbstractSoftwareProcessSshDriver implem
         newScript(CUSTOMIZING)
                 .body.append(
                         ifExecutableElse0("apt-get", chainGroup(
-                                format("echo 'DOCKER_OPTS=\"-H tcp://0.0.0.0:%d -H unix:///var/run/docker.sock -s %s --tls --tlscert=%s/cert.pem --tlskey=%<s/key.pem\"' | ", getDockerPort(), getStorageDriver(), getRunDir()) + sudo("tee -a /etc/default/docker"),
+                                format("echo 'DOCKER_OPTS=\"-H tcp://0.0.0.0:%d -H unix:///var/run/docker.sock -s %s --tls --tlscert=%s/cert.pem --tlskey=%<s/key.pem%s\"' | ", getDockerPort(), getStorageDriver(), getRunDir(), getRegistryOptions()) + sudo("tee -a /etc/default/docker"),
                                 sudo("groupadd -f docker"),
                                 sudo(format("gpasswd -a %s docker", getMachine().getUser())),
                                 sudo("newgrp docker"))),
                         ifExecutableElse0("yum",
-                                format("echo 'other_args=\"--selinux-enabled -H tcp://0.0.0.0:%d -H unix:///var/run/docker.sock -e lxc -s %s --tls --tlscert=%s/cert.pem --tlskey=%<s/key.pem\"' | ", getDockerPort(), getStorageDriver(), getRunDir()) + sudo("tee -a /etc/sysconfig/docker")))
+                                format("echo 'other_args=\"--selinux-enabled -H tcp://0.0.0.0:%d -H unix:///var/run/docker.sock -e lxc -s %s --tls --tlscert=%s/cert.pem --tlskey=%<s/key.pem%s\"' | ", getDockerPort(), getStorageDriver(), getRunDir(), getRegistryOptions()) + sudo("tee -a /etc/sysconfig/docker")))
                 .failOnNonZeroResultCode()
                 .execute();
 
@@ -79,6 +79,74 @@ public interface DockerInfrastructure extends BasicStartable, Resizable, Locatio
     ConfigKey<Boolean> REMOVE_EMPTY_DOCKER_HOSTS = ConfigKeys.newBooleanConfigKey("docker.host.removeEmpty",
             "Remove empty Docker Hosts with no containers", Boolean.FALSE);
 
+    @SetFromFlag("maxConcurrentProvisioning")
+    ConfigKey<Integer> MAX_CONCURRENT_HOST_PROVISIONING = ConfigKeys.newIntegerConfigKey("docker.host.provisioning.maxConcurrent",
+            "Maximum number of Docker hosts to provision at the same time", 4);
+
+    @SetFromFlag("maxConcurrentContainers")
+    ConfigKey<Integer> MAX_CONCURRENT_CONTAINER_CREATION = ConfigKeys.newIntegerConfigKey("docker.container.creation.maxConcurrent",
+            "Maximum number of Docker containers to create at the same time, across all hosts", 16);
+
+    @SetFromFlag("placementTraceFile")
+    ConfigKey<String> DOCKER_PLACEMENT_TRACE_FILE = ConfigKeys.newStringConfigKey("docker.placement.trace.file",
+            "File to record each placement decision to, for replaying offline");
+
+    @SetFromFlag("gangScheduling")
+    ConfigKey<Boolean> DOCKER_PLACEMENT_GANG = ConfigKeys.newBooleanConfigKey("docker.placement.gang",
+            "Place the containers of each starting application together, in a single all-or-nothing plan", Boolean.FALSE);
+
+    @SetFromFlag("gangWindow")
+    ConfigKey<Duration> DOCKER_PLACEMENT_GANG_WINDOW = ConfigKeys.newDurationConfigKey("docker.placement.gang.window",
+            "Maximum time to wait for the rest of an application's container requests before placing them", Duration.seconds(10));
+
+    @SetFromFlag("gangIdle")
+    ConfigKey<Duration> DOCKER_PLACEMENT_GANG_IDLE = ConfigKeys.newDurationConfigKey("docker.placement.gang.idle",
+            "Time without a new container request from an application after which its requests are placed", Duration.seconds(2));
+
+    @SetFromFlag("standbyHosts")
+    ConfigKey<Integer> DOCKER_HOST_STANDBY_POOL_SIZE = ConfigKeys.newIntegerConfigKey("docker.host.standby.size",
+            "Number of started but empty Docker hosts to keep in reserve for new containers", 0);
+
+    @SetFromFlag("registry")
+    ConfigKey<Boolean> DOCKER_REGISTRY_ENABLE = ConfigKeys.newBooleanConfigKey("docker.registry.enable",
+            "Run a private Docker registry on one of the hosts, to share committed and built images", Boolean.FALSE);
+
+    @SetFromFlag("registrySpec")
+    ConfigKey<EntitySpec> DOCKER_REGISTRY_SPEC = ConfigKeys.newConfigKey(EntitySpec.class,
+            "docker.registry.spec", "Specification to use when creating the Docker registry", EntitySpec.create(DockerRegistry.class));
+
+    @SetFromFlag("registryCidr")
+    ConfigKey<String> DOCKER_REGISTRY_CIDR = ConfigKeys.newStringConfigKey("docker.registry.cidr",
+            "Addresses the Docker hosts trust as a registry without TLS, by default the registry endpoint once it is running, "
+            + "or else the /24 subnet of each host's private address");
+
+    @SetFromFlag("imageCache")
+    ConfigKey<Boolean> DOCKER_IMAGE_CACHE = ConfigKeys.newBooleanConfigKey("docker.image.cache",
+            "Build each distinct image once, and import it on the other Docker hosts instead of building it again", Boolean.FALSE);
+
+    @SetFromFlag("imageMaxUploads")
+    ConfigKey<Integer> DOCKER_IMAGE_MAX_UPLOADS = ConfigKeys.newIntegerConfigKey("docker.image.maxUploads",
+            "Maximum number of hosts each Docker host streams an image to at the same time", 2);
+
+    @SetFromFlag("containerPoolSize")
+    ConfigKey<Integer> DOCKER_CONTAINER_POOL_SIZE = DockerAttributes.DOCKER_CONTAINER_POOL_SIZE;
+
+    @SetFromFlag("hostDiskCapacity")
+    ConfigKey<Integer> DOCKER_HOST_DISK_CAPACITY = DockerAttributes.DOCKER_HOST_DISK_CAPACITY;
+
+    @SetFromFlag("hostPortCapacity")
+    ConfigKey<Integer> DOCKER_HOST_PORT_CAPACITY = DockerAttributes.DOCKER_HOST_PORT_CAPACITY;
+
+    @SetFromFlag("rebalance")
+    ConfigKey<Boolean> DOCKER_CONTAINER_REBALANCE = ConfigKeys.newBooleanConfigKey("docker.container.rebalance",
+            "Periodically move stateless containers to consolidate and relieve Docker hosts", Boolean.FALSE);
+
+    @SetFromFlag("latency")
+    AttributeSensorAndConfigKey<Duration, Duration> DOCKER_INFRASTRUCTURE_LATENCY = DockerAttributes.DOCKER_INFRASTRUCTURE_LATENCY;
+
+    @SetFromFlag("loadSettlePeriod")
+    ConfigKey<Duration> DOCKER_HOST_LOAD_SETTLE_PERIOD = DockerAttributes.DOCKER_HOST_LOAD_SETTLE_PERIOD;
+
     @SetFromFlag("enableSdn")
     ConfigKey<Boolean> SDN_ENABLE = SdnAttributes.SDN_ENABLE;
 
@@ -120,6 +188,11 @@ public interface DockerInfrastructure extends BasicStartable, Resizable, Locatio
             "docker.dockerfile.substitutions", "Dockerfile template substitutions", MutableMap.<String, Object>of());
 
     AttributeSensor<DynamicCluster> DOCKER_HOST_CLUSTER = Sensors.newSensor(DynamicCluster.class, "docker.hosts", "Docker host cluster");
+    AttributeSensor<Entity> DOCKER_REGISTRY = Sensors.newSensor(Entity.class, "docker.registry", "Docker registry");
+
+    AttributeSensor<String> DOCKER_REGISTRY_ENDPOINT = DockerAttributes.DOCKER_REGISTRY_ENDPOINT;
+
+    AttributeSensor<DynamicCluster> DOCKER_HOST_STANDBY_CLUSTER = Sensors.newSensor(DynamicCluster.class, "docker.hosts.standby", "Docker standby host cluster");
     AttributeSensor<DynamicGroup> DOCKER_CONTAINER_FABRIC = Sensors.newSensor(DynamicGroup.class, "docker.fabric", "Docker container fabric");
     AttributeSensor<DynamicMultiGroup> DOCKER_APPLICATIONS = Sensors.newSensor(DynamicMultiGroup.class, "docker.buckets", "Docker applications");
     AttributeSensor<Entity> SDN_PROVIDER = Sensors.newSensor(Entity.class, "sdn.provider.network", "SDN provider network entity");
@@ -129,6 +202,17 @@ public interface DockerInfrastructure extends BasicStartable, Resizable, Locatio
 
     AttributeSensor<Integer> DOCKER_HOST_COUNT = DockerAttributes.DOCKER_HOST_COUNT;
     AttributeSensor<Integer> DOCKER_CONTAINER_COUNT = DockerAttributes.DOCKER_CONTAINER_COUNT;
+    AttributeSensor<Integer> DOCKER_STANDBY_HOST_COUNT = DockerAttributes.DOCKER_STANDBY_HOST_COUNT;
+    AttributeSensor<Integer> DOCKER_HOST_PROVISIONING_COUNT = DockerAttributes.DOCKER_HOST_PROVISIONING_COUNT;
+    AttributeSensor<Integer> DOCKER_HOST_DEMAND_COUNT = DockerAttributes.DOCKER_HOST_DEMAND_COUNT;
+
+    AttributeSensor<Map<String, Map<String, Double>>> DOCKER_PLACEMENT_STRATEGY_LATENCY = DockerAttributes.DOCKER_PLACEMENT_STRATEGY_LATENCY;
+    AttributeSensor<Map<String, Long>> DOCKER_PLACEMENT_STRATEGY_REJECTED = DockerAttributes.DOCKER_PLACEMENT_STRATEGY_REJECTED;
+    AttributeSensor<Map<String, Map<String, Double>>> DOCKER_PLACEMENT_STAGE_LATENCY = DockerAttributes.DOCKER_PLACEMENT_STAGE_LATENCY;
+    AttributeSensor<Long> DOCKER_OBTAIN_SUCCESS_COUNT = DockerAttributes.DOCKER_OBTAIN_SUCCESS_COUNT;
+    AttributeSensor<Long> DOCKER_OBTAIN_FAILURE_COUNT = DockerAttributes.DOCKER_OBTAIN_FAILURE_COUNT;
+    AttributeSensor<Double> DOCKER_OBTAIN_SUCCESS_RATE = DockerAttributes.DOCKER_OBTAIN_SUCCESS_RATE;
+    AttributeSensor<Double> DOCKER_OBTAIN_FAILURE_RATE = DockerAttributes.DOCKER_OBTAIN_FAILURE_RATE;
 
     List<Entity> getDockerHostList();
 
@@ -29,6 +29,7 @@ import org.slf4j.LoggerFactory;
 
 import brooklyn.config.render.RendererHints;
 import brooklyn.enricher.Enrichers;
+import brooklyn.enricher.TimeWeightedDeltaEnricher;
 import brooklyn.entity.Application;
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.Attributes;
@@ -43,6 +44,8 @@ import brooklyn.entity.basic.SoftwareProcess.ChildStartableMode;
 import brooklyn.entity.container.DockerAttributes;
 import brooklyn.entity.container.DockerUtils;
 import brooklyn.entity.container.policy.ContainerHeadroomEnricher;
+import brooklyn.entity.container.policy.DockerHostCapacityIndex;
+import brooklyn.entity.container.policy.DockerRebalancingPolicy;
 import brooklyn.entity.group.Cluster;
 import brooklyn.entity.group.DynamicCluster;
 import brooklyn.entity.group.DynamicMultiGroup;
@@ -109,6 +112,18 @@ public class DockerInfrastructureImpl extends BasicStartableImpl implements Dock
                 .configure(DynamicCluster.UP_QUORUM_CHECK, QuorumChecks.atLeastOneUnlessEmpty())
                 .displayName("Docker Hosts"));
 
+        int standbySize = config().get(DOCKER_HOST_STANDBY_POOL_SIZE);
+        DynamicCluster standby = null;
+        if (standbySize > 0) {
+            standby = addChild(EntitySpec.create(DynamicCluster.class)
+                    .configure(Cluster.INITIAL_SIZE, standbySize)
+                    .configure(DynamicCluster.QUARANTINE_FAILED_ENTITIES, true)
+                    .configure(DynamicCluster.MEMBER_SPEC, dockerHostSpec)
+                    .configure(DynamicCluster.RUNNING_QUORUM_CHECK, QuorumChecks.alwaysTrue())
+                    .configure(DynamicCluster.UP_QUORUM_CHECK, QuorumChecks.alwaysTrue())
+                    .displayName("Docker Standby Hosts"));
+        }
+
         DynamicGroup fabric = addChild(EntitySpec.create(DynamicGroup.class)
                 .configure(DynamicGroup.ENTITY_FILTER, Predicates.and(Predicates.instanceOf(DockerContainer.class), EntityPredicates.attributeEqualTo(DockerContainer.DOCKER_INFRASTRUCTURE, this)))
                 .configure(DynamicGroup.MEMBER_DELEGATE_CHILDREN, true)
@@ -137,13 +152,29 @@ public class DockerInfrastructureImpl extends BasicStartableImpl implements Dock
             }
         }
 
+        if (config().get(DOCKER_REGISTRY_ENABLE)) {
+            Entity registry = addChild(EntitySpec.create(config().get(DOCKER_REGISTRY_SPEC))
+                    .configure(DockerAttributes.DOCKER_INFRASTRUCTURE, this));
+            setAttribute(DOCKER_REGISTRY, registry);
+            addEnricher(Enrichers.builder()
+                    .propagating(DOCKER_REGISTRY_ENDPOINT)
+                    .from(registry)
+                    .build());
+
+            if (Entities.isManaged(this)) {
+                Entities.manage(registry);
+            }
+        }
+
         if (Entities.isManaged(this)) {
             Entities.manage(hosts);
             Entities.manage(fabric);
             Entities.manage(buckets);
+            if (standby != null) Entities.manage(standby);
         }
 
         setAttribute(DOCKER_HOST_CLUSTER, hosts);
+        setAttribute(DOCKER_HOST_STANDBY_CLUSTER, standby);
         setAttribute(DOCKER_CONTAINER_FABRIC, fabric);
         setAttribute(DOCKER_APPLICATIONS, buckets);
 
@@ -160,6 +191,7 @@ public class DockerInfrastructureImpl extends BasicStartableImpl implements Dock
                 .fromMembers()
                 .publishing(DOCKER_CONTAINER_COUNT)
                 .build());
+        addEnricher(EnricherSpec.create(DockerHostCapacityIndex.class));
 
         addEnricher(Enrichers.builder()
                 .propagating(DOCKER_CONTAINER_COUNT, MachineAttributes.AVERAGE_CPU_USAGE)
@@ -170,6 +202,16 @@ public class DockerInfrastructureImpl extends BasicStartableImpl implements Dock
                 .from(hosts)
                 .build());
 
+        addEnricher(TimeWeightedDeltaEnricher.<Long>getPerSecondDeltaEnricher(this, DOCKER_OBTAIN_SUCCESS_COUNT, DOCKER_OBTAIN_SUCCESS_RATE));
+        addEnricher(TimeWeightedDeltaEnricher.<Long>getPerSecondDeltaEnricher(this, DOCKER_OBTAIN_FAILURE_COUNT, DOCKER_OBTAIN_FAILURE_RATE));
+
+        if (standby != null) {
+            addEnricher(Enrichers.builder()
+                    .propagating(ImmutableMap.of(DynamicCluster.GROUP_SIZE, DOCKER_STANDBY_HOST_COUNT))
+                    .from(standby)
+                    .build());
+        }
+
         Integer headroom = config().get(ContainerHeadroomEnricher.CONTAINER_HEADROOM);
         Double headroomPercent = config().get(ContainerHeadroomEnricher.CONTAINER_HEADROOM_PERCENTAGE);
         if ((headroom != null && headroom > 0) || (headroomPercent != null && headroomPercent > 0d)) {
@@ -192,6 +234,10 @@ public class DockerInfrastructureImpl extends BasicStartableImpl implements Dock
                     .configure(AutoScalerPolicy.RESIZE_DOWN_STABILIZATION_DELAY, Duration.FIVE_MINUTES));
         }
 
+        if (config().get(DOCKER_CONTAINER_REBALANCE)) {
+            addPolicy(PolicySpec.create(DockerRebalancingPolicy.class));
+        }
+
         setAttribute(Attributes.MAIN_URI, URI.create("/clocker"));
     }
 
@@ -371,6 +417,17 @@ public class DockerInfrastructureImpl extends BasicStartableImpl implements Dock
             }
         }
 
+        // Stop the registry while its host is still running
+        if (config().get(DOCKER_REGISTRY_ENABLE)) {
+            try {
+                Entity registry = getAttribute(DOCKER_REGISTRY);
+                LOG.debug("Stopping registry: {}", registry);
+                Entities.invokeEffector(this, registry, Startable.STOP).get(timeout);
+            } catch (Exception e) {
+                LOG.warn("Error stopping registry", e);
+            }
+        }
+
         // Stop all Docker hosts in parallel
         try {
             DynamicCluster hosts = getAttribute(DOCKER_HOST_CLUSTER);
@@ -390,6 +447,7 @@ public class DockerInfrastructureImpl extends BasicStartableImpl implements Dock
         DockerAttributes.init();
 
         RendererHints.register(DOCKER_HOST_CLUSTER, new RendererHints.NamedActionWithUrl("Open", DelegateEntity.EntityUrl.entityUrl()));
+        RendererHints.register(DOCKER_HOST_STANDBY_CLUSTER, new RendererHints.NamedActionWithUrl("Open", DelegateEntity.EntityUrl.entityUrl()));
         RendererHints.register(DOCKER_CONTAINER_FABRIC, new RendererHints.NamedActionWithUrl("Open", DelegateEntity.EntityUrl.entityUrl()));
         RendererHints.register(DOCKER_APPLICATIONS, new RendererHints.NamedActionWithUrl("Open", DelegateEntity.EntityUrl.entityUrl()));
         RendererHints.register(SDN_PROVIDER, new RendererHints.NamedActionWithUrl("Open", DelegateEntity.EntityUrl.entityUrl()));
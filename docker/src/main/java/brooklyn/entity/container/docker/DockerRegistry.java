@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.entity.container.docker;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.BasicStartable;
+import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.entity.container.DockerAttributes;
+import brooklyn.entity.container.DockerUtils;
+import brooklyn.entity.proxying.ImplementedBy;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.AttributeSensorAndConfigKey;
+import brooklyn.event.basic.Sensors;
+import brooklyn.util.flags.SetFromFlag;
+
+/**
+ * A private Docker registry for a {@link DockerInfrastructure}, running in a container on one of its hosts.
+ * The registry runs on the first host that is up, waiting for one if the host cluster is still starting or
+ * starts empty.
+ * <p>
+ * The registry stores images in a directory on the host. Images committed after an entity is installed,
+ * and images built from Dockerfiles, are pushed to the registry, tagged as
+ * {@link DockerUtils#registryImageName(String, String) endpoint/name} using the name from
+ * {@link DockerUtils#imageName(brooklyn.entity.Entity, String)}. Other hosts pull them instead of installing or building again.
+ * <p>
+ * The registry container is not managed by the host location, so the {@link #REGISTRY_HOST host} is
+ * {@link brooklyn.location.docker.DockerHostLocation#isPinned() pinned}, and is never drained or removed when empty.
+ * Hosts trust the {@link DockerAttributes#DOCKER_REGISTRY_ENDPOINT endpoint} without TLS, or the addresses in
+ * {@link DockerInfrastructure#DOCKER_REGISTRY_CIDR} if set.
+ */
+@ImplementedBy(DockerRegistryImpl.class)
+public interface DockerRegistry extends BasicStartable {
+
+    AttributeSensorAndConfigKey<Entity, Entity> DOCKER_INFRASTRUCTURE = DockerAttributes.DOCKER_INFRASTRUCTURE;
+
+    @SetFromFlag("image")
+    ConfigKey<String> REGISTRY_IMAGE = ConfigKeys.newStringConfigKey("docker.registry.image", "The Docker registry image", "registry:2.0");
+
+    @SetFromFlag("port")
+    ConfigKey<Integer> REGISTRY_PORT = ConfigKeys.newIntegerConfigKey("docker.registry.port", "The port the registry listens on, on its Docker host", 5000);
+
+    @SetFromFlag("storage")
+    ConfigKey<String> REGISTRY_STORAGE = ConfigKeys.newStringConfigKey("docker.registry.storage",
+            "Directory on the Docker host where the registry stores images", "/var/lib/docker-registry");
+
+    AttributeSensor<DockerHost> REGISTRY_HOST = Sensors.newSensor(DockerHost.class, "docker.registry.host", "The Docker host running the registry");
+
+    AttributeSensor<String> REGISTRY_CONTAINER_ID = Sensors.newStringSensor("docker.registry.containerId", "The ID of the registry container");
+
+    AttributeSensor<String> REGISTRY_ENDPOINT = DockerAttributes.DOCKER_REGISTRY_ENDPOINT;
+
+    /** The host and port of the registry, or {@code null} if it is not running. */
+    String getEndpoint();
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.entity.container.docker;
+
+import static java.lang.String.format;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.Attributes;
+import brooklyn.entity.basic.BasicStartableImpl;
+import brooklyn.entity.basic.Lifecycle;
+import brooklyn.entity.basic.ServiceStateLogic;
+import brooklyn.entity.basic.SoftwareProcess;
+import brooklyn.entity.container.DockerUtils;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.SensorEventListener;
+import brooklyn.location.Location;
+import brooklyn.management.SubscriptionHandle;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.ssh.BashCommands;
+import brooklyn.util.task.TaskBuilder;
+import brooklyn.util.text.Strings;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
+
+public class DockerRegistryImpl extends BasicStartableImpl implements DockerRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DockerRegistryImpl.class);
+
+    private transient SubscriptionHandle waiting;
+
+    private final AtomicBoolean launching = new AtomicBoolean(false);
+
+    /**
+     * Run the registry on the first Docker host that is up. If no host is up yet, for example while the
+     * host cluster is starting or when it starts empty, the registry stays {@link Lifecycle#STARTING starting}
+     * and is run on the first host to come up.
+     */
+    @Override
+    public void start(Collection<? extends Location> locations) {
+        setAttribute(SERVICE_UP, Boolean.FALSE);
+
+        DockerInfrastructure infrastructure = (DockerInfrastructure) Preconditions.checkNotNull(config().get(DOCKER_INFRASTRUCTURE), "infrastructure");
+        Optional<DockerHost> host = getDockerHost(infrastructure);
+        if (host.isPresent()) {
+            launch(host.get(), locations);
+        } else {
+            waitForDockerHost(infrastructure, locations);
+        }
+    }
+
+    @Override
+    public void rebind() {
+        super.rebind();
+
+        // Resume waiting for a host if the registry had not been started
+        DockerInfrastructure infrastructure = (DockerInfrastructure) config().get(DOCKER_INFRASTRUCTURE);
+        Lifecycle.Transition expected = getAttribute(Attributes.SERVICE_STATE_EXPECTED);
+        if (infrastructure != null && getAttribute(REGISTRY_CONTAINER_ID) == null
+                && expected != null && expected.getState() == Lifecycle.STARTING) {
+            waitForDockerHost(infrastructure, getLocations());
+        }
+    }
+
+    /** The first Docker host that is up, if any. */
+    private Optional<DockerHost> getDockerHost(DockerInfrastructure infrastructure) {
+        for (Entity member : infrastructure.getDockerHostList()) {
+            if (Boolean.TRUE.equals(member.getAttribute(SoftwareProcess.SERVICE_UP))) {
+                return Optional.of((DockerHost) member);
+            }
+        }
+        return Optional.absent();
+    }
+
+    /** Run the registry in a task on the first host of the cluster whose service comes up. */
+    private void waitForDockerHost(final DockerInfrastructure infrastructure, final Collection<? extends Location> locations) {
+        LOG.info("No Docker host up for the registry of {}, waiting for one", infrastructure);
+        ServiceStateLogic.setExpectedState(this, Lifecycle.STARTING);
+        waiting = subscribeToMembers(infrastructure.getDockerHostCluster(), SoftwareProcess.SERVICE_UP, new SensorEventListener<Boolean>() {
+            @Override
+            public void onEvent(SensorEvent<Boolean> event) {
+                if (!Boolean.TRUE.equals(event.getValue()) || !launching.compareAndSet(false, true)) return;
+                final DockerHost host = (DockerHost) event.getSource();
+                getExecutionContext().submit(TaskBuilder.<Void>builder()
+                        .name("Starting Docker registry")
+                        .body(new Callable<Void>() {
+                            @Override
+                            public Void call() throws Exception {
+                                try {
+                                    launch(host, locations);
+                                } catch (Exception e) {
+                                    Exceptions.propagateIfFatal(e);
+                                    LOG.warn("Failed to start Docker registry on " + host + ", waiting for another host", e);
+                                    launching.set(false);
+                                }
+                                return null;
+                            }
+                        })
+                        .build());
+            }
+        });
+
+        // Check after subscribing, in case a host came up before
+        Optional<DockerHost> host = getDockerHost(infrastructure);
+        if (host.isPresent() && launching.compareAndSet(false, true)) {
+            launch(host.get(), locations);
+        }
+    }
+
+    private void launch(DockerHost host, Collection<? extends Location> locations) {
+        int port = config().get(REGISTRY_PORT);
+        String storage = config().get(REGISTRY_STORAGE);
+        LOG.info("Starting Docker registry on {} port {}", host, port);
+
+        host.execCommandTimeout(BashCommands.sudo("mkdir -p " + storage), Duration.ONE_MINUTE);
+        String output = host.runDockerCommandTimeout(format("run -d -p %d:5000 -v %s:/var/lib/registry %s",
+                port, storage, config().get(REGISTRY_IMAGE)), Duration.minutes(20));
+        // Use the last line of the output, after any progress from pulling the image
+        String containerId = DockerUtils.checkId(Iterables.getLast(Splitter.on(CharMatcher.WHITESPACE).omitEmptyStrings().split(output)));
+
+        String address = host.getAttribute(Attributes.SUBNET_ADDRESS);
+        if (Strings.isBlank(address)) address = host.getAttribute(Attributes.ADDRESS);
+        setAttribute(REGISTRY_HOST, host);
+        setAttribute(REGISTRY_CONTAINER_ID, containerId);
+        setAttribute(REGISTRY_ENDPOINT, format("%s:%d", address, port));
+        stopWaiting();
+
+        super.start(locations);
+
+        setAttribute(SERVICE_UP, Boolean.TRUE);
+    }
+
+    private void stopWaiting() {
+        if (waiting != null) {
+            getSubscriptionContext().unsubscribe(waiting);
+            waiting = null;
+        }
+    }
+
+    @Override
+    public void stop() {
+        setAttribute(SERVICE_UP, Boolean.FALSE);
+        stopWaiting();
+
+        DockerHost host = getAttribute(REGISTRY_HOST);
+        String containerId = getAttribute(REGISTRY_CONTAINER_ID);
+        if (host != null && containerId != null) {
+            try {
+                host.runDockerCommand("rm -f " + containerId);
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.warn("Error removing Docker registry container " + containerId + " on " + host, e);
+            }
+        }
+        setAttribute(REGISTRY_ENDPOINT, null);
+        setAttribute(REGISTRY_CONTAINER_ID, null);
+        setAttribute(REGISTRY_HOST, null);
+
+        super.stop();
+    }
+
+    @Override
+    public String getEndpoint() {
+        return getAttribute(REGISTRY_ENDPOINT);
+    }
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.entity.container.policy;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.enricher.basic.AbstractEnricher;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.AbstractGroup;
+import brooklyn.entity.basic.EntityLocal;
+import brooklyn.entity.container.DockerAttributes;
+import brooklyn.entity.container.docker.DockerHost;
+import brooklyn.entity.container.docker.DockerInfrastructure;
+import brooklyn.entity.group.DynamicCluster;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.SensorEventListener;
+import brooklyn.location.docker.DockerHostLocation;
+import brooklyn.policy.Enricher;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+
+/**
+ * An {@link Enricher} that maintains a sorted index of the {@link DockerHost hosts} in a {@link DockerInfrastructure}.
+ * <p>
+ * The index subscribes to host cluster membership changes and to the {@link DockerAttributes#DOCKER_CONTAINER_COUNT container count}
+ * and {@link DockerHost#CPU_USAGE CPU usage} of each host, and is updated incrementally as these change. Each
+ * {@link DockerHostLocation} also {@link #refresh(DockerHost) refreshes} its entry when a slot is reserved, committed or
+ * released, so the index does not wait for the sensors. The number of containers is read from the
+ * {@link DockerHostLocation#getAllocatedCount() allocated count} of the host when an entry is updated, which includes
+ * the members of the container cluster and the reserved slots. Placement strategies can then look up the capacity of a
+ * host, or the hosts below a container limit, without walking the cluster and reading sensors on every host for every
+ * placement. CPU usage samples are also added to the {@link DockerHostLocation#getLoad() load model} of each host.
+ * <p>
+ * The index is only used to narrow the candidate hosts. The live counts are authoritative, and a slot is only taken
+ * when {@link DockerHostLocation#reserve(int) reserved} on the host itself.
+ * <p>
+ * This enricher must be applied to the {@link DockerInfrastructure} entity, after the host cluster has been created.
+ */
+public class DockerHostCapacityIndex extends AbstractEnricher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DockerHostCapacityIndex.class);
+
+    /** Orders hosts by container count, then CPU usage, then ID. */
+    public static final Comparator<HostCapacity> LEAST_CONTAINERS = new Comparator<HostCapacity>() {
+        @Override
+        public int compare(HostCapacity h1, HostCapacity h2) {
+            return ComparisonChain.start()
+                    .compare(h1.getContainers(), h2.getContainers())
+                    .compare(h1.getCpuUsage(), h2.getCpuUsage())
+                    .compare(h1.getId(), h2.getId())
+                    .result();
+        }
+    };
+
+    /** Orders hosts by CPU usage, then container count, then ID. */
+    public static final Comparator<HostCapacity> LOWEST_CPU_USAGE = new Comparator<HostCapacity>() {
+        @Override
+        public int compare(HostCapacity h1, HostCapacity h2) {
+            return ComparisonChain.start()
+                    .compare(h1.getCpuUsage(), h2.getCpuUsage())
+                    .compare(h1.getContainers(), h2.getContainers())
+                    .compare(h1.getId(), h2.getId())
+                    .result();
+        }
+    };
+
+    private final ConcurrentMap<String, HostCapacity> hosts = Maps.newConcurrentMap();
+    private final NavigableSet<HostCapacity> byContainers = new ConcurrentSkipListSet<HostCapacity>(LEAST_CONTAINERS);
+    private final NavigableSet<HostCapacity> byCpuUsage = new ConcurrentSkipListSet<HostCapacity>(LOWEST_CPU_USAGE);
+    private final Object mutex = new Object[0];
+
+    @Override
+    public void setEntity(EntityLocal entity) {
+        Preconditions.checkArgument(entity instanceof DockerInfrastructure, "Entity must be a DockerInfrastructure: %s", entity);
+        super.setEntity(entity);
+
+        DynamicCluster cluster = ((DockerInfrastructure) entity).getDockerHostCluster();
+        Preconditions.checkState(cluster != null, "Docker host cluster must be created before the capacity index: %s", entity);
+
+        subscribe(cluster, AbstractGroup.MEMBER_ADDED, new MembershipListener(true));
+        subscribe(cluster, AbstractGroup.MEMBER_REMOVED, new MembershipListener(false));
+        subscribeToMembers(cluster, DockerAttributes.DOCKER_CONTAINER_COUNT, new UpdateListener());
+        subscribeToMembers(cluster, DockerHost.CPU_USAGE, new UpdateListener());
+        subscribeToMembers(cluster, DockerHost.CPU_USAGE, new LoadListener());
+
+        // Seed with the current members, for when we are added late or rebinding
+        for (Entity member : cluster.getMembers()) {
+            update(member, false);
+        }
+    }
+
+    private class MembershipListener implements SensorEventListener<Entity> {
+        private final boolean added;
+
+        public MembershipListener(boolean added) {
+            this.added = added;
+        }
+
+        @Override
+        public void onEvent(SensorEvent<Entity> event) {
+            if (added) {
+                update(event.getValue(), false);
+            } else {
+                remove(event.getValue());
+            }
+        }
+    }
+
+    private class UpdateListener implements SensorEventListener<Object> {
+        @Override
+        public void onEvent(SensorEvent<Object> event) {
+            // Ignore updates from hosts that are not (or are no longer) members
+            update(event.getSource(), true);
+        }
+    }
+
+    private class LoadListener implements SensorEventListener<Double> {
+        @Override
+        public void onEvent(SensorEvent<Double> event) {
+            if (!(event.getSource() instanceof DockerHost) || event.getValue() == null) return;
+            DockerHostLocation location = ((DockerHost) event.getSource()).getDynamicLocation();
+            if (location != null) location.getLoad().sample(event.getValue(), event.getTimestamp());
+        }
+    }
+
+    /**
+     * Update the entry for the given host from its current counts, if it is in the index.
+     */
+    public void refresh(DockerHost host) {
+        update(host, true);
+    }
+
+    private void update(Entity member, boolean existing) {
+        if (!(member instanceof DockerHost)) return;
+        DockerHost host = (DockerHost) member;
+        HostCapacity updated;
+
+        synchronized (mutex) {
+            if (existing && !hosts.containsKey(host.getId())) return;
+
+            // Counts are read under the mutex, so concurrent updates are applied in order
+            updated = new HostCapacity(host, containers(host), cpuUsage(host));
+
+            // Entries are removed before being replaced, as their sort keys may have changed
+            HostCapacity previous = hosts.put(host.getId(), updated);
+            if (previous != null) {
+                byContainers.remove(previous);
+                byCpuUsage.remove(previous);
+            }
+            byContainers.add(updated);
+            byCpuUsage.add(updated);
+        }
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Capacity index updated for {}: {}", entity, updated);
+        }
+    }
+
+    private static int containers(DockerHost host) {
+        DockerHostLocation location = host.getDynamicLocation();
+        if (location != null) return location.getAllocatedCount();
+        DynamicCluster cluster = host.getDockerContainerCluster();
+        return cluster == null ? 0 : cluster.getCurrentSize();
+    }
+
+    private static double cpuUsage(DockerHost host) {
+        Double cpu = host.getAttribute(DockerHost.CPU_USAGE);
+        return cpu == null ? 0d : cpu;
+    }
+
+    private void remove(Entity member) {
+        synchronized (mutex) {
+            HostCapacity previous = hosts.remove(member.getId());
+            if (previous != null) {
+                byContainers.remove(previous);
+                byCpuUsage.remove(previous);
+            }
+        }
+    }
+
+    /**
+     * @return the indexed capacity of the given host, if known
+     */
+    public Optional<HostCapacity> getCapacity(DockerHost host) {
+        return Optional.fromNullable(hosts.get(host.getId()));
+    }
+
+    /**
+     * @return the number of hosts in the index
+     */
+    public int size() {
+        return hosts.size();
+    }
+
+    /**
+     * @return all host locations, ordered by {@link #LEAST_CONTAINERS container count}
+     */
+    public List<DockerHostLocation> getDockerHostLocations() {
+        return locations(byContainers);
+    }
+
+    /**
+     * @return all host locations, ordered by {@link #LOWEST_CPU_USAGE CPU usage}
+     */
+    public List<DockerHostLocation> getDockerHostLocationsByCpuUsage() {
+        return locations(byCpuUsage);
+    }
+
+    /**
+     * @return the host locations with fewer than {@code maxContainers} containers, least first
+     */
+    public List<DockerHostLocation> getDockerHostLocationsBelow(int maxContainers) {
+        return locations(byContainers.headSet(HostCapacity.bound(maxContainers, Double.NEGATIVE_INFINITY), false));
+    }
+
+    /**
+     * @return the host locations with CPU usage below {@code maxCpu}, lowest first
+     */
+    public List<DockerHostLocation> getDockerHostLocationsBelow(double maxCpu) {
+        return locations(byCpuUsage.headSet(HostCapacity.bound(Integer.MIN_VALUE, maxCpu), false));
+    }
+
+    private List<DockerHostLocation> locations(Iterable<HostCapacity> entries) {
+        ImmutableList.Builder<DockerHostLocation> result = ImmutableList.builder();
+        for (HostCapacity entry : entries) {
+            DockerHostLocation location = entry.getHost().getDynamicLocation();
+            if (location != null) result.add(location);
+        }
+        return result.build();
+    }
+
+    /**
+     * @return the capacity index enricher on the given infrastructure, if one has been added
+     */
+    public static Optional<DockerHostCapacityIndex> lookup(DockerInfrastructure infrastructure) {
+        if (infrastructure == null) return Optional.absent();
+        Optional<Enricher> found = Iterables.tryFind(infrastructure.getEnrichers(), Predicates.instanceOf(DockerHostCapacityIndex.class));
+        return Optional.fromNullable((DockerHostCapacityIndex) found.orNull());
+    }
+
+    /**
+     * An immutable snapshot of the capacity of a single {@link DockerHost}.
+     */
+    public static class HostCapacity {
+
+        private final String id;
+        private final DockerHost host;
+        private final int containers;
+        private final double cpuUsage;
+
+        public HostCapacity(DockerHost host, int containers, double cpuUsage) {
+            this(host.getId(), host, containers, cpuUsage);
+        }
+
+        private HostCapacity(String id, DockerHost host, int containers, double cpuUsage) {
+            this.id = id;
+            this.host = host;
+            this.containers = containers;
+            this.cpuUsage = cpuUsage;
+        }
+
+        /** A search key that sorts before any host with the same values. */
+        static HostCapacity bound(int containers, double cpuUsage) {
+            return new HostCapacity("", null, containers, cpuUsage);
+        }
+
+        public String getId() { return id; }
+
+        public DockerHost getHost() { return host; }
+
+        public int getContainers() { return containers; }
+
+        public double getCpuUsage() { return cpuUsage; }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                    .add("id", id)
+                    .add("containers", containers)
+                    .add("cpuUsage", cpuUsage)
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.entity.container.policy;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.basic.EntityLocal;
+import brooklyn.entity.basic.SoftwareProcess;
+import brooklyn.entity.container.DockerAttributes;
+import brooklyn.entity.container.docker.DockerContainer;
+import brooklyn.entity.container.docker.DockerHost;
+import brooklyn.entity.container.docker.DockerInfrastructure;
+import brooklyn.entity.group.DynamicCluster;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
+import brooklyn.location.docker.DockerHostLocation;
+import brooklyn.location.docker.DockerLocation;
+import brooklyn.management.Task;
+import brooklyn.policy.basic.AbstractPolicy;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.flags.SetFromFlag;
+import brooklyn.util.task.ScheduledTask;
+import brooklyn.util.task.TaskBuilder;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Ints;
+
+/**
+ * A policy that periodically moves stateless containers between the {@link DockerHost hosts} in a {@link DockerInfrastructure}.
+ * <p>
+ * Each run first relieves hosts whose {@link DockerHostLocation#getLoad() CPU load} is above {@link #MAX_CPU}, moving
+ * one container off each, hottest first. It then consolidates, by draining the host with the fewest containers if they
+ * all fit on the other hosts, unless it is {@link DockerHostLocation#isPinned() pinned} by the registry. A draining
+ * host is excluded from placement until it is empty, and is then removed if
+ * {@link DockerInfrastructure#REMOVE_EMPTY_DOCKER_HOSTS} is set. The host being drained is published as
+ * {@link #DRAINING_HOST}, so draining resumes after rebind. Pooled containers are not moved, and are removed once
+ * the host has been drained.
+ * <p>
+ * A container is only moved if the {@link DockerLocation#filterDockerHostLocations(List, Entity) placement strategies}
+ * of the location accept another host for its entity, so affinity rules, resource limits and zone spread are respected.
+ * Containers are moved by invoking {@link DynamicCluster#REPLACE_MEMBER replaceMember} on their cluster, which
+ * starts the replacement before stopping the original, so load balancers tracking the cluster switch traffic over.
+ * Only entities configured as {@link DockerAttributes#DOCKER_CONTAINER_STATELESS stateless} are moved, and only when
+ * every other member of their cluster is up. At most {@link #MAX_MIGRATIONS} containers are moved in each
+ * {@link #PERIOD period}, which is the disruption budget. Runs are scheduled tasks in the execution context of the
+ * infrastructure.
+ * <p>
+ * This policy must be applied to the {@link DockerInfrastructure} entity.
+ */
+public class DockerRebalancingPolicy extends AbstractPolicy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DockerRebalancingPolicy.class);
+
+    @SetFromFlag("period")
+    public static final ConfigKey<Duration> PERIOD = ConfigKeys.newConfigKey(Duration.class,
+            "docker.rebalance.period", "Interval between rebalancing runs", Duration.FIVE_MINUTES);
+
+    @SetFromFlag("maxMigrations")
+    public static final ConfigKey<Integer> MAX_MIGRATIONS = ConfigKeys.newIntegerConfigKey(
+            "docker.rebalance.maxMigrations", "Maximum number of containers to move in each rebalancing run", 1);
+
+    @SetFromFlag("maxCpu")
+    public static final ConfigKey<Double> MAX_CPU = ConfigKeys.newDoubleConfigKey(
+            "docker.rebalance.maxCpu", "CPU usage above which a Docker host is relieved, and below which hosts can take containers", 0.8d);
+
+    @SetFromFlag("consolidate")
+    public static final ConfigKey<Boolean> CONSOLIDATE = ConfigKeys.newBooleanConfigKey(
+            "docker.rebalance.consolidate", "Drain lightly used Docker hosts onto the others", Boolean.TRUE);
+
+    public static final AttributeSensor<Long> MIGRATION_COUNT = Sensors.newLongSensor(
+            "docker.rebalance.migrations", "Number of containers moved by rebalancing");
+
+    public static final AttributeSensor<Entity> DRAINING_HOST = Sensors.newSensor(Entity.class,
+            "docker.rebalance.draining", "Docker host being drained by rebalancing");
+
+    private transient Task<?> scheduled;
+
+    @Override
+    public void setEntity(EntityLocal entity) {
+        Preconditions.checkArgument(entity instanceof DockerInfrastructure, "Entity must be a DockerInfrastructure: %s", entity);
+        super.setEntity(entity);
+        schedule();
+    }
+
+    @Override
+    public void suspend() {
+        super.suspend();
+        shutdown();
+    }
+
+    @Override
+    public void resume() {
+        super.resume();
+        schedule();
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        shutdown();
+    }
+
+    private synchronized void schedule() {
+        if (scheduled != null) return;
+        Duration period = config().get(PERIOD);
+        Callable<Task<?>> job = new Callable<Task<?>>() {
+            @Override
+            public Task<?> call() {
+                return TaskBuilder.<Void>builder()
+                        .name("Rebalancing Docker hosts")
+                        .body(new Callable<Void>() {
+                            @Override
+                            public Void call() {
+                                try {
+                                    if (isRunning()) rebalance();
+                                } catch (Throwable t) {
+                                    LOG.warn("Rebalancing failed for " + entity, t);
+                                    Exceptions.propagateIfFatal(t);
+                                }
+                                return null;
+                            }
+                        })
+                        .build();
+            }
+        };
+        Map<String, Object> flags = MutableMap.<String, Object>of("displayName", "Docker rebalancing", "delay", period, "period", period);
+        scheduled = ((EntityInternal) entity).getExecutionContext().submit(new ScheduledTask(flags, job));
+    }
+
+    private synchronized void shutdown() {
+        if (scheduled != null) scheduled.cancel(true);
+        scheduled = null;
+        Optional<DockerHostLocation> drain = getDraining();
+        if (drain.isPresent()) drain.get().setDraining(false);
+        setDraining(null);
+    }
+
+    /**
+     * Run once, moving up to {@link #MAX_MIGRATIONS} containers.
+     */
+    protected void rebalance() {
+        DockerInfrastructure infrastructure = (DockerInfrastructure) entity;
+        DockerLocation location = infrastructure.getDynamicLocation();
+        if (location == null) return;
+        int budget = config().get(MAX_MIGRATIONS);
+        double maxCpu = config().get(MAX_CPU);
+        int maxContainers = location.getMaxContainers();
+
+        List<DockerHostLocation> hosts = MutableList.of();
+        for (Entity member : infrastructure.getDockerHostList()) {
+            DockerHostLocation host = ((DockerHost) member).getDynamicLocation();
+            if (host != null && Boolean.TRUE.equals(member.getAttribute(SoftwareProcess.SERVICE_UP))) hosts.add(host);
+        }
+
+        // Draining is not persisted by the host location, so restore it after rebind
+        DockerHostLocation drain = getDraining().orNull();
+        if (drain != null && !drain.isDraining()) drain.setDraining(true);
+
+        // Relieve overloaded hosts, hottest first
+        List<DockerHostLocation> hot = MutableList.of();
+        for (DockerHostLocation host : hosts) {
+            if (getLoad(host) > maxCpu) hot.add(host);
+        }
+        Collections.sort(hot, new Comparator<DockerHostLocation>() {
+            @Override
+            public int compare(DockerHostLocation h1, DockerHostLocation h2) {
+                return Doubles.compare(getLoad(h2), getLoad(h1));
+            }
+        });
+        for (DockerHostLocation host : hot) {
+            if (budget == 0) return;
+            if (host.equals(drain)) continue;
+            Optional<Entity> movable = getMovable(location, host, hosts, maxCpu);
+            if (movable.isPresent()) {
+                LOG.info("Relieving Docker host {} with CPU load {}", host, getLoad(host));
+                if (migrate(host, movable.get(), false)) budget--;
+            }
+        }
+
+        if (!Boolean.TRUE.equals(config().get(CONSOLIDATE))) return;
+
+        // Continue draining, or choose the host with the fewest containers that all fit elsewhere
+        if (drain != null && (!hosts.contains(drain) || getRunning(drain).isEmpty())) {
+            LOG.info("Finished draining Docker host {}", drain);
+            drain.getContainerPool().clear();
+            drain.setDraining(false);
+            drain = null;
+            setDraining(null);
+        }
+        if (drain == null) {
+            List<DockerHostLocation> candidates = MutableList.copyOf(hosts);
+            candidates.removeAll(hot);
+            Collections.sort(candidates, new Comparator<DockerHostLocation>() {
+                @Override
+                public int compare(DockerHostLocation h1, DockerHostLocation h2) {
+                    return Ints.compare(getRunning(h1).size(), getRunning(h2).size());
+                }
+            });
+            for (DockerHostLocation candidate : candidates) {
+                if (getRunning(candidate).isEmpty() || candidate.getReservedCount() > 0 || candidate.isPinned()) continue;
+                if (isDrainable(location, candidate, hosts, maxContainers, maxCpu)) {
+                    LOG.info("Draining Docker host {} with {} containers", candidate, candidate.getContainerCount());
+                    drain = candidate;
+                    drain.setDraining(true);
+                    setDraining(drain);
+                }
+                break;
+            }
+        }
+        while (drain != null && budget > 0) {
+            Optional<Entity> movable = getMovable(location, drain, hosts, maxCpu);
+            if (!movable.isPresent() || !migrate(drain, movable.get(), true)) break;
+            budget--;
+        }
+    }
+
+    /**
+     * Whether all the entities on the host are movable, the placement strategies accept another host for each
+     * of them, and they fit on the other hosts below the CPU threshold. Pooled containers are ignored.
+     */
+    private boolean isDrainable(DockerLocation location, DockerHostLocation candidate, List<DockerHostLocation> hosts, int maxContainers, double maxCpu) {
+        List<Entity> running = getRunning(candidate);
+        for (Entity each : running) {
+            if (!isMovable(each) || getTargets(location, candidate, each, hosts, maxCpu).isEmpty()) return false;
+        }
+        long spare = 0L;
+        for (DockerHostLocation host : hosts) {
+            if (host.equals(candidate) || host.isDraining() || getLoad(host) > maxCpu) continue;
+            spare += Math.max(0, maxContainers - host.getAllocatedCount());
+        }
+        return spare >= running.size();
+    }
+
+    /**
+     * The other hosts the placement strategies of the location accept for the entity, that are not
+     * draining or above the CPU threshold.
+     */
+    private List<DockerHostLocation> getTargets(DockerLocation location, DockerHostLocation source, Entity running, List<DockerHostLocation> hosts, double maxCpu) {
+        List<DockerHostLocation> targets = MutableList.of();
+        for (DockerHostLocation host : hosts) {
+            if (!host.equals(source) && !host.isDraining() && getLoad(host) <= maxCpu) targets.add(host);
+        }
+        if (targets.isEmpty()) return targets;
+        return location.filterDockerHostLocations(targets, running);
+    }
+
+    /**
+     * Move the entity off the host, by invoking {@link DynamicCluster#REPLACE_MEMBER replaceMember} on its
+     * cluster while the host is draining.
+     *
+     * @return true if the entity was replaced
+     */
+    private boolean migrate(DockerHostLocation host, Entity running, boolean keepDraining) {
+        DynamicCluster cluster = (DynamicCluster) running.getParent();
+        LOG.info("Moving {} off Docker host {}", running, host);
+        host.setDraining(true);
+        try {
+            String replacement = Entities.invokeEffectorWithArgs(entity, cluster, DynamicCluster.REPLACE_MEMBER, running.getId()).get();
+            LOG.debug("Replaced {} in {} with {}", new Object[] { running, cluster, replacement });
+            Long migrations = entity.getAttribute(MIGRATION_COUNT);
+            entity.setAttribute(MIGRATION_COUNT, (migrations == null ? 0L : migrations) + 1L);
+            return true;
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.warn("Failed to move " + running + " off Docker host " + host, e);
+            keepDraining = false;
+            if (host.equals(getDraining().orNull())) setDraining(null);
+            return false;
+        } finally {
+            if (!keepDraining) host.setDraining(false);
+        }
+    }
+
+    /**
+     * The first entity on the host that can be moved now to a host the placement strategies accept, if any.
+     */
+    private Optional<Entity> getMovable(DockerLocation location, DockerHostLocation host, List<DockerHostLocation> hosts, double maxCpu) {
+        for (Entity running : getRunning(host)) {
+            if (isMovable(running) && isClusterUp(running) && !getTargets(location, host, running, hosts, maxCpu).isEmpty()) {
+                return Optional.of(running);
+            }
+        }
+        return Optional.absent();
+    }
+
+    /** The entities running in containers on the host, ignoring pooled containers. */
+    private List<Entity> getRunning(DockerHostLocation host) {
+        List<Entity> result = MutableList.of();
+        for (Entity container : host.getDockerContainerList()) {
+            Entity running = ((DockerContainer) container).getRunningEntity();
+            if (running != null) result.add(running);
+        }
+        return result;
+    }
+
+    /** Stateless cluster members can be moved. */
+    private boolean isMovable(Entity running) {
+        Entity parent = running.getParent();
+        return Boolean.TRUE.equals(running.config().get(DockerAttributes.DOCKER_CONTAINER_STATELESS))
+                && parent instanceof DynamicCluster
+                && ((DynamicCluster) parent).hasMember(running);
+    }
+
+    /** Every member of the cluster is up, so moving one does not reduce capacity further. */
+    private boolean isClusterUp(Entity running) {
+        for (Entity member : ((DynamicCluster) running.getParent()).getMembers()) {
+            if (!Boolean.TRUE.equals(member.getAttribute(SoftwareProcess.SERVICE_UP))) return false;
+        }
+        return true;
+    }
+
+    /** The location of the host being drained, from the {@link #DRAINING_HOST} sensor. */
+    private Optional<DockerHostLocation> getDraining() {
+        Entity host = entity.getAttribute(DRAINING_HOST);
+        if (!(host instanceof DockerHost)) return Optional.absent();
+        return Optional.fromNullable(((DockerHost) host).getDynamicLocation());
+    }
+
+    private void setDraining(DockerHostLocation host) {
+        entity.setAttribute(DRAINING_HOST, host == null ? null : host.getOwner());
+    }
+
+    private double getLoad(DockerHostLocation host) {
+        return host.getLoad().getForecast(Duration.ZERO, 0d);
+    }
+
+}
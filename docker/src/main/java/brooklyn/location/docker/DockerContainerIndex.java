@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * A bidirectional index of container location IDs and the {@link DockerHostLocation hosts} they are on.
+ * <p>
+ * Looking up the host for a container is lock-free. Adding and removing containers only
+ * synchronizes on the set of containers for the affected host, so releases on different
+ * hosts do not contend, and exactly one caller sees the last container removed from a host.
+ */
+public class DockerContainerIndex {
+
+    private final ConcurrentMap<String, DockerHostLocation> hosts = Maps.newConcurrentMap();
+    private final ConcurrentMap<DockerHostLocation, Set<String>> containers = Maps.newConcurrentMap();
+
+    /**
+     * Record a container on a host.
+     */
+    public void add(DockerHostLocation host, String id) {
+        hosts.put(id, host);
+        while (true) {
+            Set<String> ids = containers.get(host);
+            if (ids == null) {
+                ids = Sets.newHashSet(id);
+                if (containers.putIfAbsent(host, ids) == null) return;
+            } else {
+                synchronized (ids) {
+                    // The set is discarded once empty, so check it is still current
+                    if (containers.get(host) == ids) {
+                        ids.add(id);
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the host for a container, if it is indexed
+     */
+    public Optional<DockerHostLocation> getHost(String id) {
+        return Optional.fromNullable(hosts.get(id));
+    }
+
+    /**
+     * @return a copy of the container IDs on a host
+     */
+    public Set<String> getContainers(DockerHostLocation host) {
+        Set<String> ids = containers.get(host);
+        if (ids == null) return ImmutableSet.of();
+        synchronized (ids) {
+            return ImmutableSet.copyOf(ids);
+        }
+    }
+
+    /**
+     * Remove a container from the index.
+     *
+     * @return the number of containers left on its host, or {@code -1} if the container was not indexed
+     */
+    public int remove(String id) {
+        DockerHostLocation host = hosts.remove(id);
+        if (host == null) return -1;
+        Set<String> ids = containers.get(host);
+        if (ids == null) return 0;
+        synchronized (ids) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                containers.remove(host, ids);
+            }
+            return ids.size();
+        }
+    }
+
+    /**
+     * @return the total number of containers indexed
+     */
+    public int size() {
+        return hosts.size();
+    }
+}
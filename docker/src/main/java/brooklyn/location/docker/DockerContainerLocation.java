@@ -54,6 +54,7 @@ import brooklyn.util.time.Duration;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Objects.ToStringHelper;
+import com.google.common.base.Optional;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
@@ -150,6 +151,20 @@ public class DockerContainerLocation extends SshMachineLocation implements Suppo
         return portNumber;
     }
 
+    /**
+     * Record the host port mapped to each of the container ports, for an entity that has claimed
+     * a pooled container and so did not obtain its ports from this location.
+     */
+    public void mapPorts(Iterable<Integer> containerPorts) {
+        for (Integer port : containerPorts) {
+            int targetPort = getMappedPort(port);
+            if (targetPort > 0) {
+                mapPort(targetPort, port);
+                addIptablesRule(targetPort);
+            }
+        }
+    }
+
     private void mapPort(int hostPort, int containerPort) {
         String dockerHost = getAddress().getHostAddress();
         PortForwardManager portForwardManager = getOwner().getDockerHost().getSubnetTier().getPortForwardManager();
@@ -203,9 +218,14 @@ public class DockerContainerLocation extends SshMachineLocation implements Suppo
             ((EntityLocal) getOwner().getRunningEntity()).setAttribute(DockerContainer.IMAGE_ID, imageId);
             ((EntityLocal) getOwner()).setAttribute(DockerContainer.IMAGE_ID, imageId);
             getOwner().getDockerHost().getDynamicLocation().markImage(imageName);
+            Optional<DockerImageCache> cache = getOwner().getDockerHost().getInfrastructure().getDynamicLocation().getImageCache();
+            if (cache.isPresent()) cache.get().addHolder(getOwner().getDockerHost(), imageName);
+            DockerUtils.pushImage(getOwner().getDockerHost(), imageName);
         } else if (DockerCallbacks.PUSH.equalsIgnoreCase(command)) {
             String imageName = getOwner().getAttribute(DockerContainer.IMAGE_NAME);
-            getOwner().getDockerHost().runDockerCommand(format("push %s", imageName));
+            if (!DockerUtils.pushImage(getOwner().getDockerHost(), imageName)) {
+                getOwner().getDockerHost().runDockerCommand(format("push %s", imageName));
+            }
         } else if (DockerCallbacks.SUBNET_ADDRESS.equalsIgnoreCase(command)) {
             String address = getOwner().getAttribute(Attributes.SUBNET_ADDRESS);
             ((EntityLocal) getOwner().getRunningEntity()).setAttribute(Attributes.SUBNET_ADDRESS, address);
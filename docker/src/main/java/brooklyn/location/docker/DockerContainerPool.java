@@ -0,0 +1,289 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.basic.EntityLocal;
+import brooklyn.entity.container.DockerAttributes;
+import brooklyn.entity.container.docker.DockerContainer;
+import brooklyn.entity.container.docker.DockerHost;
+import brooklyn.event.basic.PortAttributeSensorAndConfigKey;
+import brooklyn.location.NoMachinesAvailableException;
+import brooklyn.location.PortRange;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.task.TaskBuilder;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * A pool of pre-created {@link DockerContainer containers} on a single {@link DockerHostLocation host}.
+ * <p>
+ * Containers are pooled by image and hardware ID and by the {@link #configuration(Entity) configuration}
+ * of the entity, for the {@link DockerAttributes#DOCKER_CONTAINER_POOL_IMAGES most used} images on the host.
+ * Each pool is kept at {@link DockerAttributes#DOCKER_CONTAINER_POOL_SIZE} containers, and is refilled in
+ * the background after a container is claimed. Pooled containers are created using the entity that
+ * claimed a container as a template, and are only claimed by entities whose ports, volumes, environment
+ * and resource limits match exactly. Containers may optionally be
+ * {@link DockerAttributes#DOCKER_CONTAINER_POOL_PAUSED paused} until they are claimed.
+ * <p>
+ * Note that pooled containers are members of the host container cluster, and a slot is
+ * {@link DockerHostLocation#reserve(int) reserved} for each one before it is created, so the pool
+ * never takes the host past its container limit.
+ */
+public class DockerContainerPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DockerContainerPool.class);
+
+    private final DockerHostLocation location;
+    private final ConcurrentMap<String, Queue<DockerContainer>> pooled = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, AtomicInteger> pending = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, AtomicLong> usage = Maps.newConcurrentMap();
+
+    public DockerContainerPool(DockerHostLocation location) {
+        this.location = Preconditions.checkNotNull(location, "location");
+    }
+
+    /**
+     * Claim a pooled container for an entity, if one is available.
+     *
+     * @return the claimed container, already linked to the entity
+     */
+    public Optional<DockerContainer> claim(String imageId, String hardwareId, Entity entity) {
+        String key = key(imageId, hardwareId, entity);
+        getOrCreate(usage, key, new AtomicLong()).incrementAndGet();
+
+        Queue<DockerContainer> queue = pooled.get(key);
+        if (queue == null) return Optional.absent();
+
+        DockerContainer container;
+        while ((container = queue.poll()) != null) {
+            if (Boolean.TRUE.equals(container.getAttribute(DockerContainer.SERVICE_UP)) && container.getDynamicLocation() != null) {
+                if (isPaused()) {
+                    location.getOwner().runDockerCommand("unpause " + container.getContainerId());
+                }
+                container.claim(entity);
+                LOG.info("Claimed pooled container {} on {} for {}", new Object[] { container, location, entity });
+                return Optional.of(container);
+            } else {
+                LOG.warn("Discarding failed pooled container {} on {}", container, location);
+                discard(container);
+            }
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * Refill the pool for an image in the background, using the entity as a template for new containers.
+     * <p>
+     * Pools for images that are no longer among the most used are emptied. No more containers are
+     * created than there are slots left on the host below {@code maxContainers}.
+     */
+    public void refill(final String imageId, final String hardwareId, final Entity template, int maxContainers) {
+        DockerHost host = location.getOwner();
+        Integer size = host.config().get(DockerAttributes.DOCKER_CONTAINER_POOL_SIZE);
+        if (size == null || size <= 0) return;
+
+        trim();
+        final String key = key(imageId, hardwareId, template);
+        if (!isHot(key)) return;
+
+        final Queue<DockerContainer> queue = getOrCreate(pooled, key, new ConcurrentLinkedQueue<DockerContainer>());
+        final AtomicInteger creating = getOrCreate(pending, key, new AtomicInteger());
+        int needed = 0;
+        synchronized (this) {
+            while (queue.size() + creating.get() < size && location.reserve(maxContainers)) {
+                creating.incrementAndGet();
+                needed++;
+            }
+        }
+
+        for (int i = 0; i < needed; i++) {
+            ((EntityInternal) host).getExecutionContext().submit(TaskBuilder.<Void>builder()
+                    .name("Creating pooled container")
+                    .body(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            try {
+                                queue.add(create(imageId, hardwareId, template));
+                            } catch (Exception e) {
+                                LOG.warn("Failed to create pooled container on " + location, e);
+                                Exceptions.propagateIfFatal(e);
+                            } finally {
+                                creating.decrementAndGet();
+                            }
+                            return null;
+                        }
+                    })
+                    .build());
+        }
+    }
+
+    /** The number of containers waiting in the pool. */
+    public int size() {
+        int size = 0;
+        for (Queue<DockerContainer> queue : pooled.values()) {
+            size += queue.size();
+        }
+        return size;
+    }
+
+    /**
+     * Remove all the containers waiting in the pool, for example when the host is drained.
+     */
+    public void clear() {
+        for (Queue<DockerContainer> queue : pooled.values()) {
+            DockerContainer container;
+            while ((container = queue.poll()) != null) {
+                LOG.debug("Removing pooled container {} from {}", container, location);
+                discard(container);
+            }
+        }
+    }
+
+    private DockerContainer create(String imageId, String hardwareId, Entity template) throws NoMachinesAvailableException {
+        LOG.debug("Creating pooled container with imageId {} at {}", imageId, location);
+        Map<Object, Object> containerFlags = MutableMap.builder()
+                .put("entity", template)
+                .put("pooled", true)
+                .putIfNotNull("imageId", imageId)
+                .putIfNotNull("hardwareId", hardwareId)
+                .build();
+        DockerContainer container = location.addContainer(containerFlags);
+        ((EntityLocal) container).setAttribute(DockerContainer.IMAGE_ID, imageId);
+        ((EntityLocal) container).setAttribute(DockerContainer.HARDWARE_ID, hardwareId);
+
+        if (isPaused()) {
+            location.getOwner().runDockerCommand("pause " + container.getContainerId());
+        }
+        return container;
+    }
+
+    private void trim() {
+        for (String key : pooled.keySet()) {
+            if (!isHot(key)) {
+                Queue<DockerContainer> queue = pooled.get(key);
+                DockerContainer container;
+                while ((container = queue.poll()) != null) {
+                    LOG.debug("Removing pooled container {} for unused image from {}", container, location);
+                    discard(container);
+                }
+            }
+        }
+    }
+
+    /** Whether the image is among the most used on this host. */
+    private boolean isHot(String key) {
+        Integer images = location.getOwner().config().get(DockerAttributes.DOCKER_CONTAINER_POOL_IMAGES);
+        AtomicLong count = usage.get(key);
+        if (count == null || images == null) return false;
+        int higher = 0;
+        for (Map.Entry<String, AtomicLong> entry : usage.entrySet()) {
+            if (!entry.getKey().equals(key) && entry.getValue().get() > count.get()) higher++;
+        }
+        return higher < images;
+    }
+
+    private boolean isPaused() {
+        return Boolean.TRUE.equals(location.getOwner().config().get(DockerAttributes.DOCKER_CONTAINER_POOL_PAUSED));
+    }
+
+    private void discard(final DockerContainer container) {
+        ((EntityInternal) location.getOwner()).getExecutionContext().submit(TaskBuilder.<Void>builder()
+                .name("Removing pooled container")
+                .body(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        DockerContainerLocation machine = container.getDynamicLocation();
+                        if (machine != null) location.release(machine);
+                        return null;
+                    }
+                })
+                .build());
+    }
+
+    private static <T> T getOrCreate(ConcurrentMap<String, T> map, String key, T initial) {
+        T existing = map.putIfAbsent(key, initial);
+        return existing != null ? existing : initial;
+    }
+
+    private static String key(String imageId, String hardwareId, Entity entity) {
+        return imageId + ":" + hardwareId + ":" + configuration(entity);
+    }
+
+    /**
+     * The configuration of an entity that is fixed when its container is created: the ports it
+     * opens or binds directly, its volumes, its environment and its resource limits.
+     */
+    static Map<String, Object> configuration(Entity entity) {
+        Map<String, Object> result = Maps.newTreeMap();
+        result.put("ports", ports(entity));
+        List<Integer> direct = Lists.newArrayList();
+        List<PortAttributeSensorAndConfigKey> directConfig = entity.config().get(DockerAttributes.DOCKER_DIRECT_PORT_CONFIG);
+        if (directConfig != null) {
+            for (PortAttributeSensorAndConfigKey key : directConfig) {
+                PortRange range = entity.config().get(key);
+                if (range != null && !range.isEmpty()) direct.add(range.iterator().next());
+            }
+        }
+        List<Integer> directPorts = entity.config().get(DockerAttributes.DOCKER_DIRECT_PORTS);
+        if (directPorts != null) direct.addAll(directPorts);
+        result.put("direct", direct);
+        result.put("volumes", entity.config().get(DockerAttributes.DOCKER_HOST_VOLUME_MAPPING));
+        result.put("exports", entity.config().get(DockerAttributes.DOCKER_CONTAINER_VOLUME_EXPORT));
+        result.put("environment", entity.config().get(DockerContainer.DOCKER_CONTAINER_ENVIRONMENT));
+        result.put("cpuShares", entity.config().get(DockerAttributes.DOCKER_CPU_SHARES));
+        result.put("memory", entity.config().get(DockerAttributes.DOCKER_MEMORY));
+        result.put("hostDns", entity.config().get(DockerAttributes.DOCKER_USE_HOST_DNS_NAME));
+        return result;
+    }
+
+    /** The ports the container for an entity and its children opens, as for {@code DockerContainerImpl#getRequiredOpenPorts}. */
+    static Set<Integer> ports(Entity entity) {
+        Set<Integer> ports = Sets.newTreeSet();
+        for (ConfigKey<?> key : entity.getEntityType().getConfigKeys()) {
+            if (PortRange.class.isAssignableFrom(key.getType())) {
+                PortRange range = (PortRange) entity.config().get(key);
+                if (range != null && !range.isEmpty()) ports.add(range.iterator().next());
+            }
+        }
+        List<Integer> open = entity.config().get(DockerAttributes.DOCKER_OPEN_PORTS);
+        if (open != null) ports.addAll(open);
+        for (Entity child : entity.getChildren()) {
+            ports.addAll(ports(child));
+        }
+        return ports;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.Application;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.basic.SoftwareProcess;
+import brooklyn.entity.container.DockerAttributes;
+import brooklyn.entity.container.docker.DockerInfrastructure;
+import brooklyn.location.MachineLocation;
+import brooklyn.location.basic.LocationConfigKeys;
+import brooklyn.management.Task;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.task.TaskBuilder;
+import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Collects the container requests of each starting application so a {@link DockerLocation} can place them together.
+ * <p>
+ * The first request from an application opens a gang. Its size is the {@link DockerAttributes#DOCKER_PLACEMENT_GANG_SIZE
+ * declared} gang size of the requesting entity, which can be set on the application, or else the number of its
+ * software processes that do not yet have a machine. The gang is closed once that many requests have arrived, when no
+ * request has arrived for the {@link DockerInfrastructure#DOCKER_PLACEMENT_GANG_IDLE idle time}, or when the
+ * {@link DockerInfrastructure#DOCKER_PLACEMENT_GANG_WINDOW window} expires, and its requests are passed to the
+ * {@link DockerLocation#obtain(List) bulk obtain}. That computes one placement plan for the whole gang, provisions
+ * every new host it needs in parallel, and creates the containers in parallel. If any part fails the reservations
+ * and containers of the whole gang are released and every request fails, so an application is never left half placed.
+ * <p>
+ * Each gang is timed by a task in the execution context of the infrastructure.
+ */
+public class DockerGangScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DockerGangScheduler.class);
+
+    private final DockerLocation location;
+    private final Duration window;
+    private final Duration idle;
+    private final Map<String, Gang> gangs = Maps.newHashMap();
+
+    public DockerGangScheduler(DockerLocation location, Duration window, Duration idle) {
+        this.location = Preconditions.checkNotNull(location, "location");
+        this.window = Preconditions.checkNotNull(window, "window");
+        this.idle = idle == null ? window : idle;
+    }
+
+    /**
+     * Add a request to the gang for its entity's application.
+     *
+     * @return a future for the container location, completed when the gang has been placed
+     */
+    public synchronized ListenableFuture<MachineLocation> submit(Map<?,?> flags) {
+        Entity entity = (Entity) flags.get(LocationConfigKeys.CALLER_CONTEXT.getName());
+        String key = entity.getApplicationId();
+        Gang gang = gangs.get(key);
+        if (gang == null) {
+            gang = new Gang(getExpectedSize(entity));
+            gangs.put(key, gang);
+            gang.timeout = time(key, gang);
+            LOG.debug("Opened gang of {} for application {}", gang.expected, key);
+        }
+        SettableFuture<MachineLocation> result = SettableFuture.create();
+        gang.requests.add(flags);
+        gang.results.add(result);
+        gang.updated = System.currentTimeMillis();
+        if (gang.requests.size() >= gang.expected) {
+            close(key, gang);
+        }
+        return result;
+    }
+
+    /** Stop timing the open gangs and fail their requests. */
+    public synchronized void shutdown() {
+        for (Gang gang : gangs.values()) {
+            if (gang.timeout != null) gang.timeout.cancel(true);
+            for (SettableFuture<MachineLocation> result : gang.results) {
+                result.setException(new IllegalStateException("Docker location closed before gang was placed: " + location));
+            }
+        }
+        gangs.clear();
+    }
+
+    private synchronized void close(String key, Gang gang) {
+        if (gangs.get(key) != gang) return;
+        gangs.remove(key);
+        if (gang.timeout != null) gang.timeout.cancel(true);
+        LOG.info("Placing gang of {} containers for application {}", gang.requests.size(), key);
+        place(gang);
+    }
+
+    /**
+     * Close the gang once it has been idle for too long or its window has expired, unless it fills up first.
+     */
+    private Task<Void> time(final String key, final Gang gang) {
+        final long deadline = System.currentTimeMillis() + window.toMilliseconds();
+        return ((EntityInternal) location.getOwner()).getExecutionContext().submit(TaskBuilder.<Void>builder()
+                .name("Waiting for gang of Docker containers")
+                .body(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        while (true) {
+                            long wake;
+                            synchronized (DockerGangScheduler.this) {
+                                if (gangs.get(key) != gang) return null;
+                                long now = System.currentTimeMillis();
+                                wake = Math.min(deadline, gang.updated + idle.toMilliseconds());
+                                if (now >= wake) {
+                                    gang.timeout = null;
+                                    close(key, gang);
+                                    return null;
+                                }
+                                wake -= now;
+                            }
+                            Time.sleep(Duration.millis(wake));
+                        }
+                    }
+                })
+                .build());
+    }
+
+    /** Place the gang in a task in the infrastructure execution context, as the bulk obtain blocks. */
+    private void place(final Gang gang) {
+        ((EntityInternal) location.getOwner()).getExecutionContext().submit(TaskBuilder.<Void>builder()
+                .name(String.format("Obtaining gang of %d Docker containers", gang.requests.size()))
+                .body(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            List<MachineLocation> obtained = location.obtain(gang.requests);
+                            for (int i = 0; i < obtained.size(); i++) {
+                                gang.results.get(i).set(obtained.get(i));
+                            }
+                        } catch (Throwable t) {
+                            LOG.warn("Failed to place gang of " + gang.requests.size() + " containers", t);
+                            for (SettableFuture<MachineLocation> result : gang.results) {
+                                result.setException(t);
+                            }
+                            Exceptions.propagateIfFatal(t);
+                        }
+                        return null;
+                    }
+                })
+                .build());
+    }
+
+    /**
+     * The declared gang size of the entity, or else the number of software processes in its application that have
+     * no machine yet, excluding any entities of the infrastructure itself, so at least one.
+     */
+    private int getExpectedSize(Entity entity) {
+        Integer declared = entity.config().get(DockerAttributes.DOCKER_PLACEMENT_GANG_SIZE);
+        if (declared != null && declared > 0) return declared;
+        Application application = entity.getApplication();
+        if (application == null) return 1;
+        int expected = 0;
+        for (SoftwareProcess process : Iterables.filter(Entities.descendants(application), SoftwareProcess.class)) {
+            if (Entities.isAncestor(process, location.getOwner())) continue;
+            if (Boolean.TRUE.equals(process.getAttribute(SoftwareProcess.SERVICE_UP))) continue;
+            if (Iterables.isEmpty(Iterables.filter(process.getLocations(), MachineLocation.class))) expected++;
+        }
+        return Math.max(expected, 1);
+    }
+
+    /** The requests collected for one application. */
+    private static class Gang {
+        private final int expected;
+        private final List<Map<?,?>> requests = Lists.newArrayList();
+        private final List<SettableFuture<MachineLocation>> results = Lists.newArrayList();
+        private long updated;
+        private Task<Void> timeout;
+
+        private Gang(int expected) {
+            this.expected = expected;
+        }
+    }
+
+}
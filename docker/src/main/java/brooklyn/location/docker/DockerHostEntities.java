@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker;
+
+import java.util.List;
+import java.util.Map;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.basic.EntityPredicates;
+import brooklyn.entity.container.docker.DockerContainer;
+import brooklyn.management.ManagementContext;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+
+/**
+ * An index of the entities deployed on a single {@link DockerHostLocation host}, by ID, type and application.
+ * <p>
+ * Entities are added when they are placed on the host and removed when their container is released,
+ * so affinity rules can be checked without searching all managed entities. The index is seeded the first
+ * time it is used from the running containers on the host, and any entities located on the host directly.
+ * It is {@link #rebuild() rebuilt} the same way after a rebind, and when containers are found on the host
+ * that were not started by Brooklyn, so entities deployed without being placed are not missed.
+ */
+public class DockerHostEntities {
+
+    private final DockerHostLocation location;
+    private final Map<String, Entity> entities = Maps.newLinkedHashMap();
+    private final Multiset<String> types = HashMultiset.create();
+    private final Map<String, String> simpleNames = Maps.newHashMap();
+    private final Multiset<String> applications = HashMultiset.create();
+    private boolean seeded = false;
+
+    public DockerHostEntities(DockerHostLocation location) {
+        this.location = Preconditions.checkNotNull(location, "location");
+    }
+
+    public synchronized void add(Entity entity) {
+        seed();
+        put(entity);
+    }
+
+    public synchronized void remove(Entity entity) {
+        if (entity == null) return;
+        seed();
+        if (entities.remove(entity.getId()) != null) {
+            types.remove(entity.getEntityType().getName());
+            applications.remove(entity.getApplicationId());
+        }
+    }
+
+    public synchronized int size() {
+        seed();
+        return entities.size();
+    }
+
+    public synchronized boolean containsId(String id) {
+        seed();
+        return entities.containsKey(id);
+    }
+
+    /**
+     * @return the number of entities whose type name or simple name matches, ignoring case
+     */
+    public synchronized int countType(String name, String simpleName) {
+        seed();
+        int count = 0;
+        for (Multiset.Entry<String> entry : types.entrySet()) {
+            if (entry.getElement().equalsIgnoreCase(name) || simpleNames.get(entry.getElement()).equalsIgnoreCase(simpleName)) {
+                count += entry.getCount();
+            }
+        }
+        return count;
+    }
+
+    public synchronized int countApplication(String applicationId) {
+        seed();
+        return applications.count(applicationId);
+    }
+
+    public synchronized List<Entity> getEntities() {
+        seed();
+        return ImmutableList.copyOf(entities.values());
+    }
+
+    /**
+     * Discard the index, so it is seeded again from the entities on the host the next time it is used.
+     */
+    public synchronized void rebuild() {
+        entities.clear();
+        types.clear();
+        simpleNames.clear();
+        applications.clear();
+        seeded = false;
+    }
+
+    private void put(Entity entity) {
+        if (entities.put(entity.getId(), entity) == null) {
+            String type = entity.getEntityType().getName();
+            types.add(type);
+            simpleNames.put(type, entity.getEntityType().getSimpleName());
+            applications.add(entity.getApplicationId());
+        }
+    }
+
+    private void seed() {
+        if (seeded) return;
+        seeded = true;
+        if (location.getOwner() != null) {
+            List<Entity> containers = location.getDockerContainerList();
+            if (containers != null) {
+                for (Entity member : containers) {
+                    Entity running = ((DockerContainer) member).getRunningEntity();
+                    if (running != null) put(running);
+                }
+            }
+        }
+        ManagementContext managementContext = location.getOwner() == null ? location.getManagementContext()
+                : ((EntityInternal) location.getOwner()).getManagementContext();
+        if (managementContext != null) {
+            for (Entity entity : managementContext.getEntityManager().findEntities(EntityPredicates.locationsIncludes(location))) {
+                put(entity);
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker;
+
+import java.util.Deque;
+
+import brooklyn.entity.container.DockerAttributes;
+import brooklyn.entity.container.docker.DockerHost;
+import brooklyn.entity.container.docker.DockerInfrastructure;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Queues;
+
+/**
+ * A model of the CPU load on a single {@link DockerHostLocation host}, for placement.
+ * <p>
+ * Samples of the {@link DockerHost#CPU_USAGE} sensor are smoothed with an exponentially weighted moving
+ * average, and a trend is smoothed in the same way from the change in the average between samples, so a
+ * host that briefly idles does not look empty. The forecast load after a short horizon extrapolates the
+ * trend linearly, and adds the expected load of containers placed within the
+ * {@link DockerAttributes#DOCKER_HOST_LOAD_SETTLE_PERIOD settle period}, whose load will not have shown
+ * up in the samples yet, so concurrent placements do not all pick the same host.
+ */
+public class DockerHostLoad {
+
+    /** Smoothing factor for the average CPU usage. */
+    public static final double DEFAULT_SMOOTHING = 0.3d;
+
+    /** Smoothing factor for the trend in the average. */
+    public static final double DEFAULT_TREND_SMOOTHING = 0.1d;
+
+    private final DockerHostLocation location;
+    private final double smoothing;
+    private final double trendSmoothing;
+    private final Deque<Long> placements = Queues.newArrayDeque();
+    private Double average;
+    private double trend = 0d; // per millisecond
+    private long lastSample;
+
+    public DockerHostLoad(DockerHostLocation location) {
+        this(location, DEFAULT_SMOOTHING, DEFAULT_TREND_SMOOTHING);
+    }
+
+    public DockerHostLoad(DockerHostLocation location, double smoothing, double trendSmoothing) {
+        Preconditions.checkArgument(smoothing > 0d && smoothing <= 1d, "smoothing must be in (0, 1]: %s", smoothing);
+        Preconditions.checkArgument(trendSmoothing > 0d && trendSmoothing <= 1d, "trend smoothing must be in (0, 1]: %s", trendSmoothing);
+        this.location = Preconditions.checkNotNull(location, "location");
+        this.smoothing = smoothing;
+        this.trendSmoothing = trendSmoothing;
+    }
+
+    /**
+     * Add a sample of the host CPU usage, taken at the given time in milliseconds.
+     */
+    public synchronized void sample(double cpu, long timestamp) {
+        if (average == null) {
+            average = cpu;
+        } else if (timestamp <= lastSample) {
+            average = smoothing * cpu + (1d - smoothing) * average;
+            return;
+        } else {
+            long elapsed = timestamp - lastSample;
+            double previous = average;
+            average = smoothing * cpu + (1d - smoothing) * (previous + trend * elapsed);
+            trend = trendSmoothing * (average - previous) / elapsed + (1d - trendSmoothing) * trend;
+        }
+        lastSample = timestamp;
+    }
+
+    /**
+     * Record a container being placed on this host.
+     */
+    public void placed() {
+        placed(System.currentTimeMillis());
+    }
+
+    synchronized void placed(long timestamp) {
+        prune(timestamp);
+        placements.addLast(timestamp);
+    }
+
+    /**
+     * @return the smoothed CPU usage, or the current value of the sensor if there have been no samples
+     */
+    public synchronized Double getAverage() {
+        return average != null ? average : location.getCpuUsage();
+    }
+
+    /**
+     * @return the smoothed change in CPU usage per second
+     */
+    public synchronized double getTrend() {
+        return trend * 1000d;
+    }
+
+    /**
+     * @return the number of containers placed within the settle period
+     */
+    public int getInFlightCount() {
+        return getInFlightCount(System.currentTimeMillis());
+    }
+
+    synchronized int getInFlightCount(long now) {
+        prune(now);
+        return placements.size();
+    }
+
+    /**
+     * The expected CPU usage of a new container, from the average usage of the settled containers on the host.
+     *
+     * @return the expected usage, or {@code null} if it cannot be estimated
+     */
+    public synchronized Double getPlacementLoad() {
+        Double current = getAverage();
+        int settled = location.getAllocatedCount() - getInFlightCount();
+        if (current == null || settled <= 0) return null;
+        return Math.max(current, 0d) / settled;
+    }
+
+    /**
+     * The forecast CPU usage of the host after the horizon, including containers that have not settled.
+     *
+     * @param horizon how far ahead to extrapolate the trend
+     * @param placementLoad the expected CPU usage of each new container, if it cannot be {@link #getPlacementLoad() estimated}
+     */
+    public synchronized double getForecast(Duration horizon, double placementLoad) {
+        Double current = getAverage();
+        double forecast = current == null ? 0d : Math.max(current + trend * horizon.toMilliseconds(), 0d);
+        Double estimated = getPlacementLoad();
+        return forecast + getInFlightCount() * (estimated == null ? placementLoad : estimated);
+    }
+
+    private void prune(long now) {
+        long settle = getSettlePeriod().toMilliseconds();
+        while (!placements.isEmpty() && placements.peekFirst() < now - settle) {
+            placements.removeFirst();
+        }
+    }
+
+    private Duration getSettlePeriod() {
+        DockerInfrastructure infrastructure = location.getParent() instanceof DockerLocation ? location.getDockerInfrastructure() : null;
+        Duration settle = infrastructure == null ? null : infrastructure.config().get(DockerAttributes.DOCKER_HOST_LOAD_SETTLE_PERIOD);
+        return settle == null ? DockerAttributes.DOCKER_HOST_LOAD_SETTLE_PERIOD.getDefaultValue() : settle;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return Objects.toStringHelper(this)
+                .add("average", average)
+                .add("trend", getTrend())
+                .add("inFlight", placements.size())
+                .toString();
+    }
+
+}
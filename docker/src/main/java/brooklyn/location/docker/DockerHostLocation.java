@@ -22,6 +22,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -29,6 +30,8 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.domain.LocationScope;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,9 +40,12 @@ import brooklyn.config.render.RendererHints;
 import brooklyn.config.render.RendererHints.Hint;
 import brooklyn.config.render.RendererHints.NamedActionWithUrl;
 import brooklyn.entity.Entity;
+import brooklyn.entity.basic.Attributes;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.EntityAndAttribute;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
+import brooklyn.entity.basic.Lifecycle;
 import brooklyn.entity.basic.SoftwareProcess;
 import brooklyn.entity.container.DockerAttributes;
 import brooklyn.entity.container.DockerCallbacks;
@@ -47,8 +53,15 @@ import brooklyn.entity.container.DockerUtils;
 import brooklyn.entity.container.docker.DockerContainer;
 import brooklyn.entity.container.docker.DockerHost;
 import brooklyn.entity.container.docker.DockerInfrastructure;
+import brooklyn.entity.container.docker.DockerRegistry;
+import brooklyn.entity.container.policy.DockerHostCapacityIndex;
+import brooklyn.entity.container.policy.DockerHostCapacityIndex.HostCapacity;
+import brooklyn.entity.container.policy.DockerRebalancingPolicy;
 import brooklyn.entity.group.DynamicCluster;
+import brooklyn.entity.trait.Startable;
 import brooklyn.event.AttributeSensor;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.SensorEventListener;
 import brooklyn.event.basic.PortAttributeSensorAndConfigKey;
 import brooklyn.location.MachineProvisioningLocation;
 import brooklyn.location.NoMachinesAvailableException;
@@ -57,6 +70,9 @@ import brooklyn.location.basic.LocationConfigKeys;
 import brooklyn.location.basic.SshMachineLocation;
 import brooklyn.location.dynamic.DynamicLocation;
 import brooklyn.location.jclouds.JcloudsLocation;
+import brooklyn.location.jclouds.JcloudsSshMachineLocation;
+import brooklyn.management.SubscriptionContext;
+import brooklyn.management.SubscriptionHandle;
 import brooklyn.networking.common.subnet.PortForwarder;
 import brooklyn.networking.sdn.SdnAgent;
 import brooklyn.networking.sdn.SdnAttributes;
@@ -67,14 +83,23 @@ import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.flags.SetFromFlag;
 import brooklyn.util.net.Cidr;
 import brooklyn.util.ssh.BashCommands;
+import brooklyn.util.task.TaskBuilder;
 import brooklyn.util.text.Strings;
 
+import com.google.common.base.Functions;
 import com.google.common.base.Objects.ToStringHelper;
 import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureFallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 public class DockerHostLocation extends AbstractLocation implements MachineProvisioningLocation<DockerContainerLocation>, DockerVirtualLocation,
         DynamicLocation<DockerHost, DockerHostLocation>, Closeable {
@@ -87,6 +112,20 @@ public class DockerHostLocation extends AbstractLocation implements MachineProvi
 
     private transient ReadWriteLock lock = new ReentrantReadWriteLock();
 
+    private transient DockerContainerPool pool;
+
+    private transient DockerHostResources resources;
+
+    private transient DockerHostEntities entities;
+
+    private transient DockerHostLoad load;
+
+    private transient int reserved = 0;
+
+    private transient Object reservationMutex = new Object[0];
+
+    private transient volatile boolean draining = false;
+
     @SetFromFlag("machine")
     private SshMachineLocation machine;
 
@@ -120,6 +159,119 @@ public class DockerHostLocation extends AbstractLocation implements MachineProvi
 
     @Override
     public DockerContainerLocation obtain(Map<?,?> flags) throws NoMachinesAvailableException {
+        return DockerLocation.await(obtainAsync(flags));
+    }
+
+    /**
+     * Obtain a container once the host has started.
+     * <p>
+     * No thread is held while waiting for the host, or while waiting for one of the
+     * {@link DockerLocation#getCreationPermits() permits} that bound how many containers are created at once.
+     * The container is then created in a task on the execution context of the host entity, which holds a thread
+     * for the image lookup and container start. The wait for the host is recorded as the
+     * {@link DockerPlacementStatistics#HOST_WAIT} stage, even if the host is already up.
+     *
+     * @return a future for the container location
+     */
+    public ListenableFuture<DockerContainerLocation> obtainAsync(final Map<?,?> flags) {
+        final DockerLocation parent = (DockerLocation) getParent();
+        final Stopwatch waiting = Stopwatch.createStarted();
+        ListenableFuture<DockerHost> up = Futures.withFallback(whenServiceUp(), new FutureFallback<DockerHost>() {
+            @Override
+            public ListenableFuture<DockerHost> create(Throwable t) {
+                releaseReservation();
+                return Futures.immediateFailedFuture(t);
+            }
+        });
+        ListenableFuture<DockerHost> permitted = Futures.transform(up, new AsyncFunction<DockerHost, DockerHost>() {
+            @Override
+            public ListenableFuture<DockerHost> apply(DockerHost input) {
+                parent.getStatistics().recordStage(DockerPlacementStatistics.HOST_WAIT, waiting);
+                return Futures.transform(parent.getCreationPermits().acquire(), Functions.constant(input));
+            }
+        }, MoreExecutors.sameThreadExecutor());
+        return Futures.transform(permitted, new AsyncFunction<DockerHost, DockerContainerLocation>() {
+            @Override
+            public ListenableFuture<DockerContainerLocation> apply(DockerHost input) {
+                ListenableFuture<DockerContainerLocation> created;
+                try {
+                    created = ((EntityInternal) dockerHost).getExecutionContext().submit(TaskBuilder.<DockerContainerLocation>builder()
+                            .name("Creating Docker container")
+                            .body(new Callable<DockerContainerLocation>() {
+                                @Override
+                                public DockerContainerLocation call() throws Exception {
+                                    Stopwatch stopwatch = Stopwatch.createStarted();
+                                    DockerContainerLocation container = createContainer(flags);
+                                    parent.getStatistics().recordStage(DockerPlacementStatistics.CONTAINER_CREATION, stopwatch);
+                                    return container;
+                                }
+                            })
+                            .build());
+                } catch (RuntimeException e) {
+                    parent.getCreationPermits().release();
+                    releaseReservation();
+                    throw e;
+                }
+                created.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        parent.getCreationPermits().release();
+                    }
+                }, MoreExecutors.sameThreadExecutor());
+                return created;
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * A future that completes when the host is {@link Startable#SERVICE_UP up}, or fails if it is
+     * {@link Lifecycle#ON_FIRE on fire} or stopped first.
+     * <p>
+     * This subscribes to the host sensors rather than waiting in a thread.
+     */
+    ListenableFuture<DockerHost> whenServiceUp() {
+        final SettableFuture<DockerHost> result = SettableFuture.create();
+        final SubscriptionContext subscriptions = ((EntityInternal) dockerHost).getSubscriptionContext();
+        SensorEventListener<Object> listener = new SensorEventListener<Object>() {
+            @Override
+            public void onEvent(SensorEvent<Object> event) {
+                checkServiceUp(result);
+            }
+        };
+        final List<SubscriptionHandle> handles = ImmutableList.of(
+                subscriptions.subscribe(dockerHost, Startable.SERVICE_UP, listener),
+                subscriptions.subscribe(dockerHost, Attributes.SERVICE_STATE_ACTUAL, listener));
+        result.addListener(new Runnable() {
+            @Override
+            public void run() {
+                for (SubscriptionHandle handle : handles) {
+                    subscriptions.unsubscribe(handle);
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+
+        // Check after subscribing, in case the host came up before
+        checkServiceUp(result);
+        return result;
+    }
+
+    private void checkServiceUp(SettableFuture<DockerHost> result) {
+        Lifecycle state = dockerHost.getAttribute(Attributes.SERVICE_STATE_ACTUAL);
+        if (Boolean.TRUE.equals(dockerHost.getAttribute(Startable.SERVICE_UP))) {
+            result.set(dockerHost);
+        } else if (state == Lifecycle.ON_FIRE || state == Lifecycle.STOPPING || state == Lifecycle.STOPPED) {
+            result.setException(new IllegalStateException(String.format("Docker host %s is %s", dockerHost, state)));
+        }
+    }
+
+    /**
+     * Create a container for the entity in the flags, or claim a pooled one.
+     * <p>
+     * The caller must hold a {@link #reserve(int) reservation}, which is committed as soon as the
+     * container counts against this host, or released if no container is created.
+     */
+    private DockerContainerLocation createContainer(Map<?,?> flags) throws NoMachinesAvailableException {
+        boolean reservation = true;
         lock.readLock().lock();
         try {
             // Lookup entity from context or flags
@@ -157,13 +309,22 @@ public class DockerHostLocation extends AbstractLocation implements MachineProvi
             // Lookup image ID or build new image from Dockerfile
             LOG.info("ImageName for entity {}: {}", entity, imageName);
 
-            if (dockerHost.getImageNamed(imageName, imageTag).isPresent()) {
+            boolean existingImage = dockerHost.getImageNamed(imageName, imageTag).isPresent();
+            Optional<DockerImageCache> cache = getDockerInfrastructure().getDynamicLocation().getImageCache();
+            if (!existingImage && !baseImage.isPresent()) {
+                // Stream the image committed by another host from a peer, or pull it from the infrastructure registry
+                existingImage = (cache.isPresent() && cache.get().fetch(dockerHost, imageName))
+                        || DockerUtils.pullImage(dockerHost, imageName).isPresent();
+            }
+            if (existingImage) {
                 // Wait until committed before continuing - Brooklyn may be midway through its creation.
                 waitForImage(imageName);
 
                 // Look up imageId again
                 imageId = dockerHost.getImageNamed(imageName, imageTag).get();
                 LOG.info("Found image {} for entity: {}", imageName, imageId);
+                images.putIfAbsent(imageName, new CountDownLatch(0));
+                if (cache.isPresent()) cache.get().addHolder(dockerHost, imageName);
 
                 // Skip install phase
                 entity.config().set(SoftwareProcess.SKIP_INSTALLATION, true);
@@ -200,22 +361,28 @@ public class DockerHostLocation extends AbstractLocation implements MachineProvi
                 hardwareId = getOwner().config().get(DockerAttributes.DOCKER_HARDWARE_ID);
             }
 
-            // Create new Docker container in the host cluster
-            LOG.info("Starting container with imageId {} and hardwareId {} at {}", new Object[] { imageId, hardwareId, machine });
-            Map<Object, Object> containerFlags = MutableMap.builder()
-                    .putAll(flags)
-                    .put("entity", entity)
-                    .putIfNotNull("imageId", imageId)
-                    .putIfNotNull("hardwareId", hardwareId)
-                    .build();
-            DynamicCluster cluster = dockerHost.getDockerContainerCluster();
-            Entity added = cluster.addNode(machine, containerFlags);
-            if (added == null) {
-                throw new NoMachinesAvailableException(String.format("Failed to create container at %s", dockerHost.getDockerHostName()));
+            // Claim a pooled container if the image already exists, or create new Docker container in the host cluster
+            Optional<DockerContainer> pooled = Optional.absent();
+            if (existingImage) {
+                pooled = getContainerPool().claim(imageId, hardwareId, entity);
+            }
+            DockerContainer dockerContainer;
+            if (pooled.isPresent()) {
+                // The pooled container is already counted against this host
+                reservation = false;
+                commitReservation();
+                dockerContainer = pooled.get();
             } else {
-                Entities.start(added, ImmutableList.of(machine));
+                LOG.info("Starting container with imageId {} and hardwareId {} at {}", new Object[] { imageId, hardwareId, machine });
+                Map<Object, Object> containerFlags = MutableMap.builder()
+                        .putAll(flags)
+                        .put("entity", entity)
+                        .putIfNotNull("imageId", imageId)
+                        .putIfNotNull("hardwareId", hardwareId)
+                        .build();
+                reservation = false;
+                dockerContainer = addContainer(containerFlags);
             }
-            DockerContainer dockerContainer = (DockerContainer) added;
 
             // Save the container attributes
             ((EntityLocal) dockerContainer).setAttribute(DockerContainer.IMAGE_ID, imageId);
@@ -230,12 +397,106 @@ public class DockerHostLocation extends AbstractLocation implements MachineProvi
                 ((EntityLocal) dockerContainer).setAttribute(SdnProvider.APPLICATION_CIDR, applicationCidr);
             }
 
+            // Top up the pool of containers for this image
+            if (existingImage) {
+                getContainerPool().refill(imageId, hardwareId, entity, getMaxContainers());
+            }
+
             return dockerContainer.getDynamicLocation();
+        } finally {
+            if (reservation) releaseReservation();
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Create and start a new container in the host cluster.
+     * <p>
+     * The caller must hold a {@link #reserve(int) reservation}. This is committed once the container
+     * is a member of the host container cluster, and so included in the {@link #getContainerCount() count},
+     * before it is started, or released if the container cannot be added.
+     */
+    DockerContainer addContainer(Map<Object, Object> containerFlags) throws NoMachinesAvailableException {
+        lock.readLock().lock();
+        try {
+            DynamicCluster cluster = dockerHost.getDockerContainerCluster();
+            Entity added;
+            try {
+                added = cluster.addNode(machine, containerFlags);
+            } catch (RuntimeException e) {
+                releaseReservation();
+                throw e;
+            }
+            if (added == null) {
+                releaseReservation();
+                throw new NoMachinesAvailableException(String.format("Failed to create container at %s", dockerHost.getDockerHostName()));
+            }
+            commitReservation();
+            Entities.start(added, ImmutableList.of(machine));
+            return (DockerContainer) added;
         } finally {
             lock.readLock().unlock();
         }
     }
 
+    /**
+     * The {@link DockerContainerPool pool} of pre-created containers on this host.
+     */
+    public synchronized DockerContainerPool getContainerPool() {
+        if (pool == null) {
+            pool = new DockerContainerPool(this);
+        }
+        return pool;
+    }
+
+    /**
+     * The {@link DockerHostResources resources} allocated to containers on this host.
+     */
+    public synchronized DockerHostResources getResources() {
+        if (resources == null) {
+            resources = new DockerHostResources(this);
+        }
+        return resources;
+    }
+
+    /**
+     * The {@link DockerHostEntities index} of entities deployed on this host.
+     */
+    public synchronized DockerHostEntities getDeployedEntities() {
+        if (entities == null) {
+            entities = new DockerHostEntities(this);
+        }
+        return entities;
+    }
+
+    /**
+     * The {@link DockerHostLoad model} of the CPU load on this host.
+     */
+    public synchronized DockerHostLoad getLoad() {
+        if (load == null) {
+            load = new DockerHostLoad(this);
+        }
+        return load;
+    }
+
+    /**
+     * Record an entity being placed on this host, allocating its {@link #getResources() resources},
+     * adding it to the {@link #getDeployedEntities() deployed entities} and to the expected {@link #getLoad() load}.
+     */
+    public void allocate(Entity entity) {
+        getResources().allocate(entity);
+        getDeployedEntities().add(entity);
+        getLoad().placed();
+    }
+
+    /**
+     * Remove an entity recorded by {@link #allocate(Entity)}, if any.
+     */
+    public void deallocate(Entity entity) {
+        getResources().release(entity);
+        getDeployedEntities().remove(entity);
+    }
+
     private void insertCallback(Entity entity, ConfigKey<String> commandKey, String callback) {
         String command = entity.config().get(commandKey);
         if (Strings.isNonBlank(command)) {
@@ -260,6 +521,18 @@ public class DockerHostLocation extends AbstractLocation implements MachineProvi
         if (latch != null) latch.countDown();
     }
 
+    /**
+     * Whether an image has been committed on, or found on, this host.
+     * <p>
+     * This uses the images tracked by this location and the {@link DockerHost#getImageNamed(String) image catalog}
+     * of the host, which is scanned when the host starts and after commands that change its images.
+     */
+    public boolean hasImage(String imageName) {
+        CountDownLatch latch = images.get(imageName);
+        if (latch != null && latch.getCount() == 0) return true;
+        return dockerHost != null && dockerHost.getImageNamed(imageName).isPresent();
+    }
+
     private void configureEnrichers(Entity entity) {
         for (AttributeSensor sensor : Iterables.filter(entity.getEntityType().getSensors(), AttributeSensor.class)) {
             if ((DockerUtils.URL_SENSOR_NAMES.contains(sensor.getName()) ||
@@ -295,8 +568,10 @@ public class DockerHostLocation extends AbstractLocation implements MachineProvi
 
             DynamicCluster cluster = dockerHost.getDockerContainerCluster();
             DockerContainer container = machine.getOwner();
+            deallocate(container.getRunningEntity());
             if (cluster.removeMember(container)) {
                 LOG.info("Docker Host {}: member {} released", dockerHost.getDockerHostName(), machine);
+                refreshIndexedCapacity();
             } else {
                 LOG.warn("Docker Host {}: member {} not found for release", dockerHost.getDockerHostName(), machine);
             }
@@ -338,10 +613,205 @@ public class DockerHostLocation extends AbstractLocation implements MachineProvi
         return portForwarder;
     }
 
+    /**
+     * The failure domain of the host for placement.
+     * <p>
+     * This is the {@link DockerHost#DOCKER_HOST_ZONE zone} configured on the host if set, otherwise the
+     * availability zone or region of the underlying jclouds node, or the region of its jclouds location.
+     *
+     * @return the zone, or {@code null} if not known
+     */
+    public String getZone() {
+        String zone = dockerHost.config().get(DockerHost.DOCKER_HOST_ZONE);
+        if (Strings.isNonBlank(zone)) return zone;
+        if (machine instanceof JcloudsSshMachineLocation) {
+            NodeMetadata node = ((JcloudsSshMachineLocation) machine).getNode();
+            for (org.jclouds.domain.Location location = node == null ? null : node.getLocation(); location != null; location = location.getParent()) {
+                if (location.getScope() == LocationScope.ZONE || location.getScope() == LocationScope.REGION) {
+                    return location.getId();
+                }
+            }
+        }
+        return jcloudsLocation == null ? null : jcloudsLocation.getRegion();
+    }
+
     public int getCurrentSize() {
         return dockerHost.getCurrentSize();
     }
 
+    /**
+     * The number of containers on this host, from the current members of the container cluster.
+     * <p>
+     * This is read directly rather than from the {@link DockerHostCapacityIndex capacity index}, which only
+     * holds a snapshot taken at its last update, so a container is counted as soon as a {@link #reserve(int) reservation}
+     * for it is committed.
+     */
+    public int getContainerCount() {
+        DynamicCluster cluster = dockerHost.getDockerContainerCluster();
+        return cluster == null ? 0 : cluster.getCurrentSize();
+    }
+
+    /**
+     * The CPU usage of this host, from the {@link DockerHostCapacityIndex capacity index}
+     * if available, otherwise from the host sensor. May be {@code null} if not yet known.
+     */
+    public Double getCpuUsage() {
+        Optional<HostCapacity> capacity = getIndexedCapacity();
+        if (capacity.isPresent()) {
+            return capacity.get().getCpuUsage();
+        }
+        return dockerHost.getAttribute(DockerHost.CPU_USAGE);
+    }
+
+    /**
+     * The number of container slots reserved by placement decisions whose containers have not started yet.
+     */
+    public int getReservedCount() {
+        synchronized (reservationMutex) {
+            return reserved;
+        }
+    }
+
+    /**
+     * The container limit of the {@link DockerLocation} this host belongs to, or {@link Integer#MAX_VALUE} if unlimited.
+     */
+    public int getMaxContainers() {
+        return getParent() instanceof DockerLocation ? ((DockerLocation) getParent()).getMaxContainers() : Integer.MAX_VALUE;
+    }
+
+    /**
+     * The number of running containers plus {@link #getReservedCount() reserved} slots on this host.
+     * Placement strategies should use this rather than {@link #getContainerCount()} so that
+     * concurrent placements see each other.
+     */
+    public int getAllocatedCount() {
+        synchronized (reservationMutex) {
+            return getContainerCount() + reserved;
+        }
+    }
+
+    /**
+     * Whether new containers are kept off this host while its containers are moved elsewhere.
+     *
+     * @see DockerRebalancingPolicy
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
+    public void setDraining(boolean draining) {
+        synchronized (reservationMutex) {
+            this.draining = draining;
+        }
+        LOG.debug("{} draining on {}", draining ? "Started" : "Stopped", this);
+    }
+
+    /**
+     * Whether this host runs the {@link DockerRegistry registry} of the infrastructure. The registry is not
+     * in a container managed by this location, so the host must be kept even when it has no containers.
+     */
+    public boolean isPinned() {
+        DockerInfrastructure infrastructure = dockerHost == null ? null : dockerHost.getInfrastructure();
+        Entity registry = infrastructure == null ? null : infrastructure.getAttribute(DockerInfrastructure.DOCKER_REGISTRY);
+        return registry != null && dockerHost.equals(registry.getAttribute(DockerRegistry.REGISTRY_HOST));
+    }
+
+    /**
+     * Start {@link #setDraining(boolean) draining} this host if no slots are reserved on it and it has no
+     * containers apart from those in its {@link #getContainerPool() pool}, so that no more can be reserved
+     * before it is removed. A committed container is counted from when it joins the container cluster, so a
+     * container that is still starting keeps the host. A {@link #isPinned() pinned} host is never drained.
+     *
+     * @return true if the host is now draining
+     */
+    public boolean drainIfUnreserved() {
+        if (isPinned()) return false;
+        synchronized (reservationMutex) {
+            if (reserved > 0 || getContainerCount() > getContainerPool().size()) return false;
+            draining = true;
+        }
+        LOG.debug("Started draining on unreserved {}", this);
+        return true;
+    }
+
+    /**
+     * Atomically reserve a container slot on this host if it has fewer than
+     * {@code maxContainers} running or reserved, and is not {@link #isDraining() draining}.
+     * <p>
+     * The reservation must be {@link #commitReservation() committed} once the container
+     * is included in the {@link #getContainerCount() container count}, or {@link #releaseReservation() released}
+     * if it fails, so the slot is always counted exactly once.
+     *
+     * @return true if the slot was reserved
+     */
+    public boolean reserve(int maxContainers) {
+        synchronized (reservationMutex) {
+            if (draining || getContainerCount() + reserved >= maxContainers) {
+                return false;
+            }
+            reserved++;
+        }
+        refreshIndexedCapacity();
+        return true;
+    }
+
+    /**
+     * Commit a reservation once its container is included in the {@link #getContainerCount() container count}.
+     *
+     * @return false if no reservation was held, which is a bug in the caller, as it would use up the slot of another placement
+     */
+    public boolean commitReservation() {
+        if (!unreserve()) {
+            LOG.warn("Committed container reservation on {} with no slots reserved", this);
+            return false;
+        }
+        LOG.debug("Committed container reservation on {}", this);
+        return true;
+    }
+
+    /**
+     * Release a reservation whose container failed to start.
+     *
+     * @return false if no reservation was held, as for {@link #commitReservation()}
+     */
+    public boolean releaseReservation() {
+        if (!unreserve()) {
+            LOG.warn("Released container reservation on {} with no slots reserved", this);
+            return false;
+        }
+        LOG.debug("Released container reservation on {}", this);
+        return true;
+    }
+
+    private boolean unreserve() {
+        synchronized (reservationMutex) {
+            if (reserved == 0) return false;
+            reserved--;
+        }
+        refreshIndexedCapacity();
+        return true;
+    }
+
+    /** Called outside the reservation mutex, as the index reads the allocated count under its own lock. */
+    private void refreshIndexedCapacity() {
+        if (getParent() instanceof DockerLocation) {
+            Optional<DockerHostCapacityIndex> index = ((DockerLocation) getParent()).getCapacityIndex();
+            if (index.isPresent()) {
+                index.get().refresh(dockerHost);
+            }
+        }
+    }
+
+    private Optional<HostCapacity> getIndexedCapacity() {
+        if (getParent() instanceof DockerLocation) {
+            Optional<DockerHostCapacityIndex> index = ((DockerLocation) getParent()).getCapacityIndex();
+            if (index.isPresent()) {
+                return index.get().getCapacity(dockerHost);
+            }
+        }
+        return Optional.absent();
+    }
+
     @Override
     public MachineProvisioningLocation<DockerContainerLocation> newSubLocation(Map<?, ?> newFlags) {
         throw new UnsupportedOperationException();
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.basic.EntityLocal;
+import brooklyn.entity.container.docker.DockerHost;
+import brooklyn.entity.container.docker.DockerInfrastructure;
+import brooklyn.location.NoMachinesAvailableException;
+import brooklyn.location.basic.LocationConfigKeys;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.task.TaskBuilder;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.LinkedHashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureFallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Coordinates provisioning of new {@link DockerHost hosts} for a {@link DockerLocation}.
+ * <p>
+ * Requests that cannot be placed on an existing host ask for a slot on a new host. If a
+ * host with the same provisioning flags is already being provisioned and has free slots, the
+ * request waits for that host, otherwise a new host is provisioned for it. This means exactly
+ * as many hosts are started as the outstanding demand requires. At most
+ * {@link DockerInfrastructure#MAX_CONCURRENT_HOST_PROVISIONING} hosts are provisioned at once, and the
+ * provisions queued behind them wait on {@link DockerPermits permits} without holding a thread.
+ * <p>
+ * A host being provisioned is {@link #isStarting(DockerHostLocation) hidden} from ordinary placement.
+ * Once it is running the slots promised to the waiting requests are {@link DockerHostLocation#reserve(int) reserved}
+ * on it, without exceeding the container limit, and only then does it become visible, so other
+ * placements cannot take the promised slots. Each waiting request is then handed one reserved slot.
+ * <p>
+ * If the infrastructure keeps a {@link DockerInfrastructure#DOCKER_HOST_STANDBY_POOL_SIZE standby pool}
+ * then a standby host is promoted instead, when one is available, without waiting for a permit.
+ */
+public class DockerHostProvisioningCoordinator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DockerHostProvisioningCoordinator.class);
+
+    private final DockerLocation location;
+    private final DockerPermits permits;
+    private final List<Provision> inFlight = Lists.newArrayList();
+    private final Set<String> starting = Sets.newHashSet();
+    private int demand = 0;
+
+    public DockerHostProvisioningCoordinator(DockerLocation location, int maxConcurrent) {
+        Preconditions.checkArgument(maxConcurrent > 0, "Maximum concurrent provisioning must be positive: %s", maxConcurrent);
+        this.location = Preconditions.checkNotNull(location, "location");
+        this.permits = new DockerPermits(maxConcurrent);
+    }
+
+    /**
+     * Wait for a slot on a new host, provisioning one if no host already being provisioned has room.
+     *
+     * @param flags the provisioning flags for the host, with provisioning strategies already applied
+     * @param capacity the number of containers a new host can accept
+     * @return the location of the started host, with a slot {@link DockerHostLocation#reserve(int) reserved} for the caller
+     */
+    public DockerHostLocation acquire(Map<String,Object> flags, int capacity) throws NoMachinesAvailableException {
+        return DockerLocation.await(acquireAsync(flags, capacity));
+    }
+
+    /**
+     * As {@link #acquire(Map, int)}, returning a future for the host location rather than waiting.
+     */
+    public ListenableFuture<DockerHostLocation> acquireAsync(Map<String,Object> flags, int capacity) {
+        Provision provision = null;
+        synchronized (this) {
+            demand++;
+            Map<String,Object> key = key(flags);
+            for (Provision existing : inFlight) {
+                if (existing.key.equals(key) && existing.assigned < existing.capacity) {
+                    provision = existing;
+                    break;
+                }
+            }
+            if (provision == null) {
+                provision = start(flags, capacity);
+            }
+            provision.assigned++;
+            publish();
+        }
+        final Provision assigned = provision;
+        ListenableFuture<DockerHostLocation> result = Futures.transform(provision.task, new AsyncFunction<DockerHost, DockerHostLocation>() {
+            @Override
+            public ListenableFuture<DockerHostLocation> apply(DockerHost input) {
+                DockerHostLocation machine = input.getDynamicLocation();
+                if (take(assigned)) {
+                    return Futures.immediateFuture(machine);
+                }
+                return Futures.immediateFailedFuture(new NoMachinesAvailableException("No container slot left on new Docker host " + machine));
+            }
+        });
+        result.addListener(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (DockerHostProvisioningCoordinator.this) {
+                    demand--;
+                    publish();
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+        return result;
+    }
+
+    /**
+     * Provision enough new hosts in parallel for a number of container requests, with all their
+     * slots allocated to the caller.
+     * <p>
+     * The requests are counted in the {@link DockerInfrastructure#DOCKER_HOST_DEMAND_COUNT demand}
+     * while the hosts start, the same as requests waiting in {@link #acquireAsync(Map, int)}.
+     * If any host fails, the hosts that did start are stopped before the failure is propagated.
+     *
+     * @return the locations of the started hosts, each counted once for every slot reserved on it
+     *         for the caller, which must {@link DockerHostLocation#releaseReservation() release} any it does not use
+     */
+    public Multiset<DockerHostLocation> provision(Map<String,Object> flags, int requests, int capacity) throws NoMachinesAvailableException {
+        int count = (requests + capacity - 1) / capacity;
+        List<Provision> started = Lists.newArrayList();
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                Provision provision = start(flags, capacity);
+                provision.assigned = capacity;
+                started.add(provision);
+            }
+            demand += requests;
+            publish();
+        }
+        try {
+            Multiset<DockerHostLocation> result = LinkedHashMultiset.create();
+            List<DockerHostLocation> hosts = Lists.newArrayList();
+            Exception failure = null;
+            for (Provision provision : started) {
+                try {
+                    DockerHostLocation machine = DockerLocation.await(provision.task).getDynamicLocation();
+                    hosts.add(machine);
+                    synchronized (this) {
+                        result.add(machine, provision.slots);
+                        provision.slots = 0;
+                    }
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    if (failure == null) failure = e;
+                }
+            }
+            if (failure != null) {
+                LOG.warn("Failed to provision {} Docker hosts, stopping the {} that started", count, hosts.size());
+                for (DockerHostLocation machine : hosts) {
+                    for (int i = 0; i < result.count(machine); i++) {
+                        machine.releaseReservation();
+                    }
+                    try {
+                        location.remove(machine);
+                    } catch (Exception e) {
+                        Exceptions.propagateIfFatal(e);
+                        LOG.warn("Error stopping Docker host " + machine + " after failed provisioning", e);
+                    }
+                }
+                if (failure instanceof NoMachinesAvailableException) throw (NoMachinesAvailableException) failure;
+                throw Exceptions.propagate(failure);
+            }
+            return result;
+        } finally {
+            synchronized (this) {
+                demand -= requests;
+                publish();
+            }
+        }
+    }
+
+    /** The number of hosts currently being provisioned, or queued for provisioning. */
+    public synchronized int getInFlight() {
+        return inFlight.size();
+    }
+
+    /** The number of requests waiting for a new host. */
+    public synchronized int getDemand() {
+        return demand;
+    }
+
+    /**
+     * Whether the host is being provisioned, so must not be used for ordinary placement until
+     * the slots promised to the requests waiting for it are reserved.
+     */
+    public synchronized boolean isStarting(DockerHostLocation machine) {
+        return machine.getOwner() != null && starting.contains(machine.getOwner().getId());
+    }
+
+    /** Hide a new host from placement while it is started. */
+    synchronized void starting(DockerHost host) {
+        starting.add(host.getId());
+    }
+
+    /** Stop hiding a host that failed to start. */
+    synchronized void failed(DockerHost host) {
+        starting.remove(host.getId());
+    }
+
+    /**
+     * Start a provision, promoting a standby host if there is one, or else provisioning a new host once a
+     * {@link DockerPermits permit} is free. No thread is held while waiting for the permit.
+     */
+    private Provision start(Map<String,Object> flags, int capacity) {
+        final Provision provision = new Provision(key(flags), capacity);
+        final Map<String,Object> hostFlags = flags;
+        inFlight.add(provision);
+        LOG.info("Starting provisioning of new Docker host ({} in flight)", inFlight.size());
+
+        ListenableFuture<DockerHost> standby = submit("Promoting standby Docker host", new Callable<DockerHost>() {
+            @Override
+            public DockerHost call() throws Exception {
+                return location.promoteStandbyHost();
+            }
+        });
+        ListenableFuture<DockerHost> host = Futures.transform(standby, new AsyncFunction<DockerHost, DockerHost>() {
+            @Override
+            public ListenableFuture<DockerHost> apply(DockerHost input) {
+                return input != null ? Futures.immediateFuture(input) : provisionWithPermit(hostFlags);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+
+        // Reserve the promised slots before any waiting request sees the host
+        ListenableFuture<DockerHost> finished = Futures.transform(host, new Function<DockerHost, DockerHost>() {
+            @Override
+            public DockerHost apply(DockerHost input) {
+                finished(provision, input);
+                return input;
+            }
+        }, MoreExecutors.sameThreadExecutor());
+        provision.task = Futures.withFallback(finished, new FutureFallback<DockerHost>() {
+            @Override
+            public ListenableFuture<DockerHost> create(Throwable t) {
+                finished(provision, null);
+                return Futures.immediateFailedFuture(t);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+        return provision;
+    }
+
+    private ListenableFuture<DockerHost> provisionWithPermit(final Map<String,Object> flags) {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        return Futures.transform(permits.acquire(), new AsyncFunction<Void, DockerHost>() {
+            @Override
+            public ListenableFuture<DockerHost> apply(Void input) {
+                location.getStatistics().recordStage(DockerPlacementStatistics.PROVISIONING_PERMIT, stopwatch);
+                ListenableFuture<DockerHost> provisioned;
+                try {
+                    provisioned = submit("Provisioning Docker host", new Callable<DockerHost>() {
+                        @Override
+                        public DockerHost call() throws Exception {
+                            return location.provisionDockerHost(flags);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    permits.release();
+                    throw e;
+                }
+                provisioned.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        permits.release();
+                    }
+                }, MoreExecutors.sameThreadExecutor());
+                return provisioned;
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    private ListenableFuture<DockerHost> submit(String name, Callable<DockerHost> body) {
+        EntityInternal owner = (EntityInternal) location.getOwner();
+        return owner.getExecutionContext().submit(TaskBuilder.<DockerHost>builder()
+                .name(name)
+                .body(body)
+                .build());
+    }
+
+    /**
+     * Reserve the promised slots on a started host and make it visible for placement, or just
+     * forget the provision if it failed.
+     */
+    private synchronized void finished(Provision provision, DockerHost host) {
+        inFlight.remove(provision);
+        DockerHostLocation machine = host == null ? null : host.getDynamicLocation();
+        if (machine != null) {
+            while (provision.slots < provision.assigned && machine.reserve(provision.capacity)) {
+                provision.slots++;
+            }
+            if (provision.slots < provision.assigned) {
+                LOG.warn("Only {} of {} promised slots available on new Docker host {}", new Object[] { provision.slots, provision.assigned, machine });
+            }
+        }
+        if (host != null) starting.remove(host.getId());
+        publish();
+    }
+
+    /** Hand one of the slots reserved on a new host to a waiting request. */
+    private synchronized boolean take(Provision provision) {
+        if (provision.slots == 0) return false;
+        provision.slots--;
+        return true;
+    }
+
+    private void publish() {
+        EntityLocal owner = (EntityLocal) location.getOwner();
+        owner.setAttribute(DockerInfrastructure.DOCKER_HOST_PROVISIONING_COUNT, inFlight.size());
+        owner.setAttribute(DockerInfrastructure.DOCKER_HOST_DEMAND_COUNT, demand);
+    }
+
+    /** Requests can share a host if their flags match, ignoring the entity being deployed. */
+    private Map<String,Object> key(Map<String,Object> flags) {
+        Map<String,Object> key = MutableMap.copyOf(flags);
+        key.remove(LocationConfigKeys.CALLER_CONTEXT.getName());
+        return key;
+    }
+
+    private static class Provision {
+        private final Map<String,Object> key;
+        private final int capacity;
+        private int assigned = 0;
+        private int slots = 0;
+        private ListenableFuture<DockerHost> task;
+
+        private Provision(Map<String,Object> key, int capacity) {
+            this.key = key;
+            this.capacity = capacity;
+        }
+    }
+}
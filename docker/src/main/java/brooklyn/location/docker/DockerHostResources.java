@@ -0,0 +1,293 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker;
+
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.SoftwareProcess;
+import brooklyn.entity.container.DockerAttributes;
+import brooklyn.entity.container.docker.DockerContainer;
+import brooklyn.entity.container.docker.DockerHost;
+import brooklyn.entity.machine.MachineAttributes;
+import brooklyn.location.HardwareDetails;
+import brooklyn.location.PortRange;
+import brooklyn.location.jclouds.JcloudsLocationConfig;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * Tracks the CPU, memory, disk and port allocations of the containers on a single {@link DockerHostLocation host}.
+ * <p>
+ * Each container is allocated the {@link Requirements requirements} of its entity when it is placed, and
+ * the allocation is removed when it is released, so no entity scanning is needed at placement time. Free
+ * capacity takes the larger of the allocated and measured usage for CPU and memory, using the host
+ * {@link DockerHost#CPU_USAGE} and {@link MachineAttributes#USED_MEMORY} sensors. Disk and port
+ * capacity are only checked if {@link DockerAttributes#DOCKER_HOST_DISK_CAPACITY} or
+ * {@link DockerAttributes#DOCKER_HOST_PORT_CAPACITY} are configured.
+ * <p>
+ * Allocations are seeded from the containers already on the host the first time they are used, so they
+ * survive rebinding.
+ */
+public class DockerHostResources {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DockerHostResources.class);
+
+    private final DockerHostLocation location;
+    private final Map<String, Requirements> allocations = Maps.newHashMap();
+    private boolean seeded = false;
+
+    public DockerHostResources(DockerHostLocation location) {
+        this.location = Preconditions.checkNotNull(location, "location");
+    }
+
+    /**
+     * Allocate resources for an entity being placed on this host. Repeated allocations for the same entity replace each other.
+     */
+    public synchronized void allocate(Entity entity) {
+        seed();
+        Requirements requirements = Requirements.of(entity, location.getOwner());
+        allocations.put(entity.getId(), requirements);
+        LOG.debug("Allocated {} on {} for {}", new Object[] { requirements, location, entity });
+    }
+
+    /**
+     * Release the resources allocated to an entity, if any.
+     */
+    public synchronized void release(Entity entity) {
+        if (entity == null) return;
+        Requirements removed = allocations.remove(entity.getId());
+        if (removed != null) {
+            LOG.debug("Released {} on {} for {}", new Object[] { removed, location, entity });
+        }
+    }
+
+    /**
+     * @return the total capacity of the host, with {@code null} dimensions unbounded
+     */
+    public Requirements getCapacity() {
+        HardwareDetails details = location.getMachine().getMachineDetails().getHardwareDetails();
+        DockerHost host = location.getOwner();
+        return new Requirements(
+                details.getCpuCount() == null ? null : details.getCpuCount().doubleValue(),
+                details.getRam(),
+                host.config().get(DockerAttributes.DOCKER_HOST_DISK_CAPACITY),
+                host.config().get(DockerAttributes.DOCKER_HOST_PORT_CAPACITY));
+    }
+
+    /**
+     * @return the total resources allocated to containers on the host
+     */
+    public synchronized Requirements getAllocated() {
+        seed();
+        double cores = 0d;
+        int memory = 0, disk = 0, ports = 0;
+        for (Requirements requirements : allocations.values()) {
+            cores += requirements.getCores();
+            memory += requirements.getMemory();
+            disk += requirements.getDisk();
+            ports += requirements.getPorts();
+        }
+        return new Requirements(cores, memory, disk, ports);
+    }
+
+    /**
+     * @return the free capacity of the host, taking measured usage into account, with {@code null} dimensions unbounded
+     */
+    public Requirements getFree() {
+        Requirements capacity = getCapacity();
+        Requirements allocated = getAllocated();
+        DockerHost host = location.getOwner();
+
+        Double cores = null;
+        if (capacity.cores != null) {
+            double used = allocated.getCores();
+            Double cpu = host.getAttribute(DockerHost.CPU_USAGE);
+            if (cpu != null) used = Math.max(used, cpu * capacity.cores);
+            cores = capacity.cores - used;
+        }
+        Integer memory = null;
+        if (capacity.memory != null) {
+            int used = allocated.getMemory();
+            Long usedMemory = host.getAttribute(MachineAttributes.USED_MEMORY);
+            Long totalMemory = host.getAttribute(MachineAttributes.TOTAL_MEMORY);
+            if (usedMemory != null && totalMemory != null && totalMemory > 0) {
+                used = Math.max(used, (int) (capacity.memory * ((double) usedMemory / totalMemory)));
+            }
+            memory = capacity.memory - used;
+        }
+        Integer disk = capacity.disk == null ? null : capacity.disk - allocated.getDisk();
+        Integer ports = capacity.ports == null ? null : capacity.ports - allocated.getPorts();
+        return new Requirements(cores, memory, disk, ports);
+    }
+
+    /** Allocate the entities already running in containers on the host. */
+    private void seed() {
+        if (seeded) return;
+        seeded = true;
+        List<Entity> containers = location.getDockerContainerList();
+        if (containers == null) return;
+        for (Entity member : containers) {
+            Entity running = ((DockerContainer) member).getRunningEntity();
+            if (running != null && !allocations.containsKey(running.getId())) {
+                allocations.put(running.getId(), Requirements.of(running, location.getOwner()));
+            }
+        }
+    }
+
+    /**
+     * The resources required by a container, or available on a host.
+     * <p>
+     * Cores may be fractional, memory is in MB and disk is in GB. Dimensions are {@code null} when unbounded.
+     */
+    public static class Requirements {
+
+        /** The Docker default CPU shares for a container, taken as one core. */
+        public static final int CPU_SHARES_PER_CORE = 1024;
+
+        private final Double cores;
+        private final Integer memory;
+        private final Integer disk;
+        private final Integer ports;
+
+        public Requirements(Double cores, Integer memory, Integer disk, Integer ports) {
+            this.cores = cores;
+            this.memory = memory;
+            this.disk = disk;
+            this.ports = ports;
+        }
+
+        /**
+         * As {@link #of(Entity, DockerHost)}, without any defaults from a host.
+         */
+        public static Requirements of(Entity entity) {
+            return of(entity, null);
+        }
+
+        /**
+         * The requirements of an entity placed on a host, using the same keys as the container
+         * options: the {@link DockerAttributes#DOCKER_MEMORY memory} limit and
+         * {@link DockerAttributes#DOCKER_CPU_SHARES CPU shares} of the entity, falling back to those
+         * the container inherits from the host, then the {@link JcloudsLocationConfig#MIN_RAM RAM} and
+         * {@link JcloudsLocationConfig#MIN_CORES cores} configuration or provisioning properties. Also
+         * includes the {@link JcloudsLocationConfig#MIN_DISK disk} and the ports the entity will open.
+         * <p>
+         * CPU shares are converted to cores at {@link #CPU_SHARES_PER_CORE} shares per core, and only
+         * used if no cores are configured.
+         *
+         * @param host the host whose configuration the container inherits, or {@code null}
+         */
+        public static Requirements of(Entity entity, DockerHost host) {
+            Map<String, Object> flags = entity.config().get(SoftwareProcess.PROVISIONING_PROPERTIES);
+            Integer cores = intValue(entity, JcloudsLocationConfig.MIN_CORES, flags);
+            Integer cpuShares = entity.config().get(DockerAttributes.DOCKER_CPU_SHARES);
+            if (cpuShares == null && host != null) cpuShares = host.config().get(DockerAttributes.DOCKER_CPU_SHARES);
+            double coreCount = cores != null ? cores.doubleValue() : cpuShares != null ? (double) cpuShares / CPU_SHARES_PER_CORE : 0d;
+            Integer memory = entity.config().get(DockerAttributes.DOCKER_MEMORY);
+            if (memory == null && host != null) memory = host.config().get(DockerAttributes.DOCKER_MEMORY);
+            if (memory == null) memory = intValue(entity, JcloudsLocationConfig.MIN_RAM, flags);
+            Integer disk = intValue(entity, JcloudsLocationConfig.MIN_DISK, flags);
+            return new Requirements(coreCount, memory == null ? 0 : memory, disk == null ? 0 : disk, countPorts(entity));
+        }
+
+        private static Integer intValue(Entity entity, ConfigKey<?> key, Map<String, Object> flags) {
+            Object value = entity.config().get(key);
+            if (value == null && flags != null) value = flags.get(key.getName());
+            if (value instanceof Number) return ((Number) value).intValue();
+            if (value instanceof String) {
+                try {
+                    return Integer.valueOf((String) value);
+                } catch (NumberFormatException nfe) {
+                    LOG.debug("Ignoring non-numeric {} for {}: {}", new Object[] { key.getName(), entity, value });
+                }
+            }
+            return null;
+        }
+
+        /** The number of forwarded ports the entity needs, as opened by the container. */
+        private static int countPorts(Entity entity) {
+            int ports = 1; // ssh
+            for (ConfigKey<?> key : entity.getEntityType().getConfigKeys()) {
+                if (PortRange.class.isAssignableFrom(key.getType())) {
+                    PortRange range = (PortRange) entity.config().get(key);
+                    if (range != null && !range.isEmpty()) ports++;
+                }
+            }
+            List<Integer> open = entity.config().get(DockerAttributes.DOCKER_OPEN_PORTS);
+            if (open != null) ports += open.size();
+            for (Entity child : entity.getChildren()) {
+                ports += countPorts(child) - 1;
+            }
+            return ports;
+        }
+
+        public double getCores() { return cores == null ? 0d : cores; }
+
+        public int getMemory() { return memory == null ? 0 : memory; }
+
+        public int getDisk() { return disk == null ? 0 : disk; }
+
+        public int getPorts() { return ports == null ? 0 : ports; }
+
+        /**
+         * @return true if these free resources can accommodate the requirements
+         */
+        public boolean fits(Requirements required) {
+            return (cores == null || cores >= required.getCores())
+                    && (memory == null || memory >= required.getMemory())
+                    && (disk == null || disk >= required.getDisk())
+                    && (ports == null || ports >= required.getPorts());
+        }
+
+        /**
+         * The fraction of capacity in each bounded dimension left over after placing the
+         * requirements in these free resources, summed. Lower is a better fit.
+         */
+        public double residual(Requirements required, Requirements capacity) {
+            double residual = 0d;
+            if (cores != null && capacity.cores != null && capacity.cores > 0) {
+                residual += (cores - required.getCores()) / capacity.cores;
+            }
+            if (memory != null && capacity.memory != null && capacity.memory > 0) {
+                residual += (double) (memory - required.getMemory()) / capacity.memory;
+            }
+            if (disk != null && capacity.disk != null && capacity.disk > 0) {
+                residual += (double) (disk - required.getDisk()) / capacity.disk;
+            }
+            if (ports != null && capacity.ports != null && capacity.ports > 0) {
+                residual += (double) (ports - required.getPorts()) / capacity.ports;
+            }
+            return residual;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                    .add("cores", cores)
+                    .add("memory", memory)
+                    .add("disk", disk)
+                    .add("ports", ports)
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,515 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker;
+
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.Attributes;
+import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.basic.SoftwareProcess;
+import brooklyn.entity.container.DockerUtils;
+import brooklyn.entity.container.docker.DockerHost;
+import brooklyn.entity.container.docker.DockerInfrastructure;
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.management.ExecutionContext;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.os.Os;
+import brooklyn.util.ssh.BashCommands;
+import brooklyn.util.task.TaskBuilder;
+import brooklyn.util.text.Strings;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Splitter;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * An infrastructure-wide cache of the images built on the {@link DockerHost hosts} of a {@link DockerLocation}.
+ * <p>
+ * Images are keyed by a {@link #key(Object...) content hash} of everything the build depends on, such as the
+ * Dockerfile, its template substitutions and the ID of the base image. Archives and directories are keyed by a
+ * {@link #hash(InputStream) hash} of their content rather than their URL. The first host to build an image becomes
+ * its canonical source. Other hosts needing the same image wait for that build, then import the image with
+ * {@code docker save} and {@code docker load} instead of building it again. If the build fails, or an import
+ * fails, the host builds the image itself. If the canonical host is removed or stops, another host holding the
+ * image is elected in its place.
+ * <p>
+ * Images are copied between hosts peer to peer. Every host known to hold an image can
+ * {@link #fetch(DockerHost, String) stream} it to another, with a limit on the uploads from each host,
+ * so a new image {@link #distribute(String, Iterable) spreads} through the fleet as a tree rather than
+ * every host copying it from one source. Each new host is {@link #seed(DockerHost) seeded} with the images
+ * held by the others when it starts, so a scale-out does not load them all from the registry.
+ * <p>
+ * Enabled by {@link DockerInfrastructure#DOCKER_IMAGE_CACHE}, which is off by default.
+ */
+public class DockerImageCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DockerImageCache.class);
+
+    /** Maximum time to wait for another host to build an image, matching the Dockerfile build timeout. */
+    public static final Duration BUILD_TIMEOUT = Duration.minutes(20);
+
+    private final DockerLocation location;
+    private final ConcurrentMap<String, SettableFuture<CachedImage>> images = Maps.newConcurrentMap();
+    private final SetMultimap<String, DockerHost> holders = HashMultimap.create();
+    private final Multiset<DockerHost> uploads = HashMultiset.create();
+    private final SetMultimap<String, DockerHost> pending = LinkedHashMultimap.create();
+
+    public DockerImageCache(DockerLocation location) {
+        this.location = Preconditions.checkNotNull(location, "location");
+    }
+
+    /**
+     * The content hash of the parts of an image build, with maps hashed in key order.
+     */
+    @SuppressWarnings("unchecked")
+    public static String key(Object...parts) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (Object part : parts) {
+            if (part instanceof Map) {
+                part = Maps.newTreeMap((Map<String, ?>) part);
+            }
+            hasher.putString(String.valueOf(part), Charsets.UTF_8).putByte((byte) 0);
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * The content hash of a stream, such as a Dockerfile archive.
+     */
+    public static String hash(InputStream content) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        try {
+            ByteStreams.copy(content, Funnels.asOutputStream(hasher));
+        } catch (IOException ioe) {
+            throw Exceptions.propagate(ioe);
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * The content hash of the files in a directory, such as a Dockerfile build context, with their relative paths.
+     */
+    public static String hash(File directory) {
+        List<File> files = Lists.newArrayList(Files.fileTreeTraverser().preOrderTraversal(directory).filter(new Predicate<File>() {
+            @Override
+            public boolean apply(File input) {
+                return input.isFile();
+            }
+        }));
+        Collections.sort(files);
+        Hasher hasher = Hashing.sha256().newHasher();
+        String root = directory.getAbsolutePath();
+        for (File file : files) {
+            hasher.putString(file.getAbsolutePath().substring(root.length()), Charsets.UTF_8).putByte((byte) 0);
+            try {
+                Files.copy(file, Funnels.asOutputStream(hasher));
+            } catch (IOException ioe) {
+                throw Exceptions.propagate(ioe);
+            }
+            hasher.putByte((byte) 0);
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * The image named in the {@code FROM} instruction of a Dockerfile, unless it is a template expression.
+     */
+    public static Optional<String> getBaseImage(String dockerfile) {
+        if (dockerfile == null) return Optional.absent();
+        for (String line : Splitter.on(CharMatcher.anyOf("\r\n")).trimResults().omitEmptyStrings().split(dockerfile)) {
+            List<String> words = Splitter.on(CharMatcher.WHITESPACE).omitEmptyStrings().splitToList(line);
+            if (words.size() >= 2 && words.get(0).equalsIgnoreCase("FROM")) {
+                String image = words.get(1);
+                return image.contains("${") ? Optional.<String>absent() : Optional.of(image);
+            }
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * Get the image with the given key on a host, building it if this is the first host to need it,
+     * or importing it from the host that built it.
+     *
+     * @param host the host that needs the image
+     * @param key the content hash of the image build
+     * @param name the name the image is tagged with
+     * @param build builds the image on the host, returning its ID
+     * @return the image ID on the host
+     */
+    public String getImage(DockerHost host, String key, String name, Callable<String> build) {
+        SettableFuture<CachedImage> created = SettableFuture.create();
+        SettableFuture<CachedImage> existing = images.putIfAbsent(key, created);
+        if (existing == null) {
+            LOG.debug("Building image {} ({}) on {}", new Object[] { name, key, host });
+            try {
+                String imageId = build.call();
+                created.set(new CachedImage(host, imageId, name));
+                addHolder(host, name);
+                return imageId;
+            } catch (Exception e) {
+                images.remove(key, created);
+                created.setException(e);
+                throw Exceptions.propagate(e);
+            }
+        }
+
+        Optional<CachedImage> canonical = await(existing, key);
+        if (canonical.isPresent() && !isUp(canonical.get().host)) {
+            canonical = reelect(key, canonical.get());
+        }
+        if (canonical.isPresent()) {
+            CachedImage image = canonical.get();
+            if (image.host.equals(host)) return image.imageId;
+            try {
+                importImage(image, host, key);
+                LOG.info("Imported image {} ({}) from {} to {}", new Object[] { name, image.imageId, image.host, host });
+                return image.imageId;
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.warn("Failed to import image " + name + " from " + image.host + " to " + host + ", building it", e);
+            }
+        }
+        return buildUncached(build);
+    }
+
+    private Optional<CachedImage> await(SettableFuture<CachedImage> future, String key) {
+        try {
+            return Optional.of(future.get(BUILD_TIMEOUT.toMilliseconds(), TimeUnit.MILLISECONDS));
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.debug("No cached image for {}: {}", key, e.getMessage());
+            return Optional.absent();
+        }
+    }
+
+    private String buildUncached(Callable<String> build) {
+        try {
+            return build.call();
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /**
+     * Copy an image from the host that built it to another host.
+     * <p>
+     * The image is {@link #fetch(DockerHost, String) streamed} from a peer that holds it if possible,
+     * otherwise pulled from the infrastructure {@link DockerUtils#pullImage(DockerHost, String) registry}
+     * if there is one, and as a last resort copied from the building host through a local file.
+     */
+    protected void importImage(CachedImage image, DockerHost target, String key) throws Exception {
+        addHolder(image.host, image.name);
+        if (fetch(target, image.name)) return;
+        if (DockerUtils.pullImage(target, image.name).isPresent()) {
+            addHolder(target, image.name);
+            return;
+        }
+
+        SshMachineLocation source = image.host.getDynamicLocation().getMachine();
+        SshMachineLocation destination = target.getDynamicLocation().getMachine();
+        String remote = Os.mergePaths("/tmp", key + ".tar");
+        File local = File.createTempFile("docker-image-", ".tar");
+        try {
+            image.host.runDockerCommandTimeout(format("save -o %s %s", remote, image.name), BUILD_TIMEOUT);
+            if (source.copyFrom(remote, local.getAbsolutePath()) != 0) {
+                throw new IllegalStateException("Failed to copy image " + image.name + " from " + image.host);
+            }
+            if (destination.copyTo(local, remote) != 0) {
+                throw new IllegalStateException("Failed to copy image " + image.name + " to " + target);
+            }
+            target.runDockerCommandTimeout(format("load -i %s", remote), BUILD_TIMEOUT);
+            if (!target.getImageNamed(image.name).isPresent()) {
+                throw new IllegalStateException("Image " + image.name + " not found on " + target + " after loading");
+            }
+            addHolder(target, image.name);
+        } finally {
+            local.delete();
+            image.host.execCommandTimeout(BashCommands.sudo("rm -f " + remote), Duration.ONE_MINUTE);
+            target.execCommandTimeout(BashCommands.sudo("rm -f " + remote), Duration.ONE_MINUTE);
+        }
+    }
+
+    /**
+     * Record that a host holds an image, so it can serve the image to its peers.
+     */
+    public synchronized void addHolder(DockerHost host, String name) {
+        if (holders.put(name, host)) dispatch();
+    }
+
+    /**
+     * Forget a host that is being removed, electing a new canonical source for the images it built.
+     */
+    public synchronized void removeHost(DockerHost host) {
+        holders.values().removeAll(ImmutableSet.of(host));
+        pending.values().removeAll(ImmutableSet.of(host));
+        uploads.remove(host, uploads.count(host));
+        for (Map.Entry<String, SettableFuture<CachedImage>> entry : images.entrySet()) {
+            SettableFuture<CachedImage> future = entry.getValue();
+            if (!future.isDone()) continue;
+            try {
+                CachedImage image = future.get();
+                if (image.host.equals(host)) reelect(entry.getKey(), image);
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+            }
+        }
+    }
+
+    /**
+     * Replace the canonical source of an image with another running host that holds it, or forget
+     * the image if there is none, so the next host to need it builds it.
+     */
+    private synchronized Optional<CachedImage> reelect(String key, CachedImage image) {
+        SettableFuture<CachedImage> current = images.get(key);
+        if (current == null) return Optional.absent();
+        if (current.isDone()) {
+            try {
+                CachedImage elected = current.get();
+                if (!elected.host.equals(image.host) && isUp(elected.host)) return Optional.of(elected);
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+            }
+        }
+        for (DockerHost holder : holders.get(image.name)) {
+            if (!holder.equals(image.host) && isUp(holder)) {
+                CachedImage elected = new CachedImage(holder, image.imageId, image.name);
+                SettableFuture<CachedImage> replacement = SettableFuture.create();
+                replacement.set(elected);
+                images.put(key, replacement);
+                LOG.info("Elected {} as the source of image {} in place of {}", new Object[] { holder, image.name, image.host });
+                return Optional.of(elected);
+            }
+        }
+        images.remove(key, current);
+        LOG.info("No other host holds image {} built on {}, it will be built again", image.name, image.host);
+        return Optional.absent();
+    }
+
+    private boolean isUp(DockerHost host) {
+        return Boolean.TRUE.equals(host.getAttribute(SoftwareProcess.SERVICE_UP));
+    }
+
+    /**
+     * @return the hosts known to hold the image
+     */
+    public synchronized Set<DockerHost> getHolders(String name) {
+        return ImmutableSet.copyOf(holders.get(name));
+    }
+
+    /**
+     * Stream an image to the host from a peer that holds it.
+     * <p>
+     * The peer with the fewest uploads in progress is used, and each peer serves at most
+     * {@link DockerInfrastructure#DOCKER_IMAGE_MAX_UPLOADS} hosts at once. If every peer is busy this
+     * returns immediately, so the caller can pull the image from the registry or build it instead.
+     *
+     * @return true if the image was loaded on the host
+     */
+    public boolean fetch(DockerHost target, String name) {
+        Set<DockerHost> failed = Sets.newHashSet();
+        while (true) {
+            Optional<DockerHost> source = acquireSource(target, name, failed);
+            if (!source.isPresent()) return false;
+            try {
+                stream(source.get(), target, name);
+                LOG.info("Streamed image {} from {} to {}", new Object[] { name, source.get(), target });
+                addHolder(target, name);
+                return true;
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.warn("Failed to stream image " + name + " from " + source.get() + " to " + target, e);
+                failed.add(source.get());
+            } finally {
+                releaseSource(source.get());
+            }
+        }
+    }
+
+    /**
+     * Copy an image to the hosts in the background, from the hosts that already hold it.
+     * <p>
+     * Each copy starts as soon as a holder has a free upload slot, rather than a thread waiting for one.
+     * Every host that receives the image then serves it to others, so with {@code k} uploads allowed
+     * from each host the number of rounds grows with the logarithm, base {@code k + 1}, of the number of hosts.
+     */
+    public void distribute(String name, Iterable<DockerHost> targets) {
+        for (Entity entity : location.getDockerHostList()) {
+            DockerHostLocation host = ((DockerHost) entity).getDynamicLocation();
+            if (host != null && host.hasImage(name)) addHolder((DockerHost) entity, name);
+        }
+        synchronized (this) {
+            for (DockerHost target : targets) {
+                if (!holders.containsEntry(name, target)) pending.put(name, target);
+            }
+            LOG.info("Distributing image {} from {} hosts to {} hosts", new Object[] { name, holders.get(name).size(), pending.get(name).size() });
+            dispatch();
+        }
+    }
+
+    /**
+     * Copy the images held by the other hosts to a new host, in the background.
+     */
+    public void seed(DockerHost target) {
+        Set<String> names;
+        synchronized (this) {
+            names = ImmutableSet.copyOf(holders.keySet());
+        }
+        for (String name : names) {
+            distribute(name, ImmutableSet.of(target));
+        }
+    }
+
+    /**
+     * Start a task for each pending copy that has a free source. Copies without any running source are dropped,
+     * and the rest are started when an upload finishes or another host receives the image.
+     */
+    private synchronized void dispatch() {
+        if (pending.isEmpty()) return;
+        ExecutionContext executor = ((EntityInternal) location.getOwner()).getExecutionContext();
+        for (Map.Entry<String, DockerHost> entry : ImmutableList.copyOf(pending.entries())) {
+            final String name = entry.getKey();
+            final DockerHost target = entry.getValue();
+            if (holders.containsEntry(name, target)) {
+                pending.remove(name, target);
+                continue;
+            }
+            final Optional<DockerHost> source = acquireSource(target, name, ImmutableSet.<DockerHost>of());
+            if (!source.isPresent()) {
+                if (!hasSource(target, name)) pending.remove(name, target);
+                continue;
+            }
+            pending.remove(name, target);
+            executor.submit(TaskBuilder.<Void>builder()
+                    .name("Distributing image " + name + " to " + target)
+                    .body(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            try {
+                                stream(source.get(), target, name);
+                                LOG.info("Streamed image {} from {} to {}", new Object[] { name, source.get(), target });
+                                addHolder(target, name);
+                            } catch (Exception e) {
+                                Exceptions.propagateIfFatal(e);
+                                LOG.warn("Failed to distribute image " + name + " from " + source.get() + " to " + target, e);
+                            } finally {
+                                releaseSource(source.get());
+                            }
+                            return null;
+                        }
+                    })
+                    .build());
+        }
+    }
+
+    /** Choose the least busy peer holding the image, or nothing if they are all at their upload limit. */
+    private synchronized Optional<DockerHost> acquireSource(DockerHost target, String name, Set<DockerHost> excluded) {
+        int limit = getMaxUploads();
+        DockerHost best = null;
+        for (DockerHost holder : holders.get(name)) {
+            if (holder.equals(target) || excluded.contains(holder) || !isUp(holder)) continue;
+            int count = uploads.count(holder);
+            if (count < limit && (best == null || count < uploads.count(best))) best = holder;
+        }
+        if (best == null) return Optional.absent();
+        uploads.add(best);
+        return Optional.of(best);
+    }
+
+    /** Whether any running peer holds the image, busy or not. */
+    private synchronized boolean hasSource(DockerHost target, String name) {
+        for (DockerHost holder : holders.get(name)) {
+            if (!holder.equals(target) && isUp(holder)) return true;
+        }
+        return false;
+    }
+
+    private synchronized void releaseSource(DockerHost source) {
+        uploads.remove(source);
+        dispatch();
+    }
+
+    /** Pipe {@code docker save} on the source into {@code docker load} on the daemon of the target. */
+    private void stream(DockerHost source, DockerHost target, String name) {
+        String address = target.getAttribute(Attributes.SUBNET_ADDRESS);
+        if (Strings.isBlank(address)) address = target.getAttribute(Attributes.ADDRESS);
+        Integer port = target.getAttribute(DockerHost.DOCKER_SSL_PORT);
+        source.execCommandTimeout(format("%s | docker -H tcp://%s:%d --tls load", BashCommands.sudo("docker save " + name), address, port), BUILD_TIMEOUT);
+        target.scanImages();
+        if (!target.getImageNamed(name).isPresent()) {
+            throw new IllegalStateException("Image " + name + " not found on " + target + " after streaming from " + source);
+        }
+    }
+
+    private int getMaxUploads() {
+        Integer max = location.getDockerInfrastructure().config().get(DockerInfrastructure.DOCKER_IMAGE_MAX_UPLOADS);
+        return max == null || max < 1 ? 1 : max;
+    }
+
+    /** An image built on a host. */
+    protected static class CachedImage {
+        private final DockerHost host;
+        private final String imageId;
+        private final String name;
+
+        private CachedImage(DockerHost host, String imageId, String name) {
+            this.host = Preconditions.checkNotNull(host, "host");
+            this.imageId = Preconditions.checkNotNull(imageId, "imageId");
+            this.name = Preconditions.checkNotNull(name, "name");
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("host", host).add("imageId", imageId).add("name", name).toString();
+        }
+    }
+
+}
@@ -16,12 +16,15 @@
 package brooklyn.location.docker;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,9 +32,12 @@ import org.slf4j.LoggerFactory;
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.EntityFunctions;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.container.DockerAttributes;
 import brooklyn.entity.container.docker.DockerHost;
 import brooklyn.entity.container.docker.DockerInfrastructure;
+import brooklyn.entity.container.policy.DockerHostCapacityIndex;
+import brooklyn.entity.container.policy.DockerRebalancingPolicy;
 import brooklyn.entity.group.DynamicCluster;
 import brooklyn.entity.rebind.BasicLocationRebindSupport;
 import brooklyn.entity.rebind.RebindContext;
@@ -44,29 +50,52 @@ import brooklyn.location.basic.LocationConfigKeys;
 import brooklyn.location.basic.SshMachineLocation;
 import brooklyn.location.docker.strategy.DockerAwarePlacementStrategy;
 import brooklyn.location.docker.strategy.DockerAwareProvisioningStrategy;
+import brooklyn.location.docker.strategy.DockerAwareScoringStrategy;
+import brooklyn.location.docker.strategy.MaxContainersPlacementStrategy;
 import brooklyn.location.dynamic.DynamicLocation;
+import brooklyn.management.ExecutionContext;
+import brooklyn.management.Task;
 import brooklyn.mementos.LocationMemento;
 import brooklyn.networking.location.NetworkProvisioningExtension;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.flags.SetFromFlag;
+import brooklyn.util.task.TaskBuilder;
+import brooklyn.util.text.Strings;
 
+import com.google.common.base.Function;
 import com.google.common.base.Objects.ToStringHelper;
 import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimaps;
+import com.google.common.collect.Multiset;
 import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.FutureFallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 public class DockerLocation extends AbstractLocation implements DockerVirtualLocation, MachineProvisioningLocation<MachineLocation>,
         DynamicLocation<DockerInfrastructure, DockerLocation>, Closeable {
 
     private static final Logger LOG = LoggerFactory.getLogger(DockerLocation.class);
 
+    private static final Predicate<DockerHostLocation> NOT_DRAINING = new Predicate<DockerHostLocation>() {
+        @Override
+        public boolean apply(DockerHostLocation input) {
+            return !input.isDraining();
+        }
+    };
+
     @SetFromFlag("owner")
     private DockerInfrastructure infrastructure;
 
@@ -79,7 +108,21 @@ public class DockerLocation extends AbstractLocation implements DockerVirtualLoc
     @SetFromFlag("machines")
     private final SetMultimap<DockerHostLocation, String> containers = Multimaps.synchronizedSetMultimap(HashMultimap.<DockerHostLocation, String>create());
 
-    private transient Semaphore permit = new Semaphore(1);
+    private transient DockerContainerIndex containerIndex;
+
+    private transient DockerHostProvisioningCoordinator coordinator;
+
+    private transient Optional<DockerHostCapacityIndex> capacityIndex;
+
+    private transient DockerPlacementStatistics statistics;
+
+    private transient DockerPlacementTrace trace;
+
+    private transient DockerGangScheduler gangScheduler;
+
+    private transient DockerImageCache imageCache;
+
+    private transient DockerPermits creationPermits;
 
     public DockerLocation() {
         this(Maps.newLinkedHashMap());
@@ -97,14 +140,129 @@ public class DockerLocation extends AbstractLocation implements DockerVirtualLoc
         return provisioner;
     }
 
+    /**
+     * The {@link DockerContainerIndex index} of containers and their hosts.
+     * <p>
+     * This is built from the persisted container mapping the first time it is used, so it is
+     * restored after rebind.
+     */
+    protected synchronized DockerContainerIndex getContainerIndex() {
+        if (containerIndex == null) {
+            containerIndex = new DockerContainerIndex();
+            synchronized (containers) {
+                for (Map.Entry<DockerHostLocation, String> entry : containers.entries()) {
+                    containerIndex.add(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return containerIndex;
+    }
+
+    /**
+     * The {@link DockerHostCapacityIndex capacity index} for the infrastructure, if available.
+     */
+    public Optional<DockerHostCapacityIndex> getCapacityIndex() {
+        // Cache the result of the lookup even if absent, as the index is added when the infrastructure is created
+        if (capacityIndex == null) {
+            capacityIndex = DockerHostCapacityIndex.lookup(infrastructure);
+        }
+        return capacityIndex;
+    }
+
+    /**
+     * The {@link DockerHostProvisioningCoordinator coordinator} for provisioning new hosts.
+     */
+    public synchronized DockerHostProvisioningCoordinator getProvisioningCoordinator() {
+        if (coordinator == null) {
+            Integer maxConcurrent = infrastructure.config().get(DockerInfrastructure.MAX_CONCURRENT_HOST_PROVISIONING);
+            coordinator = new DockerHostProvisioningCoordinator(this, maxConcurrent == null ? 1 : maxConcurrent);
+        }
+        return coordinator;
+    }
+
+    /**
+     * The {@link DockerPermits permits} bounding how many containers are created at once, set by
+     * {@link DockerInfrastructure#MAX_CONCURRENT_CONTAINER_CREATION}.
+     */
+    public synchronized DockerPermits getCreationPermits() {
+        if (creationPermits == null) {
+            Integer maxConcurrent = infrastructure.config().get(DockerInfrastructure.MAX_CONCURRENT_CONTAINER_CREATION);
+            creationPermits = new DockerPermits(maxConcurrent == null || maxConcurrent < 1 ? 1 : maxConcurrent);
+        }
+        return creationPermits;
+    }
+
+    /**
+     * The {@link DockerPlacementStatistics statistics} for the placement pipeline.
+     */
+    public synchronized DockerPlacementStatistics getStatistics() {
+        if (statistics == null) {
+            statistics = new DockerPlacementStatistics(infrastructure);
+        }
+        return statistics;
+    }
+
+    /**
+     * The {@link DockerPlacementTrace trace} of placement decisions, if a
+     * {@link DockerInfrastructure#DOCKER_PLACEMENT_TRACE_FILE trace file} is configured.
+     */
+    public synchronized Optional<DockerPlacementTrace> getTrace() {
+        if (trace == null) {
+            String file = infrastructure.config().get(DockerInfrastructure.DOCKER_PLACEMENT_TRACE_FILE);
+            if (Strings.isBlank(file)) return Optional.absent();
+            trace = new DockerPlacementTrace(new File(file));
+        }
+        return Optional.of(trace);
+    }
+
+    /**
+     * The {@link DockerGangScheduler gang scheduler} for placing the containers of an application together, if
+     * {@link DockerInfrastructure#DOCKER_PLACEMENT_GANG gang scheduling} is enabled.
+     */
+    public synchronized Optional<DockerGangScheduler> getGangScheduler() {
+        if (gangScheduler == null) {
+            if (!Boolean.TRUE.equals(infrastructure.config().get(DockerInfrastructure.DOCKER_PLACEMENT_GANG))) return Optional.absent();
+            gangScheduler = new DockerGangScheduler(this, infrastructure.config().get(DockerInfrastructure.DOCKER_PLACEMENT_GANG_WINDOW),
+                    infrastructure.config().get(DockerInfrastructure.DOCKER_PLACEMENT_GANG_IDLE));
+        }
+        return Optional.of(gangScheduler);
+    }
+
+    /**
+     * The {@link DockerImageCache image cache} shared by the hosts, if
+     * {@link DockerInfrastructure#DOCKER_IMAGE_CACHE enabled}.
+     */
+    public synchronized Optional<DockerImageCache> getImageCache() {
+        if (imageCache == null) {
+            if (!Boolean.TRUE.equals(infrastructure.config().get(DockerInfrastructure.DOCKER_IMAGE_CACHE))) return Optional.absent();
+            imageCache = new DockerImageCache(this);
+        }
+        return Optional.of(imageCache);
+    }
+
+    /**
+     * The host locations available for placement, excluding any that are {@link DockerHostLocation#isDraining() draining}
+     * or still {@link DockerHostProvisioningCoordinator#isStarting(DockerHostLocation) being provisioned}.
+     */
     protected List<DockerHostLocation> getDockerHostLocations() {
+        Predicate<DockerHostLocation> available = Predicates.and(NOT_DRAINING, new Predicate<DockerHostLocation>() {
+            @Override
+            public boolean apply(DockerHostLocation input) {
+                return !getProvisioningCoordinator().isStarting(input);
+            }
+        });
+        Optional<DockerHostCapacityIndex> index = getCapacityIndex();
+        if (index.isPresent()) {
+            return ImmutableList.copyOf(Iterables.filter(index.get().getDockerHostLocations(), available));
+        }
+
         List<Optional<DockerHostLocation>> result = Lists.newArrayList();
         for (Entity entity : getDockerHostList()) {
             DockerHost host = (DockerHost) entity;
             DockerHostLocation machine = host.getDynamicLocation();
             result.add(Optional.<DockerHostLocation>fromNullable(machine));
         }
-        return ImmutableList.copyOf(Optional.presentInstances(result));
+        return ImmutableList.copyOf(Iterables.filter(Optional.presentInstances(result), available));
     }
 
     public MachineLocation obtain() throws NoMachinesAvailableException {
@@ -113,81 +271,538 @@ public class DockerLocation extends AbstractLocation implements DockerVirtualLoc
 
     @Override
     public MachineLocation obtain(Map<?,?> flags) throws NoMachinesAvailableException {
-        // Check context for entity being deployed
+        return await(obtainAsync(flags));
+    }
+
+    /**
+     * Obtain a container without blocking the caller.
+     * <p>
+     * Placement is decided and a slot reserved immediately. Waiting for a new host, for the
+     * host to start and for the container to be created are then chained as stages, with the
+     * container created in a task on the execution context of the host entity, so no thread is
+     * held while waiting for a host.
+     * <p>
+     * If {@link #getGangScheduler() gang scheduling} is enabled the request is instead collected with
+     * the others from the same application, and they are all placed together.
+     *
+     * @return a future for the container location
+     */
+    public ListenableFuture<MachineLocation> obtainAsync(Map<?,?> flags) {
+        Optional<DockerGangScheduler> gang = getGangScheduler();
+        if (gang.isPresent() && flags.get(LocationConfigKeys.CALLER_CONTEXT.getName()) instanceof Entity) {
+            return gang.get().submit(flags);
+        }
+        return obtainSingleAsync(flags);
+    }
+
+    /**
+     * Place a single container, as {@link #obtainAsync(Map)} without gang scheduling.
+     */
+    private ListenableFuture<MachineLocation> obtainSingleAsync(Map<?,?> flags) {
+        try {
+            // Check context for entity being deployed
+            final Entity entity = getCallerContext(flags);
+
+            // Reserve a slot on the first host in strategy order that still has room
+            int maxContainers = getMaxContainers();
+            DockerHostLocation machine = place(getDockerHostLocations(), maxContainers, entity, flags, null);
+            List<DockerAwarePlacementStrategy> entityStrategies = getEntityStrategies(entity);
+            ListenableFuture<DockerHostLocation> host;
+            if (machine != null) {
+                host = Futures.immediateFuture(machine);
+            } else {
+                // Wait for a new Docker host, where the coordinator reserves a slot for us
+                flags = applyProvisioningStrategies(flags, entityStrategies);
+                host = Futures.transform(getProvisioningCoordinator().acquireAsync((Map<String,Object>) flags, maxContainers),
+                        new Function<DockerHostLocation, DockerHostLocation>() {
+                            @Override
+                            public DockerHostLocation apply(DockerHostLocation input) {
+                                input.allocate(entity);
+                                return input;
+                            }
+                        });
+            }
+
+            final Map<?,?> containerFlags = flags;
+            ListenableFuture<MachineLocation> result = Futures.<DockerHostLocation, MachineLocation>transform(host, new AsyncFunction<DockerHostLocation, DockerContainerLocation>() {
+                @Override
+                public ListenableFuture<DockerContainerLocation> apply(DockerHostLocation input) {
+                    return obtainContainerAsync(input, containerFlags, entity);
+                }
+            }, MoreExecutors.sameThreadExecutor());
+            Futures.addCallback(result, new FutureCallback<MachineLocation>() {
+                @Override
+                public void onSuccess(MachineLocation container) {
+                    getStatistics().recordObtain(true);
+                }
+                @Override
+                public void onFailure(Throwable t) {
+                    getStatistics().recordObtain(false);
+                }
+            });
+            return result;
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            getStatistics().recordObtain(false);
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /**
+     * Obtain a number of containers with the same flags in a single placement pass.
+     *
+     * @see #obtain(List)
+     */
+    public List<MachineLocation> obtain(int count, Map<?,?> flags) throws NoMachinesAvailableException {
+        List<Map<?,?>> requests = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            requests.add(MutableMap.copyOf(flags));
+        }
+        return obtain(requests);
+    }
+
+    /**
+     * Obtain containers for a batch of requests in a single placement pass.
+     * <p>
+     * This takes a list of flags rather than a count, because each container is usually
+     * for a different entity, given as the caller context of its request.
+     * <p>
+     * Each entry in {@code requests} is the flags map for one container, with its own
+     * {@link LocationConfigKeys#CALLER_CONTEXT caller context} entity. All requests are
+     * placed on the existing hosts first, by {@link DockerHostLocation#reserve(int) reserving}
+     * slots without exceeding the limit of any {@link MaxContainersPlacementStrategy} in use.
+     * The number of new hosts needed for the
+     * remainder is then calculated and they are all provisioned in parallel, after which
+     * the containers are created on their hosts in parallel.
+     * <p>
+     * The batch is placed all or nothing. If the new hosts cannot be provisioned the slots
+     * reserved on existing hosts are released, and if any container fails the others are
+     * released, before the failure is propagated.
+     *
+     * @return the container locations, in the same order as the requests
+     */
+    public List<MachineLocation> obtain(List<? extends Map<?,?>> requests) throws NoMachinesAvailableException {
+        int count = requests.size();
+        int maxContainers = getMaxContainers();
+        List<DockerHostLocation> hosts = getDockerHostLocations();
+        DockerHostLocation[] placement = new DockerHostLocation[count];
+        List<Integer> unplaced = Lists.newArrayList();
+
+        // Plan placement on the existing hosts
+        for (int i = 0; i < count; i++) {
+            Entity entity = getCallerContext(requests.get(i));
+            placement[i] = place(hosts, maxContainers, entity, requests.get(i), null);
+            if (placement[i] == null) unplaced.add(i);
+        }
+        LOG.info("Planned placement of {} containers: {} on existing hosts, {} need new hosts",
+                new Object[] { count, count - unplaced.size(), unplaced.size() });
+
+        // Provision all the new hosts that are needed at once
+        if (unplaced.size() > 0) {
+            int perHost = maxContainers == Integer.MAX_VALUE ? unplaced.size() : maxContainers;
+            int needed = (unplaced.size() + perHost - 1) / perHost;
+            Map<?,?> first = requests.get(unplaced.get(0));
+            Map<String,Object> hostFlags = applyProvisioningStrategies(first, getEntityStrategies(getCallerContext(first)));
+            LOG.info("Provisioning {} new hosts in parallel", needed);
+            Multiset<DockerHostLocation> created = null;
+            try {
+                created = getProvisioningCoordinator().provision(hostFlags, unplaced.size(), perHost);
+            } finally {
+                if (created == null) unreserve(placement, requests);
+            }
+
+            // Plan placement of the remaining containers using the slots reserved on the new hosts
+            try {
+                List<DockerHostLocation> createdHosts = ImmutableList.copyOf(created.elementSet());
+                for (Integer i : unplaced) {
+                    Entity entity = getCallerContext(requests.get(i));
+                    placement[i] = place(createdHosts, maxContainers, entity, requests.get(i), created);
+                }
+            } finally {
+                for (Multiset.Entry<DockerHostLocation> unused : created.entrySet()) {
+                    for (int i = 0; i < unused.getCount(); i++) {
+                        unused.getElement().releaseReservation();
+                    }
+                }
+            }
+        }
+
+        // Create the containers in parallel
+        List<Callable<MachineLocation>> tasks = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            final Map<?,?> flags = requests.get(i);
+            final DockerHostLocation machine = placement[i];
+            tasks.add(new Callable<MachineLocation>() {
+                @Override
+                public MachineLocation call() throws Exception {
+                    if (machine == null) {
+                        // Rejected by the strategies everywhere, so fall back to a single placement
+                        return await(obtainSingleAsync(flags));
+                    } else {
+                        boolean succeeded = false;
+                        try {
+                            MachineLocation container = obtainContainer(machine, flags, getCallerContext(flags));
+                            succeeded = true;
+                            return container;
+                        } finally {
+                            getStatistics().recordObtain(succeeded);
+                        }
+                    }
+                }
+            });
+        }
+        return runInParallel("Obtaining Docker containers", tasks);
+    }
+
+    /**
+     * Release the slots reserved for a batch whose placement has been abandoned.
+     */
+    private void unreserve(DockerHostLocation[] placement, List<? extends Map<?,?>> requests) {
+        for (int i = 0; i < placement.length; i++) {
+            if (placement[i] != null) {
+                placement[i].releaseReservation();
+                placement[i].deallocate(getCallerContext(requests.get(i)));
+                getStatistics().recordObtain(false);
+            }
+        }
+    }
+
+    /**
+     * Filter the hosts for the entity and {@link #reserve(List, int, Entity, Multiset) reserve} a slot on the first
+     * with room, recording the decision in the {@link #getTrace() trace} if enabled.
+     *
+     * @param reserved slots already reserved on the hosts, to take instead of reserving new ones, or {@code null}
+     * @return the host, or {@code null} if none of the hosts can be used
+     */
+    private DockerHostLocation place(List<DockerHostLocation> hosts, int maxContainers, Entity entity, Map<?,?> flags, Multiset<DockerHostLocation> reserved) {
+        Optional<DockerPlacementTrace> trace = getTrace();
+        List<DockerPlacementTrace.HostState> snapshot = trace.isPresent() ? DockerPlacementTrace.snapshot(hosts) : null;
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<DockerHostLocation> available = filterDockerHostLocations(hosts, entity);
+        DockerHostLocation machine = reserve(available, maxContainers, entity, reserved);
+        if (trace.isPresent()) {
+            trace.get().record(entity, flags, Iterables.concat(strategies, getEntityStrategies(entity)), snapshot, machine, stopwatch);
+        }
+        return machine;
+    }
+
+    /**
+     * Reserve a slot on the first host in strategy order that has not reached the
+     * maximum number of containers, including slots already reserved on it, and
+     * {@link DockerHostLocation#allocate(Entity) allocate} the entity there. If slots
+     * have already been reserved, one of those is taken instead.
+     */
+    private DockerHostLocation reserve(List<DockerHostLocation> available, int maxContainers, Entity entity, Multiset<DockerHostLocation> reserved) {
+        for (DockerHostLocation machine : available) {
+            if (reserved != null ? reserved.remove(machine) : machine.reserve(maxContainers)) {
+                machine.allocate(entity);
+                return machine;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The container limit from any {@link MaxContainersPlacementStrategy} in use, or
+     * {@link Integer#MAX_VALUE} if unlimited.
+     */
+    public int getMaxContainers() {
+        Optional<DockerAwarePlacementStrategy> max = Iterables.tryFind(strategies, Predicates.instanceOf(MaxContainersPlacementStrategy.class));
+        if (max.isPresent()) {
+            return ((MaxContainersPlacementStrategy) max.get()).getMaxContainers();
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Run the tasks in parallel in the infrastructure execution context, returning
+     * all results in order. If any task fails, containers obtained by the others
+     * are released and the first failure is propagated.
+     */
+    private <T> List<T> runInParallel(String name, List<Callable<T>> callables) throws NoMachinesAvailableException {
+        ExecutionContext executor = ((EntityInternal) getOwner()).getExecutionContext();
+        List<Task<T>> tasks = Lists.newArrayList();
+        for (int i = 0; i < callables.size(); i++) {
+            tasks.add(executor.submit(TaskBuilder.<T>builder()
+                    .name(String.format("%s (%d of %d)", name, i + 1, callables.size()))
+                    .body(callables.get(i))
+                    .build()));
+        }
+
+        List<T> results = Lists.newArrayList();
+        Exception failure = null;
+        for (Task<T> task : tasks) {
+            try {
+                results.add(task.get());
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) {
+            for (MachineLocation obtained : Iterables.filter(results, MachineLocation.class)) {
+                try {
+                    release(obtained);
+                } catch (Exception e) {
+                    LOG.warn("Error releasing " + obtained + " after failed batch", e);
+                    Exceptions.propagateIfFatal(e);
+                }
+            }
+            Throwable cause = Exceptions.getFirstInteresting(failure);
+            if (cause instanceof NoMachinesAvailableException) throw (NoMachinesAvailableException) cause;
+            throw Exceptions.propagate(cause);
+        }
+        return results;
+    }
+
+    private Entity getCallerContext(Map<?,?> flags) {
         Object context = flags.get(LocationConfigKeys.CALLER_CONTEXT.getName());
         if (context != null && !(context instanceof Entity)) {
             throw new IllegalStateException("Invalid location context: " + context);
         }
-        Entity entity = (Entity) context;
+        return (Entity) context;
+    }
 
-        // Get the available hosts based on placement strategies
-        List<DockerHostLocation> available = getDockerHostLocations();
+    /**
+     * Filter the host locations using the infrastructure and entity placement strategies.
+     * <p>
+     * {@link DockerAwareScoringStrategy Scoring strategies} only apply their hard constraints
+     * here, and the hosts that remain are then ranked once by their combined weighted scores.
+     * Other strategies filter the list in turn, and their ordering breaks ties between hosts
+     * with equal scores.
+     * <p>
+     * Also used by the {@link DockerRebalancingPolicy} to check that a container can be moved to another host.
+     */
+    public List<DockerHostLocation> filterDockerHostLocations(List<DockerHostLocation> available, Entity entity) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Placement for: {}", Iterables.toString(Iterables.transform(available, EntityFunctions.id())));
         }
-        for (DockerAwarePlacementStrategy strategy : strategies) {
-            available = strategy.filterLocations(available, entity);
+        List<DockerAwareScoringStrategy> scoring = Lists.newArrayList();
+        for (DockerAwarePlacementStrategy strategy : Iterables.concat(strategies, getEntityStrategies(entity))) {
+            available = filter(strategy, available, entity);
+            if (strategy instanceof DockerAwareScoringStrategy) {
+                scoring.add((DockerAwareScoringStrategy) strategy);
+            }
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Placement after {}: {}", strategy, Iterables.toString(Iterables.transform(available, EntityFunctions.id())));
             }
         }
+        getStatistics().publishFilters();
+        return rank(scoring, available, entity);
+    }
+
+    private List<DockerHostLocation> filter(DockerAwarePlacementStrategy strategy, List<DockerHostLocation> available, final Entity entity) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<DockerHostLocation> result;
+        if (strategy instanceof DockerAwareScoringStrategy) {
+            final DockerAwareScoringStrategy scoring = (DockerAwareScoringStrategy) strategy;
+            result = ImmutableList.copyOf(Iterables.filter(available, new Predicate<DockerHostLocation>() {
+                @Override
+                public boolean apply(DockerHostLocation input) {
+                    return scoring.accept(input, entity);
+                }
+            }));
+        } else {
+            result = strategy.filterLocations(available, entity);
+        }
+        getStatistics().recordFilter(strategy, stopwatch, available.size(), result.size());
+        return result;
+    }
+
+    /**
+     * Order the hosts by the sum of the weighted scores from each strategy, best first.
+     * <p>
+     * Each strategy's scores are shifted so the worst host scores zero, then divided by their spread
+     * or by the {@link DockerAwareScoringStrategy#SCALE scale} of the strategy, whichever is larger.
+     * The best host then scores at most one, strategies that score every host the same do not affect
+     * the ranking, and differences that are small compared to the scale are not amplified.
+     */
+    private List<DockerHostLocation> rank(List<DockerAwareScoringStrategy> scoring, List<DockerHostLocation> available, Entity entity) {
+        if (scoring.isEmpty() || available.size() < 2) return available;
+
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        int size = available.size();
+        final double[] total = combine(scoring, available, entity);
+
+        // Sort indices rather than locations, and keep the existing order for equal scores
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return Double.compare(total[i2], total[i1]);
+            }
+        });
+        List<DockerHostLocation> ranked = Lists.newArrayListWithCapacity(size);
+        for (Integer i : order) {
+            ranked.add(available.get(i));
+        }
+        getStatistics().recordStage(DockerPlacementStatistics.PLACEMENT_SCORING, stopwatch);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Placement ranked: {}", Iterables.toString(Iterables.transform(ranked, EntityFunctions.id())));
+        }
+        return ImmutableList.copyOf(ranked);
+    }
+
+    /**
+     * The combined score of each host, scaled as described for {@link #rank(List, List, Entity)}.
+     */
+    static double[] combine(List<DockerAwareScoringStrategy> scoring, List<DockerHostLocation> available, Entity entity) {
+        int size = available.size();
+        double[] total = new double[size];
+        for (DockerAwareScoringStrategy strategy : scoring) {
+            double weight = strategy.getWeight();
+            if (weight == 0d) continue;
+            double[] scores = strategy.score(available, entity);
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < size; i++) {
+                min = Math.min(min, scores[i]);
+                max = Math.max(max, scores[i]);
+            }
+            double spread = Math.max(max - min, strategy.getScale());
+            if (max > min && spread > 0d) {
+                for (int i = 0; i < size; i++) {
+                    total[i] += weight * (scores[i] - min) / spread;
+                }
+            }
+        }
+        return total;
+    }
+
+    private List<DockerAwarePlacementStrategy> getEntityStrategies(Entity entity) {
         List<DockerAwarePlacementStrategy> entityStrategies = entity.config().get(DockerAttributes.PLACEMENT_STRATEGIES);
         if (entityStrategies != null && entityStrategies.size() > 0) {
-            for (DockerAwarePlacementStrategy strategy : entityStrategies) {
-                available = strategy.filterLocations(available, entity);
-            }
+            return entityStrategies;
         } else {
-            entityStrategies = ImmutableList.of();
+            return ImmutableList.of();
         }
+    }
 
-        // Use the docker strategy to add a new host
-        DockerHostLocation machine = null;
-        DockerHost dockerHost = null;
-        if (available.size() > 0) {
-            machine = available.get(0);
-            dockerHost = machine.getOwner();
-        } else {
-            // Get permission to create a new Docker host
-            if (permit.tryAcquire()) {
-                try {
-                    Iterable<DockerAwareProvisioningStrategy> provisioningStrategies = Iterables.filter(Iterables.concat(strategies,  entityStrategies), DockerAwareProvisioningStrategy.class);
-                    for (DockerAwareProvisioningStrategy strategy : provisioningStrategies) {
-                        flags = strategy.apply((Map<String,Object>) flags);
-                    }
+    private Map<String,Object> applyProvisioningStrategies(Map<?,?> flags, List<DockerAwarePlacementStrategy> entityStrategies) {
+        Map<String,Object> result = (Map<String,Object>) flags;
+        Iterable<DockerAwareProvisioningStrategy> provisioningStrategies = Iterables.filter(Iterables.concat(strategies,  entityStrategies), DockerAwareProvisioningStrategy.class);
+        for (DockerAwareProvisioningStrategy strategy : provisioningStrategies) {
+            result = strategy.apply(result);
+        }
+        return result;
+    }
 
-                    LOG.info("Provisioning new host with flags: {}", flags);
-                    SshMachineLocation provisioned = getProvisioner().obtain(flags);
-                    Entity added = getDockerInfrastructure().getDockerHostCluster().addNode(provisioned, MutableMap.of());
-                    dockerHost = (DockerHost) added;
-                    machine = dockerHost.getDynamicLocation();
-                    Entities.start(added, ImmutableList.of(provisioned));
-                } finally {
-                    permit.release();
-                }
-            } else {
-                // Wait until whoever has the permit releases it, and try again
-                try {
-                    permit.acquire();
-                } catch (InterruptedException ie) {
-                    Exceptions.propagate(ie);
-                } finally {
-                    permit.release();
+    /**
+     * Provision a new machine and start a {@link DockerHost} on it.
+     */
+    protected DockerHost provisionDockerHost(Map<?,?> flags) throws NoMachinesAvailableException {
+        LOG.info("Provisioning new host with flags: {}", flags);
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        SshMachineLocation provisioned = getProvisioner().obtain(flags);
+        Entity added = getDockerInfrastructure().getDockerHostCluster().addNode(provisioned, MutableMap.of());
+        getProvisioningCoordinator().starting((DockerHost) added);
+        try {
+            Entities.start(added, ImmutableList.of(provisioned));
+        } catch (RuntimeException e) {
+            getProvisioningCoordinator().failed((DockerHost) added);
+            throw e;
+        }
+        getStatistics().recordStage(DockerPlacementStatistics.HOST_SERVICE_UP, stopwatch);
+        return (DockerHost) added;
+    }
+
+    /**
+     * Promote a running host from the standby pool into the host cluster, if one is available.
+     * <p>
+     * The host is re-parented from the standby cluster to the host cluster, so it is not stopped with the standby
+     * pool, which is then resized back to {@link DockerInfrastructure#DOCKER_HOST_STANDBY_POOL_SIZE}
+     * in the background. Standby hosts are started with the default host specification, so any
+     * provisioning flags for the request are not applied to a promoted host.
+     *
+     * @return the promoted host, or {@code null} if the pool is empty or disabled
+     */
+    protected DockerHost promoteStandbyHost() {
+        final DynamicCluster standby = getDockerInfrastructure().getAttribute(DockerInfrastructure.DOCKER_HOST_STANDBY_CLUSTER);
+        if (standby == null) return null;
+
+        DockerHost promoted = null;
+        synchronized (standby) {
+            for (Entity member : standby.getMembers()) {
+                if (member instanceof DockerHost
+                        && Boolean.TRUE.equals(member.getAttribute(DockerHost.SERVICE_UP))
+                        && ((DockerHost) member).getDynamicLocation() != null) {
+                    promoted = (DockerHost) member;
+                    standby.removeMember(promoted);
+                    break;
                 }
-                return obtain(flags);
             }
         }
+        if (promoted == null) return null;
+
+        LOG.info("Promoting standby host {} for {}", promoted, getDockerInfrastructure());
+        DynamicCluster cluster = getDockerInfrastructure().getDockerHostCluster();
+        getProvisioningCoordinator().starting(promoted);
+        standby.removeChild(promoted);
+        cluster.addChild(promoted);
+        cluster.addMember(promoted);
+
+        final int size = getDockerInfrastructure().config().get(DockerInfrastructure.DOCKER_HOST_STANDBY_POOL_SIZE);
+        ((EntityInternal) getOwner()).getExecutionContext().submit(TaskBuilder.<Void>builder()
+                .name("Replenishing Docker standby hosts")
+                .body(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        standby.resize(size);
+                        return null;
+                    }
+                })
+                .build());
+        return promoted;
+    }
 
-        // Now wait until the host has started up
-        Entities.waitForServiceUp(dockerHost);
+    /**
+     * Obtain a new container on the given host, once it has started.
+     * <p>
+     * The caller must hold a {@link DockerHostLocation#reserve(int) reservation} on the host, which the
+     * host location commits as soon as the container counts against the host, or releases if it fails.
+     */
+    protected DockerContainerLocation obtainContainer(DockerHostLocation machine, Map<?,?> flags, Entity entity) throws NoMachinesAvailableException {
+        return await(obtainContainerAsync(machine, flags, entity));
+    }
 
-        // Obtain a new Docker container location, save and return it
+    /**
+     * As {@link #obtainContainer(DockerHostLocation, Map, Entity)}, returning a future for the container location.
+     */
+    protected ListenableFuture<DockerContainerLocation> obtainContainerAsync(final DockerHostLocation machine, Map<?,?> flags, final Entity entity) {
+        // Obtain a new Docker container location once the host is up, then save it
         if (LOG.isDebugEnabled()) {
             LOG.debug("Obtain a new container from {} for {}", machine, entity);
         }
         Map<?,?> hostFlags = MutableMap.copyOf(flags);
-        DockerContainerLocation container = machine.obtain(hostFlags);
-        containers.put(machine, container.getId());
-        return container;
+        ListenableFuture<DockerContainerLocation> obtained = Futures.withFallback(machine.obtainAsync(hostFlags), new FutureFallback<DockerContainerLocation>() {
+            @Override
+            public ListenableFuture<DockerContainerLocation> create(Throwable t) {
+                machine.deallocate(entity);
+                return Futures.immediateFailedFuture(t);
+            }
+        });
+        return Futures.transform(obtained, new Function<DockerContainerLocation, DockerContainerLocation>() {
+            @Override
+            public DockerContainerLocation apply(DockerContainerLocation container) {
+                containers.put(machine, container.getId());
+                getContainerIndex().add(machine, container.getId());
+                return container;
+            }
+        });
+    }
+
+    /**
+     * Wait for a future, unwrapping any {@link NoMachinesAvailableException} that caused it to fail.
+     */
+    static <T> T await(Future<T> future) throws NoMachinesAvailableException {
+        try {
+            return future.get();
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            Throwable cause = Exceptions.getFirstInteresting(e);
+            if (cause instanceof NoMachinesAvailableException) throw (NoMachinesAvailableException) cause;
+            throw Exceptions.propagate(cause);
+        }
     }
 
     @Override
@@ -201,27 +816,28 @@ public class DockerLocation extends AbstractLocation implements DockerVirtualLoc
             throw new IllegalStateException("No provisioner available to release "+machine);
         }
         String id = machine.getId();
-        Set<DockerHostLocation> set = Multimaps.filterValues(containers, Predicates.equalTo(id)).keySet();
-        if (set.isEmpty()) {
+        Optional<DockerHostLocation> found = getContainerIndex().getHost(id);
+        if (!found.isPresent()) {
             throw new IllegalArgumentException("Request to release "+machine+", but this machine is not currently allocated");
         }
-        DockerHostLocation host = Iterables.getOnlyElement(set);
+        DockerHostLocation host = found.get();
         if (LOG.isDebugEnabled()) {
             LOG.debug("Request to remove container mapping {} to {}", host, id);
         }
         host.release((DockerContainerLocation) machine);
-        if (containers.remove(host, id)) {
-            if (containers.get(host).isEmpty()) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Empty Docker host: {}", host);
-                }
-                if (getOwner().config().get(DockerInfrastructure.REMOVE_EMPTY_DOCKER_HOSTS)) {
-                    LOG.info("Removing empty Docker host: {}", host);
-                    remove(host);
-                }
-            }
-        } else {
+        int remaining = getContainerIndex().remove(id);
+        containers.remove(host, id);
+        if (remaining < 0) {
             throw new IllegalArgumentException("Request to release "+machine+", but container mapping not found");
+        } else if (remaining == 0) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Empty Docker host: {}", host);
+            }
+            // Keep the host if a placement has reserved a slot on it, otherwise stop further reservations
+            if (getOwner().config().get(DockerInfrastructure.REMOVE_EMPTY_DOCKER_HOSTS) && host.drainIfUnreserved()) {
+                LOG.info("Removing empty Docker host: {}", host);
+                remove(host);
+            }
         }
     }
 
@@ -229,6 +845,7 @@ public class DockerLocation extends AbstractLocation implements DockerVirtualLoc
         LOG.info("Releasing {}", machine);
         DynamicCluster cluster = infrastructure.getDockerHostCluster();
         DockerHost host = machine.getOwner();
+        if (imageCache != null) imageCache.removeHost(host);
         if (cluster.removeMember(host)) {
             LOG.info("Docker Host {} released", host.getDockerHostName());
         } else {
@@ -272,6 +889,10 @@ public class DockerLocation extends AbstractLocation implements DockerVirtualLoc
     @Override
     public void close() throws IOException {
         LOG.info("Close called on Docker infrastructure: {}", this);
+        synchronized (this) {
+            if (trace != null) trace.close();
+            if (gangScheduler != null) gangScheduler.shutdown();
+        }
     }
 
     // FIXME this should be supported in core Brooklyn for all extension tyoes
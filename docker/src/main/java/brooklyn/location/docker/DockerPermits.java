@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker;
+
+import java.util.Queue;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * A fixed number of permits handed out as futures, bounding how many containers are created or
+ * hosts provisioned at once.
+ * <p>
+ * Unlike a {@link java.util.concurrent.Semaphore} no thread waits for a permit. A caller chains its
+ * work on the future returned by {@link #acquire()}, which completes when a permit is free, and
+ * {@link #release() releases} it when the work is done. Waiting callers are served in order.
+ */
+public class DockerPermits {
+
+    private final Queue<SettableFuture<Void>> waiting = Queues.newArrayDeque();
+    private int available;
+
+    public DockerPermits(int permits) {
+        Preconditions.checkArgument(permits > 0, "Permits must be positive: %s", permits);
+        this.available = permits;
+    }
+
+    /**
+     * @return a future that completes once a permit has been acquired for the caller
+     */
+    public synchronized ListenableFuture<Void> acquire() {
+        if (available > 0) {
+            available--;
+            return Futures.immediateFuture(null);
+        }
+        SettableFuture<Void> permit = SettableFuture.create();
+        waiting.add(permit);
+        return permit;
+    }
+
+    /**
+     * Return a permit, passing it to the next waiting caller if there is one.
+     */
+    public void release() {
+        SettableFuture<Void> next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                available++;
+                return;
+            }
+        }
+        // Complete the waiting future outside the lock, as its callbacks may start work directly
+        if (!next.set(null)) {
+            // The caller cancelled while waiting, so pass the permit on
+            release();
+        }
+    }
+
+    /** The number of permits free. */
+    public synchronized int getAvailable() {
+        return available;
+    }
+
+    /** The number of callers waiting for a permit. */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+}
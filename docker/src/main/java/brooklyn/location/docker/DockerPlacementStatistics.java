@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import brooklyn.entity.basic.EntityLocal;
+import brooklyn.entity.container.docker.DockerInfrastructure;
+import brooklyn.location.docker.strategy.DockerAwarePlacementStrategy;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Collects timings and counts for the placement pipeline of a {@link DockerLocation}, and
+ * publishes them as sensors on the {@link DockerInfrastructure}.
+ * <p>
+ * Latencies are recorded in fixed histogram buckets, and published as a summary of
+ * {@code count}, {@code mean}, {@code p50}, {@code p95}, {@code p99} and {@code max}
+ * milliseconds. Percentiles are the upper bound of the bucket they fall in.
+ *
+ * @see DockerInfrastructure#DOCKER_PLACEMENT_STRATEGY_LATENCY
+ * @see DockerInfrastructure#DOCKER_PLACEMENT_STRATEGY_REJECTED
+ * @see DockerInfrastructure#DOCKER_PLACEMENT_STAGE_LATENCY
+ */
+public class DockerPlacementStatistics {
+
+    /** Waiting for a permit to provision a new host. */
+    public static final String PROVISIONING_PERMIT = "provisioning.permit";
+
+    /** Provisioning a new host until its service is up. */
+    public static final String HOST_SERVICE_UP = "host.serviceUp";
+
+    /** Waiting for the service of the chosen host to be up, before creating a container on it. */
+    public static final String HOST_WAIT = "host.wait";
+
+    /** Ranking the candidate hosts by their combined strategy scores. */
+    public static final String PLACEMENT_SCORING = "placement.scoring";
+
+    /** Creating a container on a running host. */
+    public static final String CONTAINER_CREATION = "container.creation";
+
+    private final EntityLocal infrastructure;
+    private final ConcurrentMap<String, LatencyHistogram> strategyLatency = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, AtomicLong> strategyRejected = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, LatencyHistogram> stageLatency = Maps.newConcurrentMap();
+    private final AtomicLong success = new AtomicLong();
+    private final AtomicLong failure = new AtomicLong();
+
+    public DockerPlacementStatistics(DockerInfrastructure infrastructure) {
+        this.infrastructure = (EntityLocal) Preconditions.checkNotNull(infrastructure, "infrastructure");
+    }
+
+    /**
+     * Record one {@link DockerAwarePlacementStrategy#filterLocations(java.util.List, brooklyn.entity.Entity) filter} pass.
+     */
+    public void recordFilter(DockerAwarePlacementStrategy strategy, Stopwatch elapsed, int before, int after) {
+        String name = strategy.getClass().getSimpleName();
+        histogram(strategyLatency, name).record(elapsed.elapsed(TimeUnit.MICROSECONDS));
+        AtomicLong rejected = strategyRejected.get(name);
+        if (rejected == null) {
+            strategyRejected.putIfAbsent(name, new AtomicLong());
+            rejected = strategyRejected.get(name);
+        }
+        rejected.addAndGet(Math.max(0, before - after));
+    }
+
+    /**
+     * Publish the filter statistics, once per placement rather than once per strategy.
+     */
+    public void publishFilters() {
+        infrastructure.setAttribute(DockerInfrastructure.DOCKER_PLACEMENT_STRATEGY_LATENCY, summarise(strategyLatency));
+        Map<String, Long> rejected = Maps.newTreeMap();
+        for (Map.Entry<String, AtomicLong> entry : strategyRejected.entrySet()) {
+            rejected.put(entry.getKey(), entry.getValue().get());
+        }
+        infrastructure.setAttribute(DockerInfrastructure.DOCKER_PLACEMENT_STRATEGY_REJECTED, rejected);
+    }
+
+    /**
+     * Record the time taken by a stage of the pipeline, such as {@link #CONTAINER_CREATION}.
+     */
+    public void recordStage(String stage, Stopwatch elapsed) {
+        histogram(stageLatency, stage).record(elapsed.elapsed(TimeUnit.MICROSECONDS));
+        infrastructure.setAttribute(DockerInfrastructure.DOCKER_PLACEMENT_STAGE_LATENCY, summarise(stageLatency));
+    }
+
+    public void recordObtain(boolean succeeded) {
+        if (succeeded) {
+            infrastructure.setAttribute(DockerInfrastructure.DOCKER_OBTAIN_SUCCESS_COUNT, success.incrementAndGet());
+        } else {
+            infrastructure.setAttribute(DockerInfrastructure.DOCKER_OBTAIN_FAILURE_COUNT, failure.incrementAndGet());
+        }
+    }
+
+    private static LatencyHistogram histogram(ConcurrentMap<String, LatencyHistogram> map, String name) {
+        LatencyHistogram histogram = map.get(name);
+        if (histogram == null) {
+            map.putIfAbsent(name, new LatencyHistogram());
+            histogram = map.get(name);
+        }
+        return histogram;
+    }
+
+    private static Map<String, Map<String, Double>> summarise(Map<String, LatencyHistogram> histograms) {
+        Map<String, Map<String, Double>> result = Maps.newTreeMap();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().summary());
+        }
+        return result;
+    }
+
+    /**
+     * A fixed bucket latency histogram, recording microseconds.
+     */
+    static class LatencyHistogram {
+
+        /** Bucket upper bounds in microseconds, from 10us to 10 minutes. */
+        private static final long[] BOUNDS = {
+            10L, 50L, 100L, 500L, 1000L, 5000L, 10000L, 50000L, 100000L, 500000L,
+            1000000L, 5000000L, 10000000L, 30000000L, 60000000L, 120000000L, 300000000L, 600000000L, Long.MAX_VALUE
+        };
+
+        private final long[] counts = new long[BOUNDS.length];
+        private long count = 0;
+        private long total = 0;
+        private long max = 0;
+
+        synchronized void record(long micros) {
+            int bucket = Arrays.binarySearch(BOUNDS, micros);
+            if (bucket < 0) bucket = -bucket - 1;
+            counts[bucket]++;
+            count++;
+            total += micros;
+            max = Math.max(max, micros);
+        }
+
+        synchronized Map<String, Double> summary() {
+            return ImmutableMap.<String, Double>builder()
+                    .put("count", (double) count)
+                    .put("mean", count == 0 ? 0d : millis(total / count))
+                    .put("p50", percentile(0.50))
+                    .put("p95", percentile(0.95))
+                    .put("p99", percentile(0.99))
+                    .put("max", millis(max))
+                    .build();
+        }
+
+        private double percentile(double fraction) {
+            if (count == 0) return 0d;
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return millis(Math.min(BOUNDS[i], max));
+                }
+            }
+            return millis(max);
+        }
+
+        private static double millis(long micros) {
+            return micros / 1000d;
+        }
+    }
+}
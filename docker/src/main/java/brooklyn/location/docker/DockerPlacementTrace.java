@@ -0,0 +1,213 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.Sanitizer;
+import brooklyn.entity.container.DockerAttributes;
+import brooklyn.entity.container.docker.DockerInfrastructure;
+import brooklyn.location.HardwareDetails;
+import brooklyn.location.basic.LocationConfigKeys;
+import brooklyn.location.docker.DockerHostResources.Requirements;
+import brooklyn.location.docker.strategy.DockerAwarePlacementStrategy;
+import brooklyn.util.exceptions.Exceptions;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.FileWriteMode;
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+
+/**
+ * Records each placement decision of a {@link DockerLocation} as a line of JSON, for replaying offline.
+ * <p>
+ * Each {@link Request record} holds the requirements and type of the entity, its provisioning flags,
+ * the placement strategies in use, a snapshot of the state of every host before the decision, the
+ * host chosen and the time taken. Flags that may hold secrets are masked by the {@link Sanitizer}. Tracing is
+ * enabled by setting {@link DockerInfrastructure#DOCKER_PLACEMENT_TRACE_FILE} on the infrastructure, and records
+ * are appended to the file, so a trace survives restarts.
+ */
+public class DockerPlacementTrace {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DockerPlacementTrace.class);
+
+    private static final Gson GSON = new Gson();
+
+    private final File file;
+    private Writer writer;
+
+    public DockerPlacementTrace(File file) {
+        this.file = Preconditions.checkNotNull(file, "file");
+    }
+
+    /**
+     * Take a snapshot of the hosts, before a placement decision changes them.
+     */
+    public static List<HostState> snapshot(List<DockerHostLocation> hosts) {
+        List<HostState> result = Lists.newArrayListWithCapacity(hosts.size());
+        for (DockerHostLocation host : hosts) {
+            result.add(HostState.of(host));
+        }
+        return result;
+    }
+
+    /**
+     * Append the placement decision for an entity to the trace.
+     *
+     * @param chosen the host chosen, or {@code null} if a new host is needed
+     */
+    public void record(Entity entity, Map<?,?> flags, Iterable<DockerAwarePlacementStrategy> strategies,
+            List<HostState> hosts, DockerHostLocation chosen, Stopwatch elapsed) {
+        Request request = new Request();
+        request.timestamp = System.currentTimeMillis();
+        if (entity != null) {
+            request.entityId = entity.getId();
+            request.entityType = entity.getEntityType().getName();
+            request.applicationId = entity.getApplicationId();
+            request.parentId = entity.getParent() == null ? null : entity.getParent().getId();
+            Requirements requirements = Requirements.of(entity, chosen == null ? null : chosen.getOwner());
+            request.cores = requirements.getCores();
+            request.memory = requirements.getMemory();
+            request.disk = requirements.getDisk();
+            request.ports = requirements.getPorts();
+        }
+        request.flags = Maps.newLinkedHashMap();
+        for (Map.Entry<?,?> entry : Sanitizer.sanitize(flags).entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            if (!key.equals(LocationConfigKeys.CALLER_CONTEXT.getName()) && entry.getValue() != null) {
+                request.flags.put(key, String.valueOf(entry.getValue()));
+            }
+        }
+        request.strategies = Lists.newArrayList();
+        for (DockerAwarePlacementStrategy strategy : strategies) {
+            request.strategies.add(strategy.getClass().getName());
+        }
+        request.hosts = hosts;
+        request.chosen = chosen == null ? null : chosen.getOwner().getId();
+        request.latencyMicros = elapsed.elapsed(TimeUnit.MICROSECONDS);
+        write(GSON.toJson(request));
+    }
+
+    private synchronized void write(String line) {
+        try {
+            if (writer == null) {
+                writer = Files.asCharSink(file, Charsets.UTF_8, FileWriteMode.APPEND).openBufferedStream();
+                LOG.info("Recording placement trace to {}", file);
+            }
+            writer.write(line);
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException ioe) {
+            LOG.warn("Failed to write placement trace to " + file, ioe);
+        }
+    }
+
+    public synchronized void close() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException ioe) {
+            LOG.debug("Error closing placement trace " + file, ioe);
+        }
+        writer = null;
+    }
+
+    /**
+     * Read the records from a trace file.
+     */
+    public static List<Request> read(File file) {
+        ImmutableList.Builder<Request> result = ImmutableList.builder();
+        try {
+            BufferedReader reader = Files.newReader(file, Charsets.UTF_8);
+            try {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    if (line.trim().length() > 0) result.add(GSON.fromJson(line, Request.class));
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException ioe) {
+            throw Exceptions.propagate(ioe);
+        }
+        return result.build();
+    }
+
+    /**
+     * A single placement decision.
+     */
+    public static class Request {
+        public long timestamp;
+        public String entityId;
+        public String entityType;
+        public String applicationId;
+        public String parentId;
+        public double cores;
+        public int memory;
+        public int disk;
+        public int ports;
+        public Map<String, String> flags;
+        public List<String> strategies;
+        public List<HostState> hosts;
+        public String chosen;
+        public long latencyMicros;
+    }
+
+    /**
+     * The state of a host when a placement decision was made.
+     */
+    public static class HostState {
+        public String id;
+        public int containers;
+        public int allocated;
+        public Double cpuUsage;
+        public Double cores;
+        public Integer memory;
+        public Integer diskCapacity;
+        public Integer portCapacity;
+        public String zone;
+
+        public static HostState of(DockerHostLocation host) {
+            HostState state = new HostState();
+            state.id = host.getOwner().getId();
+            state.containers = host.getContainerCount();
+            state.allocated = host.getAllocatedCount();
+            state.cpuUsage = host.getCpuUsage();
+            HardwareDetails details = host.getMachine().getMachineDetails().getHardwareDetails();
+            state.cores = details.getCpuCount() == null ? null : details.getCpuCount().doubleValue();
+            state.memory = details.getRam();
+            state.diskCapacity = host.getOwner().config().get(DockerAttributes.DOCKER_HOST_DISK_CAPACITY);
+            state.portCapacity = host.getOwner().config().get(DockerAttributes.DOCKER_HOST_PORT_CAPACITY);
+            state.zone = host.getZone();
+            return state;
+        }
+    }
+
+}
@@ -26,6 +26,8 @@ import java.util.regex.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.entity.Entity;
+import brooklyn.entity.container.docker.DockerFederation;
 import brooklyn.entity.container.docker.DockerHost;
 import brooklyn.entity.container.docker.DockerInfrastructure;
 import brooklyn.location.Location;
@@ -52,7 +54,9 @@ import com.google.common.collect.Sets;
  *     <li>docker:infrastructureId:(name=docker-infrastructure)
  *     <li>docker:infrastructureId:dockerHostId
  *     <li>docker:infrastructureId:dockerHostId:(name=dockerHost-brooklyn-1234,user=docker)
+ *     <li>docker:federationId
  *   </ul>
+ * If the entity is a {@link DockerFederation} then a {@link FederatedDockerLocation} is returned.
  */
 public class DockerResolver implements EnableableLocationResolver {
 
@@ -145,9 +149,29 @@ public class DockerResolver implements EnableableLocationResolver {
             }
         }
         final String locationName =  name.toString();
-        DockerInfrastructure infrastructure = (DockerInfrastructure) managementContext.getEntityManager().getEntity(infrastructureId);
+        Entity owner = managementContext.getEntityManager().getEntity(infrastructureId);
         Iterable<Location> managedLocations = managementContext.getLocationManager().getLocations();
 
+        if (owner instanceof DockerFederation) {
+            if (dockerHostId != null) {
+                throw new IllegalArgumentException("Invalid location '"+spec+"'; Docker host id not valid for a federation");
+            }
+            for (Location location : managedLocations) {
+                if (location instanceof FederatedDockerLocation) {
+                    if (((FederatedDockerLocation) location).getOwner().getId().equals(infrastructureId)) {
+                        return location;
+                    }
+                }
+            }
+            LocationSpec<FederatedDockerLocation> locationSpec = LocationSpec.create(FederatedDockerLocation.class)
+                    .configure(flags)
+                    .configure(DynamicLocation.OWNER, owner)
+                    .configure(LocationInternal.NAMED_SPEC_NAME, locationName)
+                    .displayName(displayNamePart != null ? displayNamePart : "Docker Federation " + infrastructureId);
+            return managementContext.getLocationManager().createLocation(locationSpec);
+        }
+
+        DockerInfrastructure infrastructure = (DockerInfrastructure) owner;
         if (dockerHostId == null) {
             for (Location location : managedLocations) {
                 if (location instanceof DockerLocation) {
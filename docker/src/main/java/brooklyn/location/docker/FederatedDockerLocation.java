@@ -0,0 +1,199 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.basic.SoftwareProcess;
+import brooklyn.entity.container.DockerAttributes;
+import brooklyn.entity.container.docker.DockerFederation;
+import brooklyn.entity.container.docker.DockerInfrastructure;
+import brooklyn.location.Location;
+import brooklyn.location.MachineLocation;
+import brooklyn.location.MachineProvisioningLocation;
+import brooklyn.location.NoMachinesAvailableException;
+import brooklyn.location.basic.AbstractLocation;
+import brooklyn.location.dynamic.DynamicLocation;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.flags.SetFromFlag;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Objects.ToStringHelper;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.Maps;
+
+/**
+ * A location that places containers across the {@link DockerInfrastructure infrastructures} of a {@link DockerFederation}.
+ * <p>
+ * Placement has two levels. An infrastructure is chosen first, and the container is then obtained from its
+ * {@link DockerLocation}, which applies its own placement strategies. Infrastructures whose
+ * {@link DockerAttributes#DOCKER_INFRASTRUCTURE_LATENCY latency} is within the
+ * {@link DockerFederation#LATENCY_TOLERANCE tolerance} of the lowest are tried first, most free container slots
+ * first, followed by the others in order of latency. If an infrastructure cannot provide a container the next
+ * one is tried. Infrastructures with no free slots on their existing hosts are only tried once all the others have
+ * failed, so a new host is only provisioned as a last resort.
+ */
+public class FederatedDockerLocation extends AbstractLocation implements MachineProvisioningLocation<MachineLocation>,
+        DynamicLocation<DockerFederation, FederatedDockerLocation>, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FederatedDockerLocation.class);
+
+    @SetFromFlag("owner")
+    private DockerFederation federation;
+
+    public FederatedDockerLocation() {
+        this(Maps.newLinkedHashMap());
+    }
+
+    public FederatedDockerLocation(Map properties) {
+        super(properties);
+
+        if (isLegacyConstruction()) {
+            init();
+        }
+    }
+
+    public MachineLocation obtain() throws NoMachinesAvailableException {
+        return obtain(Maps.<String,Object>newLinkedHashMap());
+    }
+
+    @Override
+    public MachineLocation obtain(Map<?,?> flags) throws NoMachinesAvailableException {
+        // Infrastructures with free slots first, then those that would have to provision a new host
+        List<DockerLocation> locations = MutableList.of();
+        List<DockerLocation> full = MutableList.of();
+        for (DockerLocation location : getDockerLocations()) {
+            if (getAvailable(location) > 0) {
+                locations.add(location);
+            } else {
+                full.add(location);
+            }
+        }
+        locations.addAll(full);
+
+        NoMachinesAvailableException failure = null;
+        for (DockerLocation location : locations) {
+            try {
+                MachineLocation machine = location.obtain(flags);
+                LOG.debug("Obtained {} from {}", machine, location);
+                return machine;
+            } catch (NoMachinesAvailableException nmae) {
+                LOG.debug("No containers available from {}: {}", location, nmae.getMessage());
+                failure = nmae;
+            }
+        }
+        if (failure != null) throw failure;
+        throw new NoMachinesAvailableException("No Docker infrastructures available in " + this);
+    }
+
+    /**
+     * The locations of the running infrastructures, in the order they should be tried.
+     */
+    public List<DockerLocation> getDockerLocations() {
+        List<DockerLocation> result = MutableList.of();
+        long lowest = Long.MAX_VALUE;
+        for (DockerInfrastructure infrastructure : federation.getDockerInfrastructures()) {
+            DockerLocation location = infrastructure.getDynamicLocation();
+            if (location == null || !Boolean.TRUE.equals(infrastructure.getAttribute(SoftwareProcess.SERVICE_UP))) continue;
+            result.add(location);
+            lowest = Math.min(lowest, getLatency(location));
+        }
+
+        Duration tolerance = federation.config().get(DockerFederation.LATENCY_TOLERANCE);
+        final long nearest = lowest == Long.MAX_VALUE ? lowest : lowest + (tolerance == null ? 0L : tolerance.toMilliseconds());
+        Collections.sort(result, new Comparator<DockerLocation>() {
+            @Override
+            public int compare(DockerLocation l1, DockerLocation l2) {
+                long latency1 = getLatency(l1), latency2 = getLatency(l2);
+                return ComparisonChain.start()
+                        .compare(latency1 <= nearest ? 0L : latency1, latency2 <= nearest ? 0L : latency2)
+                        .compare(getAvailable(l2), getAvailable(l1))
+                        .result();
+            }
+        });
+        return result;
+    }
+
+    /** The latency to the infrastructure in milliseconds, unknown latency sorting last. */
+    private long getLatency(DockerLocation location) {
+        DockerInfrastructure infrastructure = location.getOwner();
+        Duration latency = infrastructure.getAttribute(DockerAttributes.DOCKER_INFRASTRUCTURE_LATENCY);
+        if (latency == null) latency = infrastructure.config().get(DockerAttributes.DOCKER_INFRASTRUCTURE_LATENCY);
+        return latency == null ? Long.MAX_VALUE : latency.toMilliseconds();
+    }
+
+    /** The number of free container slots on the infrastructure hosts, ignoring hosts that could be added. */
+    private long getAvailable(DockerLocation location) {
+        DockerInfrastructure infrastructure = location.getOwner();
+        Integer hosts = infrastructure.getAttribute(DockerAttributes.DOCKER_HOST_COUNT);
+        Integer containers = infrastructure.getAttribute(DockerAttributes.DOCKER_CONTAINER_COUNT);
+        long used = containers == null ? 0L : containers;
+        int maxContainers = location.getMaxContainers();
+        if (maxContainers == Integer.MAX_VALUE) return Long.MAX_VALUE - used;
+        return (long) maxContainers * (hosts == null ? 0L : hosts) - used;
+    }
+
+    @Override
+    public MachineProvisioningLocation<MachineLocation> newSubLocation(Map<?, ?> newFlags) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Release a container through the {@link DockerLocation} it was obtained from.
+     */
+    @Override
+    public void release(MachineLocation machine) {
+        for (Location parent = machine.getParent(); parent != null; parent = parent.getParent()) {
+            if (parent instanceof DockerLocation) {
+                ((DockerLocation) parent).release(machine);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Request to release " + machine + ", but it is not a Docker container in " + this);
+    }
+
+    @Override
+    public Map<String,Object> getProvisioningFlags(Collection<String> tags) {
+        return Maps.newLinkedHashMap();
+    }
+
+    @Override
+    public DockerFederation getOwner() {
+        return federation;
+    }
+
+    @Override
+    public void close() throws IOException {
+        LOG.info("Close called on Docker federation: {}", this);
+    }
+
+    @Override
+    public ToStringHelper string() {
+        return super.string()
+                .omitNullValues()
+                .add("federation", federation);
+    }
+
+}
@@ -15,8 +15,14 @@
  */
 package brooklyn.location.docker.strategy;
 
+import java.util.List;
+
 import brooklyn.basic.BasicConfigurableObject;
+import brooklyn.entity.Entity;
 import brooklyn.entity.container.docker.DockerInfrastructure;
+import brooklyn.location.Location;
+import brooklyn.location.docker.DockerContainerLocation;
+import brooklyn.location.docker.DockerHostLocation;
 
 /**
  * Placement strategy for Docker containers.
@@ -26,6 +32,41 @@ public abstract class AbstractDockerPlacementStrategy extends BasicConfigurableO
     @Override
     public DockerInfrastructure getDockerInfrastructure() { return config().get(DOCKER_INFRASTRUCTURE); }
 
+    /** The {@link DockerAwareScoringStrategy#WEIGHT weight} of this strategy, for scoring strategies. */
+    public double getWeight() {
+        Double weight = config().get(DockerAwareScoringStrategy.WEIGHT);
+        return weight == null ? 1d : weight;
+    }
+
+    /** The {@link DockerAwareScoringStrategy#SCALE scale} of the scores of this strategy, for scoring strategies. */
+    public double getScale() {
+        Double scale = config().get(DockerAwareScoringStrategy.SCALE);
+        return scale == null ? 1d : scale;
+    }
+
+    /**
+     * The scores of the hosts for one placement, for scoring strategies. Strategies that need the same
+     * information about the entity for every host should override this and work it out once.
+     */
+    public double[] score(List<DockerHostLocation> locations, Entity context) {
+        DockerAwareScoringStrategy scoring = (DockerAwareScoringStrategy) this;
+        double[] scores = new double[locations.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = scoring.score(locations.get(i), context);
+        }
+        return scores;
+    }
+
+    /** The Docker host an entity is running on, if it is in a container. */
+    protected static DockerHostLocation getHost(Entity entity) {
+        for (Location location : entity.getLocations()) {
+            if (location instanceof DockerContainerLocation) {
+                return ((DockerContainerLocation) location).getOwner().getDockerHost().getDynamicLocation();
+            }
+        }
+        return null;
+    }
+
     @Override
     public String toString() {
         return String.format("DockerAwarePlacementStrategy(%s@%s)", getClass().getSimpleName(), getId());
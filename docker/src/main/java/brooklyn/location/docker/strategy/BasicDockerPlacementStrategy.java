@@ -30,9 +30,13 @@ import com.google.common.collect.Ordering;
 
 /**
  * A basic placement strategy for Docker containers, implemented as a {@link Predicate} and a {@link Comparator}.
+ * <p>
+ * When used by a {@link brooklyn.location.docker.DockerLocation} the predicate is the hard constraint,
+ * and subclasses should override {@link #score(DockerHostLocation, Entity)} consistently with the comparator,
+ * which is only used when {@link #filterLocations(List, Entity) filtering} directly.
  */
 public abstract class BasicDockerPlacementStrategy extends AbstractDockerPlacementStrategy
-        implements Predicate<DockerHostLocation>, Comparator<DockerHostLocation> {
+        implements Predicate<DockerHostLocation>, Comparator<DockerHostLocation>, DockerAwareScoringStrategy {
 
     @Override
     public List<DockerHostLocation> filterLocations(List<DockerHostLocation> locations, Entity context) {
@@ -45,6 +49,19 @@ public abstract class BasicDockerPlacementStrategy extends AbstractDockerPlaceme
         return ImmutableList.copyOf(Iterables.filter(available, this));
     }
 
+    @Override
+    public boolean accept(DockerHostLocation location, Entity context) {
+        return apply(location);
+    }
+
+    /**
+     * Defaults to no preference.
+     */
+    @Override
+    public double score(DockerHostLocation location, Entity context) {
+        return 0d;
+    }
+
     /**
      * A {@link Predicate} function that selects Docker hosts that satisy the strategy requirements.
      */
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker.strategy;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.Entity;
+import brooklyn.location.docker.DockerHostLocation;
+import brooklyn.location.docker.DockerHostResources;
+import brooklyn.location.docker.DockerHostResources.Requirements;
+import brooklyn.util.collections.MutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Placement strategy that packs containers onto as few Docker hosts as possible.
+ * <p>
+ * Hosts are filtered to those whose {@link DockerHostResources#getFree() free} CPU, memory, disk and
+ * ports can accommodate the {@link Requirements requirements} of the entity, then ordered best-fit
+ * first, by the smallest fraction of capacity left over across all dimensions after placement.
+ */
+public class BinPackingPlacementStrategy extends AbstractDockerPlacementStrategy implements DockerAwareScoringStrategy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BinPackingPlacementStrategy.class);
+
+    @Override
+    public List<DockerHostLocation> filterLocations(List<DockerHostLocation> locations, Entity context) {
+        if (locations == null || locations.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        final Map<DockerHostLocation, Double> residuals = Maps.newHashMap();
+        List<DockerHostLocation> available = MutableList.of();
+        for (DockerHostLocation location : locations) {
+            Requirements required = Requirements.of(context, location.getOwner());
+            DockerHostResources resources = location.getResources();
+            Requirements free = resources.getFree();
+            if (free.fits(required)) {
+                residuals.put(location, free.residual(required, resources.getCapacity()));
+                available.add(location);
+            } else {
+                LOG.debug("Location {} has {} free, rejected for {}", new Object[] { location, free, required });
+            }
+        }
+
+        Collections.sort(available, new Comparator<DockerHostLocation>() {
+            @Override
+            public int compare(DockerHostLocation l1, DockerHostLocation l2) {
+                return Double.compare(residuals.get(l1), residuals.get(l2));
+            }
+        });
+        return ImmutableList.copyOf(available);
+    }
+
+    @Override
+    public boolean accept(DockerHostLocation location, Entity context) {
+        return location.getResources().getFree().fits(Requirements.of(context, location.getOwner()));
+    }
+
+    /** Best-fit, so hosts with the least capacity left over score highest. */
+    @Override
+    public double score(DockerHostLocation location, Entity context) {
+        DockerHostResources resources = location.getResources();
+        return -resources.getFree().residual(Requirements.of(context, location.getOwner()), resources.getCapacity());
+    }
+
+}
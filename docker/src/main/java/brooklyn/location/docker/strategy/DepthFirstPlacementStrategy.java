@@ -15,6 +15,7 @@
  */
 package brooklyn.location.docker.strategy;
 
+import brooklyn.entity.Entity;
 import brooklyn.location.docker.DockerHostLocation;
 
 import com.google.common.collect.Ordering;
@@ -30,4 +31,10 @@ public class DepthFirstPlacementStrategy extends BasicDockerPlacementStrategy {
         return Ordering.arbitrary().compare(l1, l2);
     }
 
+    /** Prefer the fullest hosts, so each host is filled before the next is used. */
+    @Override
+    public double score(DockerHostLocation location, Entity context) {
+        return location.getAllocatedCount();
+    }
+
 }
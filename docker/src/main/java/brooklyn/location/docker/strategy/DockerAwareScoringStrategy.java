@@ -0,0 +1,67 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker.strategy;
+
+import java.util.List;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.location.docker.DockerHostLocation;
+import brooklyn.util.flags.SetFromFlag;
+
+/**
+ * Placement strategy that separates its hard constraints from its preferences.
+ * <p>
+ * Rather than each strategy filtering and re-sorting the list in turn, the
+ * {@link brooklyn.location.docker.DockerLocation} removes hosts that any strategy does not
+ * {@link #accept(DockerHostLocation, Entity) accept}, then ranks the remainder once by the
+ * sum of the {@link #WEIGHT weighted} {@link #score(DockerHostLocation, Entity) scores} of
+ * all strategies. Before weighting, each strategy's scores are shifted so the worst host scores
+ * zero and divided by the spread between the best and worst host, or by the strategy's
+ * {@link #SCALE scale} if that is larger. Small differences in score then only have a small
+ * effect on the ranking, rather than the full weight of the strategy.
+ */
+public interface DockerAwareScoringStrategy extends DockerAwarePlacementStrategy {
+
+    @SetFromFlag("weight")
+    ConfigKey<Double> WEIGHT = ConfigKeys.newDoubleConfigKey(
+            "docker.placement.weight", "Weight of this strategy when combining placement scores", 1d);
+
+    @SetFromFlag("scale")
+    ConfigKey<Double> SCALE = ConfigKeys.newDoubleConfigKey(
+            "docker.placement.scale", "Smallest difference in score between the best and worst host that is given the full weight of this strategy", 1d);
+
+    /**
+     * A hard constraint on whether the entity can be placed on the host.
+     */
+    boolean accept(DockerHostLocation location, Entity context);
+
+    /**
+     * The preference for placing the entity on the host, higher is better.
+     */
+    double score(DockerHostLocation location, Entity context);
+
+    /**
+     * The {@link #score(DockerHostLocation, Entity) scores} of all the candidate hosts for one placement, in order.
+     */
+    double[] score(List<DockerHostLocation> locations, Entity context);
+
+    double getWeight();
+
+    double getScale();
+
+}
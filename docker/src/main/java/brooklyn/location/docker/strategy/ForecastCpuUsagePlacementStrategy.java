@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker.strategy;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.location.docker.DockerHostLoad;
+import brooklyn.location.docker.DockerHostLocation;
+import brooklyn.util.flags.SetFromFlag;
+import brooklyn.util.time.Duration;
+
+/**
+ * Placement strategy that selects the Docker host with the lowest forecast CPU usage.
+ * <p>
+ * Uses the {@link DockerHostLoad load model} of each host rather than the instantaneous
+ * CPU usage, so briefly idle hosts and hosts with containers still starting are not
+ * given all new containers at once.
+ */
+public class ForecastCpuUsagePlacementStrategy extends BasicDockerPlacementStrategy {
+
+    @SetFromFlag("horizon")
+    public static final ConfigKey<Duration> HORIZON = ConfigKeys.newConfigKey(Duration.class,
+            "docker.placement.load.horizon", "How far ahead to forecast the CPU usage of each host", Duration.ONE_MINUTE);
+
+    @SetFromFlag("placementLoad")
+    public static final ConfigKey<Double> PLACEMENT_LOAD = ConfigKeys.newDoubleConfigKey(
+            "docker.placement.load.container", "Expected CPU usage of a new container, if it cannot be estimated from the host", 0.1d);
+
+    @Override
+    public int compare(DockerHostLocation l1, DockerHostLocation l2) {
+        return Double.compare(getForecast(l1), getForecast(l2));
+    }
+
+    @Override
+    public double score(DockerHostLocation location, Entity context) {
+        return -getForecast(location);
+    }
+
+    protected double getForecast(DockerHostLocation location) {
+        Duration horizon = config().get(HORIZON);
+        Double placementLoad = config().get(PLACEMENT_LOAD);
+        return location.getLoad().getForecast(horizon == null ? Duration.ZERO : horizon, placementLoad == null ? 0d : placementLoad);
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker.strategy;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.container.DockerAttributes;
+import brooklyn.entity.container.DockerUtils;
+import brooklyn.location.docker.DockerHostLocation;
+import brooklyn.util.collections.MutableList;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Placement strategy that prefers Docker hosts that already have the image for the entity.
+ * <p>
+ * Images are those {@link DockerHostLocation#hasImage(String) known} to each host, from the images it has
+ * committed and its image catalog. A host with the image only gets the preference while it has fewer than the
+ * {@link DockerHostLocation#getMaxContainers() maximum} number of containers for the location, so other hosts
+ * are only used under capacity pressure. When scoring, the preference has the same {@link #WEIGHT weight} as
+ * other strategies unless configured otherwise, so set a higher weight to favour image locality over spreading.
+ */
+public class ImageLocalityPlacementStrategy extends AbstractDockerPlacementStrategy implements DockerAwareScoringStrategy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ImageLocalityPlacementStrategy.class);
+
+    /**
+     * Orders hosts with the image first, keeping the existing order otherwise.
+     */
+    @Override
+    public List<DockerHostLocation> filterLocations(List<DockerHostLocation> locations, Entity context) {
+        if (locations == null || locations.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        String imageName = getImageName(context);
+        List<DockerHostLocation> local = MutableList.of();
+        List<DockerHostLocation> remote = MutableList.of();
+        for (DockerHostLocation location : locations) {
+            if (isLocal(location, imageName)) {
+                local.add(location);
+            } else {
+                remote.add(location);
+            }
+        }
+        LOG.debug("Image {} available on {} of {} hosts", new Object[] { imageName, local.size(), locations.size() });
+        return ImmutableList.<DockerHostLocation>builder().addAll(local).addAll(remote).build();
+    }
+
+    @Override
+    public boolean accept(DockerHostLocation location, Entity context) {
+        return true;
+    }
+
+    @Override
+    public double score(DockerHostLocation location, Entity context) {
+        return isLocal(location, getImageName(context)) ? 1d : 0d;
+    }
+
+    private boolean isLocal(DockerHostLocation location, String imageName) {
+        return location.getAllocatedCount() < location.getMaxContainers() && location.hasImage(imageName);
+    }
+
+    private String getImageName(Entity context) {
+        String dockerfile = context.config().get(DockerAttributes.DOCKERFILE_URL);
+        return DockerUtils.imageName(context, dockerfile);
+    }
+
+}
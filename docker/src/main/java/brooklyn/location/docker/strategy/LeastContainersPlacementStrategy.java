@@ -15,10 +15,11 @@
  */
 package brooklyn.location.docker.strategy;
 
-import brooklyn.entity.basic.BasicGroup;
-import brooklyn.entity.container.docker.DockerHost;
+import brooklyn.entity.Entity;
 import brooklyn.location.docker.DockerHostLocation;
 
+import com.google.common.primitives.Ints;
+
 /**
  * Placement strategy that selects the Docker host with the lowest number of containers.
  */
@@ -26,11 +27,12 @@ public class LeastContainersPlacementStrategy extends BasicDockerPlacementStrate
 
     @Override
     public int compare(DockerHostLocation l1, DockerHostLocation l2) {
-        Integer size1 = l1.getOwner().getAttribute(DockerHost.DOCKER_CONTAINER_CLUSTER).getAttribute(BasicGroup.GROUP_SIZE);
-        if (size1 == null) size1 = 0;
-        Integer size2 = l2.getOwner().getAttribute(DockerHost.DOCKER_CONTAINER_CLUSTER).getAttribute(BasicGroup.GROUP_SIZE);
-        if (size2 == null) size2 = 0;
-        return size1.compareTo(size2);
+        return Ints.compare(l1.getAllocatedCount(), l2.getAllocatedCount());
+    }
+
+    @Override
+    public double score(DockerHostLocation location, Entity context) {
+        return -location.getAllocatedCount();
     }
 
 }
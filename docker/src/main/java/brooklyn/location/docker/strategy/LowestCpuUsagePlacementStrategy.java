@@ -15,7 +15,7 @@
  */
 package brooklyn.location.docker.strategy;
 
-import brooklyn.entity.container.docker.DockerHost;
+import brooklyn.entity.Entity;
 import brooklyn.location.docker.DockerHostLocation;
 
 /**
@@ -25,11 +25,18 @@ public class LowestCpuUsagePlacementStrategy extends BasicDockerPlacementStrateg
 
     @Override
     public int compare(DockerHostLocation l1, DockerHostLocation l2) {
-        Double cpu1 = l1.getOwner().getAttribute(DockerHost.CPU_USAGE);
-        if (cpu1 == null) cpu1 = -1d;
-        Double cpu2 = l2.getOwner().getAttribute(DockerHost.CPU_USAGE);
-        if (cpu2 == null) cpu2 = -1d;
-        return Double.compare(cpu1, cpu2);
+        return Double.compare(getCpuUsage(l1), getCpuUsage(l2));
+    }
+
+    @Override
+    public double score(DockerHostLocation location, Entity context) {
+        return -getCpuUsage(location);
+    }
+
+    /** Hosts with unknown CPU usage are preferred. */
+    private double getCpuUsage(DockerHostLocation location) {
+        Double cpu = location.getCpuUsage();
+        return cpu == null ? -1d : cpu;
     }
 
 }
@@ -15,17 +15,28 @@
  */
 package brooklyn.location.docker.strategy;
 
+import java.util.List;
+import java.util.Set;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.config.ConfigKey;
-import brooklyn.entity.basic.BasicGroup;
+import brooklyn.entity.Entity;
 import brooklyn.entity.basic.ConfigKeys;
-import brooklyn.entity.container.docker.DockerHost;
 import brooklyn.entity.container.docker.DockerInfrastructure;
+import brooklyn.entity.container.policy.DockerHostCapacityIndex;
+import brooklyn.location.Location;
 import brooklyn.location.docker.DockerHostLocation;
+import brooklyn.location.docker.DockerLocation;
 import brooklyn.util.flags.SetFromFlag;
 
+import com.google.common.base.Optional;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+
 /**
  * Placement strategy that limits Docker hosts to a maximum number of containers.
  * <p>
@@ -43,8 +54,34 @@ public class MaxContainersPlacementStrategy extends BasicDockerPlacementStrategy
 
     public static final Integer DEFAULT_MAX_CONTAINERS = 8;
 
+    @Override
+    public List<DockerHostLocation> filterLocations(List<DockerHostLocation> locations, Entity context) {
+        if (locations == null || locations.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        // Use the capacity index to find hosts below the limit, if available
+        Location parent = locations.get(0).getParent();
+        if (parent instanceof DockerLocation) {
+            Optional<DockerHostCapacityIndex> index = ((DockerLocation) parent).getCapacityIndex();
+            if (index.isPresent()) {
+                Set<DockerHostLocation> below = ImmutableSet.copyOf(index.get().getDockerHostLocationsBelow(getMaxContainers()));
+                return ImmutableList.copyOf(Iterables.filter(locations, Predicates.and(Predicates.in(below), this)));
+            }
+        }
+        return super.filterLocations(locations, context);
+    }
+
     @Override
     public boolean apply(DockerHostLocation input) {
+        int maxSize = getMaxContainers();
+        int currentSize = input.getAllocatedCount();
+        boolean accept = currentSize < maxSize;
+        LOG.debug("Location {} size is {}/{}: {}", new Object[] { input, currentSize, maxSize, accept ? "accepted" : "rejected" });
+        return accept;
+    }
+
+    public int getMaxContainers() {
         Integer maxSize = config().get(DOCKER_CONTAINER_CLUSTER_MAX_SIZE);
         DockerInfrastructure infrastructure = config().get(DOCKER_INFRASTRUCTURE);
         if (infrastructure != null) {
@@ -52,11 +89,7 @@ public class MaxContainersPlacementStrategy extends BasicDockerPlacementStrategy
             if (infrastructureMax != null) maxSize = infrastructureMax;
         }
         if (maxSize == null) maxSize = DEFAULT_MAX_CONTAINERS;
-
-        Integer currentSize = input.getOwner().getAttribute(DockerHost.DOCKER_CONTAINER_CLUSTER).getAttribute(BasicGroup.GROUP_SIZE);
-        boolean accept = currentSize < maxSize;
-        LOG.debug("Location {} size is {}/{}: {}", new Object[] { input, currentSize, maxSize, accept ? "accepted" : "rejected" });
-        return accept;
+        return maxSize;
     }
 
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker.strategy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.SoftwareProcess;
+import brooklyn.entity.container.docker.DockerInfrastructure;
+import brooklyn.location.docker.DockerHostLocation;
+
+import com.google.common.collect.Ordering;
+
+/**
+ * Placement strategy that selects only Docker hosts with low forecast CPU usage.
+ * <p>
+ * Maximum is configured using {@link MaxCpuUsagePlacementStrategy#DOCKER_CONTAINER_CLUSTER_MAX_CPU} in the same
+ * way as the {@link MaxCpuUsagePlacementStrategy}, but is compared with the forecast CPU usage of the host
+ * as described for the {@link ForecastCpuUsagePlacementStrategy}. Hosts are not ordered.
+ */
+public class MaxForecastCpuUsagePlacementStrategy extends ForecastCpuUsagePlacementStrategy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MaxForecastCpuUsagePlacementStrategy.class);
+
+    @Override
+    public boolean apply(DockerHostLocation input) {
+        Double maxCpu = config().get(MaxCpuUsagePlacementStrategy.DOCKER_CONTAINER_CLUSTER_MAX_CPU);
+        DockerInfrastructure infrastructure = config().get(DOCKER_INFRASTRUCTURE);
+        if (infrastructure != null) {
+            Double infrastructureMax = infrastructure.config().get(MaxCpuUsagePlacementStrategy.DOCKER_CONTAINER_CLUSTER_MAX_CPU);
+            if (infrastructureMax != null) maxCpu = infrastructureMax;
+        }
+        if (maxCpu == null) maxCpu = MaxCpuUsagePlacementStrategy.DEFAULT_MAX_CPU_USAGE;
+
+        Boolean serviceUp = input.getOwner().getAttribute(SoftwareProcess.SERVICE_UP);
+        if (!Boolean.TRUE.equals(serviceUp) || input.getLoad().getAverage() == null) return false; // reject
+
+        double forecastCpu = getForecast(input);
+        boolean accept = forecastCpu < maxCpu;
+        LOG.debug("Location {} forecast CPU usage is {}: {}", new Object[] { input, forecastCpu, accept ? "accepted" : "rejected" });
+        return accept;
+    }
+
+    @Override
+    public int compare(DockerHostLocation l1, DockerHostLocation l2) {
+        return Ordering.allEqual().compare(l1, l2);
+    }
+
+    @Override
+    public double score(DockerHostLocation location, Entity context) {
+        return 0d;
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker.strategy;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.entity.container.DockerAttributes;
+import brooklyn.location.docker.DockerHostLocation;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.flags.SetFromFlag;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Placement strategy that co-locates entities with the peers they exchange the most traffic with.
+ * <p>
+ * Peers are the entities {@link DockerAttributes#DOCKER_PLACEMENT_PEERS declared} in the blueprint,
+ * each with a traffic weight of {@link #DECLARED_TRAFFIC}, and any whose traffic has been
+ * {@link DockerAttributes#DOCKER_TRAFFIC_PEERS observed} by monitoring, as a fraction of the busiest peer.
+ * Traffic reported by declared peers towards the entity also counts. A host scores the total traffic
+ * weight of the peers in its containers, but only while it has fewer than the
+ * {@link DockerHostLocation#getMaxContainers() maximum} number of containers for the location, so heavy
+ * talkers are only split up under capacity pressure. The peer traffic is worked out once for each placement.
+ * <p>
+ * Co-located containers talk over the host bridge rather than the SDN overlay between hosts.
+ */
+public class TrafficAwarePlacementStrategy extends AbstractDockerPlacementStrategy implements DockerAwareScoringStrategy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TrafficAwarePlacementStrategy.class);
+
+    @SetFromFlag("declaredTraffic")
+    public static final ConfigKey<Double> DECLARED_TRAFFIC = ConfigKeys.newDoubleConfigKey(
+            "docker.placement.traffic.declared", "Traffic weight of declared peers, relative to the busiest observed peer", 1d);
+
+    @Override
+    public List<DockerHostLocation> filterLocations(List<DockerHostLocation> locations, Entity context) {
+        if (locations == null || locations.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        final Map<DockerHostLocation, Double> traffic = getHostTraffic(context);
+        List<DockerHostLocation> available = MutableList.copyOf(locations);
+        Collections.sort(available, new Comparator<DockerHostLocation>() {
+            @Override
+            public int compare(DockerHostLocation l1, DockerHostLocation l2) {
+                return Double.compare(score(l2, traffic), score(l1, traffic));
+            }
+        });
+        return ImmutableList.copyOf(available);
+    }
+
+    @Override
+    public boolean accept(DockerHostLocation location, Entity context) {
+        return true;
+    }
+
+    @Override
+    public double score(DockerHostLocation location, Entity context) {
+        return score(location, getHostTraffic(context));
+    }
+
+    @Override
+    public double[] score(List<DockerHostLocation> locations, Entity context) {
+        Map<DockerHostLocation, Double> traffic = getHostTraffic(context);
+        double[] scores = new double[locations.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = score(locations.get(i), traffic);
+        }
+        return scores;
+    }
+
+    private double score(DockerHostLocation location, Map<DockerHostLocation, Double> traffic) {
+        Double total = traffic.get(location);
+        if (total == null || location.getAllocatedCount() >= location.getMaxContainers()) return 0d;
+        return total;
+    }
+
+    /**
+     * The total traffic weight between the entity and its peers, for each host they are on.
+     */
+    private Map<DockerHostLocation, Double> getHostTraffic(Entity context) {
+        Map<Entity, Double> peers = getPeerTraffic(context);
+        Map<DockerHostLocation, Double> result = Maps.newHashMap();
+        for (Map.Entry<Entity, Double> peer : peers.entrySet()) {
+            DockerHostLocation host = getHost(peer.getKey());
+            if (host == null) continue;
+            Double total = result.get(host);
+            result.put(host, (total == null ? 0d : total) + peer.getValue());
+        }
+        LOG.debug("Peer traffic for {} by host: {}", context, result);
+        return result;
+    }
+
+    /**
+     * The traffic weight of each peer of the entity, from declared peers and observed traffic in both directions.
+     */
+    private Map<Entity, Double> getPeerTraffic(Entity context) {
+        Map<Entity, Double> result = Maps.newHashMap();
+        Double declared = config().get(DECLARED_TRAFFIC);
+        List<Entity> peers = context.config().get(DockerAttributes.DOCKER_PLACEMENT_PEERS);
+        if (peers != null && declared != null) {
+            for (Entity peer : peers) {
+                if (peer != null) result.put(peer, declared);
+            }
+        }
+
+        // Observed traffic is reported by each container entity, so check both ends
+        Map<String, Double> observed = Maps.newHashMap();
+        Map<String, Double> outbound = context.getAttribute(DockerAttributes.DOCKER_TRAFFIC_PEERS);
+        if (outbound != null) observed.putAll(outbound);
+        if (peers != null) {
+            for (Entity peer : peers) {
+                if (peer == null) continue;
+                Map<String, Double> inbound = peer.getAttribute(DockerAttributes.DOCKER_TRAFFIC_PEERS);
+                Double rate = inbound == null ? null : inbound.get(context.getId());
+                Double existing = observed.get(peer.getId());
+                if (rate != null && (existing == null || rate > existing)) observed.put(peer.getId(), rate);
+            }
+        }
+        double busiest = 0d;
+        for (Double rate : observed.values()) {
+            if (rate != null) busiest = Math.max(busiest, rate);
+        }
+        if (busiest > 0d) {
+            for (Map.Entry<String, Double> entry : observed.entrySet()) {
+                Entity peer = getBrooklynManagementContext().getEntityManager().getEntity(entry.getKey());
+                if (peer == null || entry.getValue() == null) continue;
+                double weight = entry.getValue() / busiest;
+                Double existing = result.get(peer);
+                result.put(peer, existing == null ? weight : Math.max(existing, weight));
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker.strategy;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.entity.container.docker.DockerHost;
+import brooklyn.entity.container.docker.DockerInfrastructure;
+import brooklyn.location.docker.DockerHostLocation;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.flags.SetFromFlag;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+
+/**
+ * Placement strategy that spreads the members of a cluster across the failure domains of the Docker hosts.
+ * <p>
+ * The failure domain of a host is its {@link DockerHostLocation#getZone() zone}, either configured on the host
+ * as a rack name or taken from the availability zone or region of its machine. Members of a cluster are the
+ * entities with the same parent as the entity being placed, counted from the {@link DockerHostLocation#getDeployedEntities()
+ * entities deployed} on each host, so members that have been placed but whose containers are not yet running count too. A host is only accepted if placing the entity there
+ * would leave at most {@link #MAX_SKEW} more members in its zone than in the zone with the fewest, out of the zones
+ * of all hosts in the infrastructure. Hosts in zones with fewer members are preferred.
+ * <p>
+ * If {@link #STRICT} is false the skew is not enforced and zones with fewer members are only preferred.
+ */
+public class ZoneSpreadPlacementStrategy extends AbstractDockerPlacementStrategy implements DockerAwareScoringStrategy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ZoneSpreadPlacementStrategy.class);
+
+    @SetFromFlag("maxSkew")
+    public static final ConfigKey<Integer> MAX_SKEW = ConfigKeys.newIntegerConfigKey(
+            "docker.placement.spread.maxSkew", "Maximum difference in the number of cluster members between zones", 1);
+
+    @SetFromFlag("strict")
+    public static final ConfigKey<Boolean> STRICT = ConfigKeys.newBooleanConfigKey(
+            "docker.placement.spread.strict", "Reject hosts that would exceed the maximum skew, rather than only preferring other zones", Boolean.TRUE);
+
+    @Override
+    public List<DockerHostLocation> filterLocations(List<DockerHostLocation> locations, Entity context) {
+        if (locations == null || locations.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        final Map<String, Integer> members = getZoneMembers(context);
+        List<DockerHostLocation> available = MutableList.of();
+        for (DockerHostLocation location : locations) {
+            if (accept(location, members)) available.add(location);
+        }
+        Collections.sort(available, new Comparator<DockerHostLocation>() {
+            @Override
+            public int compare(DockerHostLocation l1, DockerHostLocation l2) {
+                return Ints.compare(count(members, l1), count(members, l2));
+            }
+        });
+        LOG.debug("Zone spread for {} with members {} accepted {} of {} hosts", new Object[] { context, members, available.size(), locations.size() });
+        return ImmutableList.copyOf(available);
+    }
+
+    @Override
+    public boolean accept(DockerHostLocation location, Entity context) {
+        return accept(location, getZoneMembers(context));
+    }
+
+    @Override
+    public double score(DockerHostLocation location, Entity context) {
+        return -count(getZoneMembers(context), location);
+    }
+
+    @Override
+    public double[] score(List<DockerHostLocation> locations, Entity context) {
+        Map<String, Integer> members = getZoneMembers(context);
+        double[] scores = new double[locations.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = -count(members, locations.get(i));
+        }
+        return scores;
+    }
+
+    private boolean accept(DockerHostLocation location, Map<String, Integer> members) {
+        if (!Boolean.TRUE.equals(config().get(STRICT))) return true;
+        Integer maxSkew = config().get(MAX_SKEW);
+        if (maxSkew == null) return true;
+        return withinSkew(members, getZone(location), maxSkew);
+    }
+
+    /**
+     * Whether adding a member to the zone would leave it at most {@code maxSkew} members ahead of the zone with the fewest.
+     */
+    static boolean withinSkew(Map<String, Integer> members, String zone, int maxSkew) {
+        int fewest = Integer.MAX_VALUE;
+        for (Integer count : members.values()) {
+            fewest = Math.min(fewest, count);
+        }
+        Integer existing = members.get(zone);
+        int count = existing == null ? 0 : existing;
+        return count + 1 - Math.min(fewest, count) <= maxSkew;
+    }
+
+    /**
+     * The number of other members of the entity's cluster in each zone, including zones with none.
+     */
+    private Map<String, Integer> getZoneMembers(Entity context) {
+        Map<String, Integer> members = Maps.newHashMap();
+        DockerInfrastructure infrastructure = getDockerInfrastructure();
+        if (infrastructure == null) return members;
+        Entity parent = context.getParent();
+        for (Entity entity : infrastructure.getDockerHostList()) {
+            DockerHostLocation host = ((DockerHost) entity).getDynamicLocation();
+            if (host == null) continue;
+            int count = 0;
+            if (parent != null) {
+                for (Entity deployed : host.getDeployedEntities().getEntities()) {
+                    if (!deployed.equals(context) && parent.equals(deployed.getParent())) count++;
+                }
+            }
+            members.put(getZone(host), count(members, host) + count);
+        }
+        return members;
+    }
+
+    private int count(Map<String, Integer> members, DockerHostLocation location) {
+        Integer count = members.get(getZone(location));
+        return count == null ? 0 : count;
+    }
+
+    /** The zone of a host, with an empty name if it is not known. */
+    private String getZone(DockerHostLocation location) {
+        return Strings.nullToEmpty(location.getZone());
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker.strategy.affinity;
+
+import java.util.Locale;
+import java.util.Queue;
+
+import javax.annotation.Nullable;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.EntityPredicates;
+import brooklyn.location.docker.DockerHostEntities;
+import brooklyn.util.javalang.Reflections;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Queues;
+
+/**
+ * A single parsed {@link AffinityRules affinity rule}.
+ * <p>
+ * Rules without a parameter apply to the properties of the entity being placed, so are
+ * bound to it when evaluated rather than when parsed, and can be shared between entities.
+ */
+public class AffinityRule {
+
+    private final boolean same;
+    private final String verb;
+    private final String parameter;
+    private final Predicate<Entity> instance;
+
+    private AffinityRule(boolean same, String verb, String parameter, Predicate<Entity> instance) {
+        this.same = same;
+        this.verb = verb;
+        this.parameter = parameter;
+        this.instance = instance;
+    }
+
+    public static AffinityRule parse(String rule) {
+        Preconditions.checkNotNull(rule, "rule");
+        Queue<String> tokens = Queues.newArrayDeque(Splitter.on(CharMatcher.WHITESPACE)
+                .omitEmptyStrings()
+                .splitToList(rule));
+
+        boolean same = true;
+
+        // Check first token for special values
+        String first = tokens.peek();
+        if (first.equalsIgnoreCase(AffinityRules.NOT)) {
+            same = false;
+            tokens.remove();
+        }
+
+        // Check verb
+        String verb = tokens.peek();
+        if (verb == null) {
+            throw new IllegalStateException("Affinity rule verb not specified: " + rule);
+        } else {
+            verb = verb.toUpperCase(Locale.ENGLISH);
+            if (Iterables.contains(AffinityRules.VERBS, verb)) {
+                tokens.remove();
+            } else {
+                throw new IllegalStateException("Affinity rule parser found unexpected verb token: " + verb);
+            }
+        }
+
+        // Check paramater and instantiate if required
+        String parameter = tokens.poll();
+        Predicate<Entity> instance = null;
+        if (parameter == null) {
+            if (!(verb.equals(AffinityRules.EMPTY) || verb.equals(AffinityRules.TYPE)
+                    || verb.equals(AffinityRules.ID) || verb.equals(AffinityRules.APPLICATION))) {
+                throw new IllegalStateException("Affinity rule parameter not specified: " + rule);
+            }
+        } else if (verb.equals(AffinityRules.EMPTY)) {
+            throw new IllegalStateException("Affinity rule has extra tokens: " + rule);
+        } else if (verb.equals(AffinityRules.PREDICATE)) {
+            try {
+                Class<?> clazz = Class.forName(parameter);
+                if (Reflections.hasNoArgConstructor(clazz)) {
+                    instance = (Predicate<Entity>) Reflections.invokeConstructorWithArgs(clazz);
+                } else {
+                    throw new IllegalStateException("Could not instantiate predicate: " + parameter);
+                }
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Could not find predicate: " + parameter);
+            }
+        }
+
+        // Check for left-over tokens
+        if (tokens.peek() != null) {
+            throw new IllegalStateException("Affinity rule has extra tokens: " + rule);
+        }
+
+        return new AffinityRule(same, verb, parameter, instance);
+    }
+
+    /** Whether this is the {@link AffinityRules#EMPTY} rule. */
+    public boolean isEmptyRule() {
+        return verb.equals(AffinityRules.EMPTY);
+    }
+
+    /** Whether this is a {@link AffinityRules#PREDICATE} rule, with its own instance of the predicate class. */
+    public boolean isPredicateRule() {
+        return verb.equals(AffinityRules.PREDICATE);
+    }
+
+    /** Whether the rule requires entities to have the property, rather than {@link AffinityRules#NOT not} have it. */
+    public boolean isSame() {
+        return same;
+    }
+
+    /**
+     * The predicate every entity on a host must satisfy, for the entity being placed.
+     */
+    public Predicate<Entity> predicate(Entity entity) {
+        if (isEmptyRule()) return Predicates.alwaysTrue();
+        Predicate<Entity> predicate = property(entity);
+        return same ? predicate : Predicates.not(predicate);
+    }
+
+    /**
+     * Whether all the entities on a host satisfy this rule, for the entity being placed.
+     * <p>
+     * Type, ID and application rules are answered from the counts in the host index.
+     */
+    public boolean allows(Entity entity, DockerHostEntities host) {
+        if (isEmptyRule()) return true;
+
+        int matches;
+        if (verb.equals(AffinityRules.TYPE)) {
+            matches = parameter == null
+                    ? host.countType(entity.getEntityType().getName(), entity.getEntityType().getSimpleName())
+                    : host.countType(parameter, parameter);
+        } else if (verb.equals(AffinityRules.ID)) {
+            matches = host.containsId(parameter == null ? entity.getId() : parameter) ? 1 : 0;
+        } else if (verb.equals(AffinityRules.APPLICATION)) {
+            matches = host.countApplication(parameter == null ? entity.getApplicationId() : parameter);
+        } else {
+            matches = Iterables.size(Iterables.filter(host.getEntities(), property(entity)));
+        }
+        return same ? matches == host.size() : matches == 0;
+    }
+
+    /** The property named by the rule, before applying {@link AffinityRules#NOT}. */
+    private Predicate<Entity> property(final Entity entity) {
+        if (verb.equals(AffinityRules.TYPE)) {
+            final String name = parameter == null ? entity.getEntityType().getName() : parameter;
+            final String simpleName = parameter == null ? entity.getEntityType().getSimpleName() : parameter;
+            return new Predicate<Entity>() {
+                @Override
+                public boolean apply(@Nullable Entity input) {
+                    return input.getEntityType().getName().equalsIgnoreCase(name) ||
+                            input.getEntityType().getSimpleName().equalsIgnoreCase(simpleName);
+                }
+            };
+        } else if (verb.equals(AffinityRules.NAME)) {
+            final String name = parameter.toLowerCase(Locale.ENGLISH);
+            return new Predicate<Entity>() {
+                @Override
+                public boolean apply(@Nullable Entity input) {
+                    return input.getDisplayName().toLowerCase(Locale.ENGLISH).contains(name);
+                }
+            };
+        } else if (verb.equals(AffinityRules.ID)) {
+            return EntityPredicates.idEqualTo(parameter == null ? entity.getId() : parameter);
+        } else if (verb.equals(AffinityRules.APPLICATION)) {
+            return EntityPredicates.applicationIdEqualTo(parameter == null ? entity.getApplicationId() : parameter);
+        } else {
+            return instance;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (same ? "" : AffinityRules.NOT + " ") + verb + (parameter == null ? "" : " " + parameter);
+    }
+
+}
@@ -16,27 +16,20 @@
 package brooklyn.location.docker.strategy.affinity;
 
 import java.util.List;
-import java.util.Locale;
-import java.util.Queue;
 
 import javax.annotation.Nullable;
 
 import brooklyn.config.ConfigKey;
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.ConfigKeys;
-import brooklyn.entity.basic.EntityPredicates;
 import brooklyn.location.docker.DockerHostLocation;
-import brooklyn.util.javalang.Reflections;
 
 import com.google.common.base.CharMatcher;
-import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Queues;
 import com.google.common.reflect.TypeToken;
 
 /**
@@ -123,105 +116,11 @@ public class AffinityRules implements Predicate<Entity> {
     }
 
     private Predicate<Entity> predicate(String rule) {
-        Preconditions.checkNotNull(rule, "rule");
-        Queue<String> tokens = Queues.newArrayDeque(Splitter.on(CharMatcher.WHITESPACE)
-                .omitEmptyStrings()
-                .splitToList(rule));
-
-        boolean same = true;
-        Predicate<Entity> predicate = Predicates.alwaysTrue();
-
-        // Check first token for special values
-        String first = tokens.peek();
-        if (first.equalsIgnoreCase(NOT)) {
-            same = false;
-            tokens.remove();
-        }
-
-        // Check verb
-        String verb = tokens.peek();
-        if (verb == null) {
-            throw new IllegalStateException("Affinity rule verb not specified: " + rule);
-        } else {
-            if (Iterables.contains(VERBS, verb.toUpperCase(Locale.ENGLISH))) {
-                tokens.remove();
-            } else {
-                throw new IllegalStateException("Affinity rule parser found unexpected verb token: " + verb);
-            }
-        }
-
-        // Check paramater and instantiate if required
-        final String parameter = tokens.peek();
-        if (parameter == null) {
-            if (verb.equalsIgnoreCase(EMPTY)) {
-                allowEmpty = same;
-                tokens.remove();
-                if (tokens.isEmpty()) {
-                    return predicate;
-                } else {
-                    throw new IllegalStateException("Affinity rule has extra tokens: " + rule);
-                }
-            } else if (verb.equalsIgnoreCase(TYPE)) {
-                predicate = new Predicate<Entity>() {
-                    @Override
-                    public boolean apply(@Nullable Entity input) {
-                        return input.getEntityType().getName().equalsIgnoreCase(entity.getEntityType().getName()) ||
-                                input.getEntityType().getSimpleName().equalsIgnoreCase(entity.getEntityType().getSimpleName());
-                    }
-                };
-            } else if (verb.equalsIgnoreCase(ID)) {
-                predicate = EntityPredicates.idEqualTo(entity.getId());
-            } else if (verb.equalsIgnoreCase(APPLICATION)) {
-                predicate = EntityPredicates.applicationIdEqualTo(entity.getApplicationId());
-            } else {
-                throw new IllegalStateException("Affinity rule parameter not specified: " + rule);
-            }
-        } else {
-            tokens.remove();
-            if (verb.equalsIgnoreCase(TYPE)) {
-                predicate = new Predicate<Entity>() {
-                    @Override
-                    public boolean apply(@Nullable Entity input) {
-                        return input.getEntityType().getName().equalsIgnoreCase(parameter) ||
-                                input.getEntityType().getSimpleName().equalsIgnoreCase(parameter);
-                    }
-                };
-            } else if (verb.equalsIgnoreCase(NAME)) {
-                predicate = new Predicate<Entity>() {
-                    @Override
-                    public boolean apply(@Nullable Entity input) {
-                        return input.getDisplayName().toLowerCase(Locale.ENGLISH).contains(parameter.toLowerCase(Locale.ENGLISH));
-                    }
-                };
-            } else if (verb.equalsIgnoreCase(ID)) {
-                predicate = EntityPredicates.idEqualTo(parameter);
-            } else if (verb.equalsIgnoreCase(APPLICATION)) {
-                predicate = EntityPredicates.applicationIdEqualTo(parameter);
-            } else if (verb.equalsIgnoreCase(PREDICATE)) {
-                try {
-                    Class<?> clazz = Class.forName(parameter);
-                    if (Reflections.hasNoArgConstructor(clazz)) {
-                        predicate = (Predicate<Entity>) Reflections.invokeConstructorWithArgs(clazz);
-                    } else {
-                        throw new IllegalStateException("Could not instantiate predicate: " + parameter);
-                    }
-                } catch (ClassNotFoundException e) {
-                    throw new IllegalStateException("Could not find predicate: " + parameter);
-                }
-            }
-        }
-
-        // Check for left-over tokens
-        if (tokens.peek() != null) {
-            throw new IllegalStateException("Affinity rule has extra tokens: " + rule);
-        }
-
-        // Create predicate and return
-        if (same) {
-            return predicate;
-        } else {
-            return Predicates.not(predicate);
+        AffinityRule parsed = AffinityRule.parse(rule);
+        if (parsed.isEmptyRule()) {
+            allowEmpty = parsed.isSame();
         }
+        return parsed.predicate(entity);
     }
 
     @Override
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014-2015 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package brooklyn.location.docker.strategy.affinity;
+
+import java.util.List;
+
+import brooklyn.entity.Entity;
+import brooklyn.location.docker.DockerHostEntities;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A list of {@link AffinityRules affinity rules}, parsed once and cached by their text.
+ * <p>
+ * Lists with a {@link AffinityRules#PREDICATE} rule are not cached, so each compilation gets its own
+ * predicate instances, as it would when parsing the rules directly. Rules are evaluated against the {@link DockerHostEntities index} of entities on each host,
+ * rather than searching all managed entities.
+ */
+public class CompiledAffinityRules {
+
+    private static final Cache<List<String>, CompiledAffinityRules> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .build();
+
+    private final List<AffinityRule> rules;
+    private final boolean allowEmpty;
+
+    private CompiledAffinityRules(List<AffinityRule> rules) {
+        this.rules = rules;
+        boolean empty = true;
+        for (AffinityRule rule : rules) {
+            if (rule.isEmptyRule()) empty = rule.isSame();
+        }
+        this.allowEmpty = empty;
+    }
+
+    /**
+     * @return the compiled rules, from the cache if the same rules have been compiled before
+     */
+    public static CompiledAffinityRules compile(Iterable<String> rules) {
+        List<String> key = ImmutableList.copyOf(rules);
+        CompiledAffinityRules compiled = CACHE.getIfPresent(key);
+        if (compiled != null) return compiled;
+
+        ImmutableList.Builder<AffinityRule> parsed = ImmutableList.builder();
+        boolean cacheable = true;
+        for (String rule : key) {
+            AffinityRule affinityRule = AffinityRule.parse(rule);
+            if (affinityRule.isPredicateRule()) cacheable = false;
+            parsed.add(affinityRule);
+        }
+        compiled = new CompiledAffinityRules(parsed.build());
+        if (cacheable) CACHE.put(key, compiled);
+        return compiled;
+    }
+
+    /**
+     * Whether the entity can be placed on a host with the indexed entities.
+     */
+    public boolean allows(Entity entity, DockerHostEntities host) {
+        if (host.size() == 0) return allowEmpty;
+        for (AffinityRule rule : rules) {
+            if (!rule.allows(entity, host)) return false;
+        }
+        return true;
+    }
+
+    public boolean allowEmptyLocations() { return allowEmpty; }
+
+}
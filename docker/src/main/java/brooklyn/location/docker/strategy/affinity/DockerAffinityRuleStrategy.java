@@ -21,7 +21,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.entity.Entity;
-import brooklyn.entity.basic.EntityPredicates;
 import brooklyn.entity.container.docker.DockerHost;
 import brooklyn.location.docker.DockerHostLocation;
 import brooklyn.location.docker.strategy.AbstractDockerPlacementStrategy;
@@ -33,6 +32,10 @@ import com.google.common.collect.Lists;
 
 /**
  * Docker host selection strategy using affinity rules to filter available hosts.
+ * <p>
+ * Rules are {@link CompiledAffinityRules compiled} once for each distinct list of entity, host
+ * and infrastructure rules, and checked against the {@link DockerHostLocation#getDeployedEntities() index}
+ * of entities on each host.
  */
 public class DockerAffinityRuleStrategy extends AbstractDockerPlacementStrategy {
 
@@ -41,25 +44,17 @@ public class DockerAffinityRuleStrategy extends AbstractDockerPlacementStrategy
     @Override
     public List<DockerHostLocation> filterLocations(List<DockerHostLocation> locations, Entity entity) {
         List<DockerHostLocation> available = Lists.newArrayList();
+        Optional<List<String>> entityRules = Optional.fromNullable(entity.config().get(DockerHost.DOCKER_HOST_AFFINITY_RULES));
 
         // Select hosts that satisfy the affinity rules
         for (DockerHostLocation machine : locations) {
-            Optional<List<String>> entityRules = Optional.fromNullable(entity.config().get(DockerHost.DOCKER_HOST_AFFINITY_RULES));
             Optional<List<String>> hostRules = Optional.fromNullable(machine.getOwner().config().get(DockerHost.DOCKER_HOST_AFFINITY_RULES));
             Optional<List<String>> infrastructureRules = Optional.fromNullable(machine.getOwner().getInfrastructure().config().get(DockerHost.DOCKER_HOST_AFFINITY_RULES));
             Iterable<String> combined = Iterables.concat(Optional.presentInstances(ImmutableList.of(entityRules, hostRules, infrastructureRules)));
-            AffinityRules rules = AffinityRules.rulesFor(entity).parse(combined);
+            CompiledAffinityRules rules = CompiledAffinityRules.compile(combined);
 
-            Iterable<Entity> entities = getBrooklynManagementContext().getEntityManager().findEntities(EntityPredicates.locationsIncludes(machine));
-            if (Iterables.isEmpty(entities)) {
-                if (rules.allowEmptyLocations()) {
-                    available.add(machine);
-                }
-            } else {
-                Iterable<Entity> filtered = Iterables.filter(entities, rules);
-                if (Iterables.size(filtered) == Iterables.size(entities)) {
-                    available.add(machine);
-                }
+            if (rules.allows(entity, machine.getDeployedEntities())) {
+                available.add(machine);
             }
         }
 
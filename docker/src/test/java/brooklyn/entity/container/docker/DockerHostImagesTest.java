@@ -0,0 +1,73 @@
+package brooklyn.entity.container.docker;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class DockerHostImagesTest {
+
+    private static final String ID = "4f0f27d8b6a1bd5dd9b5e1d3d7cbbd7a0a2bf8c3c0b2d2c0f3b1e7d6a5c4b3a2";
+
+    @Test
+    public void testParseImages() {
+        String output = "REPOSITORY          TAG                 IMAGE ID            CREATED             VIRTUAL SIZE\n"
+                + "ubuntu              14.04               " + ID + "   2 weeks ago         188.3 MB\n"
+                + "10.0.0.1:5000/app   latest              sha256:abc123       5 minutes ago       200 MB\r\n"
+                + "<none>              <none>              deadbeef            3 days ago          100 MB\n"
+                + "cached              <none>              cafebabe            3 days ago          100 MB\n";
+        Map<String, String> images = DockerHostImpl.parseImages(output);
+
+        assertEquals(images.size(), 2);
+        assertEquals(images.get("ubuntu:14.04"), ID);
+        assertEquals(images.get("10.0.0.1:5000/app:latest"), "sha256:abc123");
+    }
+
+    @Test
+    public void testParseNoImages() {
+        assertTrue(DockerHostImpl.parseImages("REPOSITORY          TAG                 IMAGE ID            CREATED             VIRTUAL SIZE\n").isEmpty());
+        assertTrue(DockerHostImpl.parseImages("").isEmpty());
+        assertTrue(DockerHostImpl.parseImages(null).isEmpty());
+    }
+
+    @Test
+    public void testImageArgumentsNameChangedImages() {
+        assertEquals(arguments("build --rm -t app:1.0 --tag=app:latest /tmp/app"), ImmutableList.of("app:1.0", "app:latest"));
+        assertEquals(arguments("commit -m snapshot -a brooklyn 4f0f27d8b6a1 app:snapshot"), ImmutableList.of("app:snapshot"));
+        assertEquals(arguments("tag -f ubuntu:14.04 10.0.0.1:5000/ubuntu"), ImmutableList.of("10.0.0.1:5000/ubuntu"));
+        assertEquals(arguments("pull 10.0.0.1:5000/app"), ImmutableList.of("10.0.0.1:5000/app"));
+        assertEquals(arguments("rmi -f app:1.0 4f0f27d8b6a1"), ImmutableList.of("app:1.0", "4f0f27d8b6a1"));
+        assertEquals(DockerHostImpl.imageArguments("load -i /tmp/app.tar", "Loaded image: app:1.0\r\n").get(), ImmutableList.of("app:1.0"));
+    }
+
+    @Test
+    public void testImageArgumentsWithoutTaggedImages() {
+        assertTrue(arguments("build /tmp/app").isEmpty());
+        assertTrue(arguments("commit 4f0f27d8b6a1").isEmpty());
+    }
+
+    @Test
+    public void testImageArgumentsUnknown() {
+        assertFalse(DockerHostImpl.imageArguments("pull -a ubuntu", "").isPresent());
+        assertFalse(DockerHostImpl.imageArguments("load -i /tmp/app.tar", "").isPresent());
+        assertFalse(DockerHostImpl.imageArguments("commit -m \"new snapshot\" 4f0f27d8b6a1 app", "").isPresent());
+        assertFalse(DockerHostImpl.imageArguments("pull ubuntu@sha256:abc123", "").isPresent());
+    }
+
+    @Test
+    public void testImageKey() {
+        assertEquals(DockerHostImpl.imageKey("ubuntu"), "ubuntu:latest");
+        assertEquals(DockerHostImpl.imageKey("ubuntu:14.04"), "ubuntu:14.04");
+        assertEquals(DockerHostImpl.imageKey("10.0.0.1:5000/app"), "10.0.0.1:5000/app:latest");
+    }
+
+    private List<String> arguments(String command) {
+        return DockerHostImpl.imageArguments(command, "").get();
+    }
+}
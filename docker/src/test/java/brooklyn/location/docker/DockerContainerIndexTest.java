@@ -0,0 +1,100 @@
+package brooklyn.location.docker;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+public class DockerContainerIndexTest {
+
+    private static final int THREADS = 16;
+    private static final int CONTAINERS = 1000;
+
+    private ExecutorService executor;
+    private DockerContainerIndex index;
+    private DockerHostLocation first;
+    private DockerHostLocation second;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(THREADS);
+        index = new DockerContainerIndex();
+        first = new DockerHostLocation();
+        second = new DockerHostLocation();
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (executor != null) executor.shutdownNow();
+    }
+
+    @Test
+    public void testAddAndLookup() {
+        index.add(first, "a");
+        index.add(first, "b");
+        index.add(second, "c");
+
+        assertEquals(index.getHost("a").get(), first);
+        assertEquals(index.getHost("c").get(), second);
+        assertFalse(index.getHost("d").isPresent());
+        assertEquals(index.getContainers(first), ImmutableSet.of("a", "b"));
+        assertEquals(index.size(), 3);
+    }
+
+    @Test
+    public void testRemoveCountsRemaining() {
+        index.add(first, "a");
+        index.add(first, "b");
+
+        assertEquals(index.remove("a"), 1);
+        assertEquals(index.remove("b"), 0);
+        assertEquals(index.remove("b"), -1);
+        assertTrue(index.getContainers(first).isEmpty());
+        assertEquals(index.size(), 0);
+    }
+
+    @Test
+    public void testAddAfterLastRemoved() {
+        index.add(first, "a");
+        assertEquals(index.remove("a"), 0);
+        index.add(first, "b");
+
+        assertEquals(index.getContainers(first), ImmutableSet.of("b"));
+        assertEquals(index.remove("b"), 0);
+    }
+
+    @Test
+    public void testConcurrentRemoveSeesLastContainerOnce() throws Exception {
+        for (int i = 0; i < CONTAINERS; i++) {
+            index.add(first, "container-" + i);
+        }
+        List<Future<Integer>> results = Lists.newArrayList();
+        for (int i = 0; i < CONTAINERS; i++) {
+            final String id = "container-" + i;
+            results.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return index.remove(id);
+                }
+            }));
+        }
+        int empty = 0;
+        for (Future<Integer> result : results) {
+            if (result.get() == 0) empty++;
+        }
+        assertEquals(empty, 1);
+        assertEquals(index.size(), 0);
+    }
+}
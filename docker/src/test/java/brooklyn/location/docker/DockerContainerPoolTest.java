@@ -0,0 +1,65 @@
+package brooklyn.location.docker;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import org.testng.annotations.Test;
+
+import brooklyn.entity.BrooklynAppUnitTestSupport;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.BasicEntity;
+import brooklyn.entity.container.DockerAttributes;
+import brooklyn.entity.container.docker.DockerContainer;
+import brooklyn.entity.proxying.EntitySpec;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class DockerContainerPoolTest extends BrooklynAppUnitTestSupport {
+
+    @Test
+    public void testSameConfigurationMatches() {
+        Entity first = app.createAndManageChild(spec());
+        Entity second = app.createAndManageChild(spec());
+
+        assertEquals(DockerContainerPool.configuration(first), DockerContainerPool.configuration(second));
+    }
+
+    @Test
+    public void testEnvironmentAndLimitsDiffer() {
+        Entity base = app.createAndManageChild(spec());
+        Entity environment = app.createAndManageChild(spec()
+                .configure(DockerContainer.DOCKER_CONTAINER_ENVIRONMENT, ImmutableMap.<String, Object>of("MODE", "test")));
+        Entity memory = app.createAndManageChild(spec()
+                .configure(DockerAttributes.DOCKER_MEMORY, 1024));
+
+        assertFalse(DockerContainerPool.configuration(environment).equals(DockerContainerPool.configuration(base)));
+        assertFalse(DockerContainerPool.configuration(memory).equals(DockerContainerPool.configuration(base)));
+    }
+
+    @Test
+    public void testPortsIncludeChildren() {
+        Entity parent = app.createAndManageChild(spec()
+                .child(EntitySpec.create(BasicEntity.class)
+                        .configure(DockerAttributes.DOCKER_OPEN_PORTS, ImmutableList.of(8443))));
+
+        assertEquals(DockerContainerPool.ports(parent), ImmutableSet.of(8080, 8443));
+        assertEquals(DockerContainerPool.configuration(parent).get("ports"), ImmutableSet.of(8080, 8443));
+    }
+
+    @Test
+    public void testDirectPortsDiffer() {
+        Entity base = app.createAndManageChild(spec());
+        Entity direct = app.createAndManageChild(spec()
+                .configure(DockerAttributes.DOCKER_DIRECT_PORTS, ImmutableList.of(9000)));
+
+        assertFalse(DockerContainerPool.configuration(direct).equals(DockerContainerPool.configuration(base)));
+        assertEquals(DockerContainerPool.configuration(direct).get("direct"), ImmutableList.of(9000));
+    }
+
+    private EntitySpec<BasicEntity> spec() {
+        return EntitySpec.create(BasicEntity.class)
+                .configure(DockerAttributes.DOCKER_OPEN_PORTS, ImmutableList.of(8080));
+    }
+}
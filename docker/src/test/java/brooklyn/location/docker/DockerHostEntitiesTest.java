@@ -0,0 +1,81 @@
+package brooklyn.location.docker;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Set;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.BrooklynAppUnitTestSupport;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.BasicEntity;
+import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.basic.EntityPredicates;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.location.LocationSpec;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class DockerHostEntitiesTest extends BrooklynAppUnitTestSupport {
+
+    private DockerHostLocation location;
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        location = mgmt.getLocationManager().createLocation(LocationSpec.create(DockerHostLocation.class));
+    }
+
+    @Test
+    public void testSeedMatchesLocatedEntities() {
+        deploy();
+        deploy();
+        app.createAndManageChild(EntitySpec.create(BasicEntity.class));
+
+        assertEquals(indexed(), located());
+        assertEquals(indexed().size(), 2);
+    }
+
+    @Test
+    public void testAllocateMatchesLocatedEntities() {
+        deploy();
+        Entity placed = deploy();
+        location.deallocate(placed);
+        location.allocate(placed);
+
+        assertEquals(indexed(), located());
+    }
+
+    @Test
+    public void testRebuildFindsEntitiesDeployedElsewhere() {
+        deploy();
+        assertEquals(indexed(), located());
+
+        // Not placed through the location, so only found when the index is rebuilt
+        Entity other = deploy();
+        assertFalse(indexed().contains(other));
+
+        location.getDeployedEntities().rebuild();
+        assertTrue(indexed().contains(other));
+        assertEquals(indexed(), located());
+    }
+
+    private Entity deploy() {
+        Entity entity = app.createAndManageChild(EntitySpec.create(BasicEntity.class));
+        ((EntityInternal) entity).addLocations(ImmutableList.of(location));
+        return entity;
+    }
+
+    private Set<Entity> indexed() {
+        return ImmutableSet.copyOf(location.getDeployedEntities().getEntities());
+    }
+
+    private Set<Entity> located() {
+        return ImmutableSet.copyOf(mgmt.getEntityManager().findEntities(EntityPredicates.locationsIncludes(location)));
+    }
+}
@@ -0,0 +1,114 @@
+package brooklyn.location.docker;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.container.DockerAttributes;
+import brooklyn.util.time.Duration;
+
+public class DockerHostLoadTest {
+
+    private static final double DELTA = 1e-9;
+
+    private LoadHostLocation location;
+    private DockerHostLoad load;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        location = new LoadHostLocation();
+        load = new DockerHostLoad(location, 0.5d, 0.5d);
+    }
+
+    @Test
+    public void testAverageAndTrend() {
+        load.sample(10d, 0L);
+        assertEquals(load.getAverage(), 10d, DELTA);
+        assertEquals(load.getTrend(), 0d, DELTA);
+
+        load.sample(20d, 1000L);
+        assertEquals(load.getAverage(), 15d, DELTA);
+        assertEquals(load.getTrend(), 2.5d, DELTA);
+
+        // The trend carries the previous average forward before smoothing
+        load.sample(20d, 2000L);
+        assertEquals(load.getAverage(), 18.75d, DELTA);
+        assertEquals(load.getTrend(), 3.125d, DELTA);
+    }
+
+    @Test
+    public void testLateSampleDoesNotChangeTrend() {
+        load.sample(10d, 0L);
+        load.sample(20d, 1000L);
+        load.sample(5d, 1000L);
+        assertEquals(load.getAverage(), 10d, DELTA);
+        assertEquals(load.getTrend(), 2.5d, DELTA);
+    }
+
+    @Test
+    public void testForecastExtrapolatesTrend() {
+        load.sample(10d, 0L);
+        load.sample(20d, 1000L);
+        assertEquals(load.getForecast(Duration.seconds(10), 5d), 40d, DELTA);
+        assertEquals(load.getForecast(Duration.ZERO, 5d), 15d, DELTA);
+    }
+
+    @Test
+    public void testForecastNotNegative() {
+        DockerHostLoad falling = new DockerHostLoad(location, 1d, 1d);
+        falling.sample(50d, 0L);
+        falling.sample(0d, 1000L);
+        assertEquals(falling.getTrend(), -50d, DELTA);
+        assertEquals(falling.getForecast(Duration.seconds(10), 5d), 0d, DELTA);
+    }
+
+    @Test
+    public void testForecastWithoutSamples() {
+        assertNull(load.getAverage());
+        assertNull(load.getPlacementLoad());
+        load.placed();
+        assertEquals(load.getForecast(Duration.seconds(10), 5d), 5d, DELTA);
+    }
+
+    @Test
+    public void testInFlightPlacementsUseSettledLoad() {
+        location.containers = 4;
+        load.sample(15d, 0L);
+        load.placed();
+        load.placed();
+
+        // Two settled containers share the current load, and each new one is expected to add as much
+        assertEquals(load.getInFlightCount(), 2);
+        assertEquals(load.getPlacementLoad(), 7.5d, DELTA);
+        assertEquals(load.getForecast(Duration.ZERO, 1d), 30d, DELTA);
+    }
+
+    @Test
+    public void testInFlightPlacementsExpireAfterSettlePeriod() {
+        long settle = DockerAttributes.DOCKER_HOST_LOAD_SETTLE_PERIOD.getDefaultValue().toMilliseconds();
+        long now = System.currentTimeMillis();
+        load.placed(now - settle - 1000L);
+        load.placed(now - settle / 2);
+        load.placed(now);
+
+        assertEquals(load.getInFlightCount(now), 2);
+        assertEquals(load.getInFlightCount(now + settle / 2 + 1000L), 1);
+        assertEquals(load.getInFlightCount(now + settle + 1000L), 0);
+    }
+
+    private static class LoadHostLocation extends DockerHostLocation {
+        private int containers = 0;
+
+        @Override
+        public int getContainerCount() {
+            return containers;
+        }
+
+        @Override
+        public Double getCpuUsage() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package brooklyn.location.docker;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+
+public class DockerHostLocationReservationTest {
+
+    private static final int MAX_CONTAINERS = 10;
+    private static final int THREADS = 32;
+
+    private ExecutorService executor;
+    private CountingHostLocation location;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(THREADS);
+        location = new CountingHostLocation();
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (executor != null) executor.shutdownNow();
+    }
+
+    @Test
+    public void testReserveUpToLimit() {
+        for (int i = 0; i < MAX_CONTAINERS; i++) {
+            assertTrue(location.reserve(MAX_CONTAINERS));
+        }
+        assertFalse(location.reserve(MAX_CONTAINERS));
+        assertEquals(location.getReservedCount(), MAX_CONTAINERS);
+        assertEquals(location.getAllocatedCount(), MAX_CONTAINERS);
+    }
+
+    @Test
+    public void testReleasedReservationFreesSlot() {
+        for (int i = 0; i < MAX_CONTAINERS; i++) {
+            assertTrue(location.reserve(MAX_CONTAINERS));
+        }
+        location.releaseReservation();
+        assertTrue(location.reserve(MAX_CONTAINERS));
+    }
+
+    @Test
+    public void testCommittedReservationStaysCounted() {
+        assertTrue(location.reserve(1));
+        location.addContainer();
+        assertEquals(location.getReservedCount(), 0);
+        assertEquals(location.getAllocatedCount(), 1);
+        assertFalse(location.reserve(1));
+    }
+
+    @Test
+    public void testCommitWithoutReservationReported() {
+        assertTrue(location.reserve(MAX_CONTAINERS));
+        location.addContainer();
+
+        // A second commit or release for the same placement holds no reservation
+        assertFalse(location.commitReservation());
+        assertFalse(location.releaseReservation());
+        assertEquals(location.getReservedCount(), 0);
+        assertEquals(location.getAllocatedCount(), 1);
+
+        assertTrue(location.reserve(MAX_CONTAINERS));
+        assertTrue(location.releaseReservation());
+        assertEquals(location.getAllocatedCount(), 1);
+    }
+
+    @Test
+    public void testStartingContainerKeepsHost() {
+        assertTrue(location.reserve(MAX_CONTAINERS));
+        location.addContainer();
+        assertFalse(location.drainIfUnreserved());
+        assertFalse(location.isDraining());
+
+        location.removeContainer();
+        assertTrue(location.drainIfUnreserved());
+        assertFalse(location.reserve(MAX_CONTAINERS));
+    }
+
+    @Test
+    public void testReservationKeepsHost() {
+        assertTrue(location.reserve(MAX_CONTAINERS));
+        assertFalse(location.drainIfUnreserved());
+        location.releaseReservation();
+        assertTrue(location.drainIfUnreserved());
+    }
+
+    /**
+     * Many placements race for the slots on one host. Each one that gets a reservation adds its
+     * container to the count before committing, as {@link DockerHostLocation#addContainer(java.util.Map)} does,
+     * and the count must never pass the limit.
+     */
+    @Test
+    public void testConcurrentPlacementNeverExceedsLimit() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger placed = new AtomicInteger();
+        final AtomicInteger highest = new AtomicInteger();
+        List<Future<?>> futures = Lists.newArrayList();
+        for (int i = 0; i < THREADS * 4; i++) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    if (location.reserve(MAX_CONTAINERS)) {
+                        placed.incrementAndGet();
+                        int count = location.addContainer();
+                        int previous;
+                        do {
+                            previous = highest.get();
+                        } while (count > previous && !highest.compareAndSet(previous, count));
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        assertEquals(placed.get(), MAX_CONTAINERS);
+        assertEquals(location.getContainerCount(), MAX_CONTAINERS);
+        assertEquals(location.getReservedCount(), 0);
+        assertTrue(highest.get() <= MAX_CONTAINERS, "Highest count " + highest.get());
+    }
+
+    /** A host location whose container count is a live counter, standing in for the container cluster. */
+    private static class CountingHostLocation extends DockerHostLocation {
+        private final AtomicInteger containers = new AtomicInteger();
+
+        @Override
+        public int getContainerCount() {
+            return containers.get();
+        }
+
+        /** Add a container to the count and commit its reservation. */
+        public int addContainer() {
+            int count = containers.incrementAndGet();
+            commitReservation();
+            return count;
+        }
+
+        /** Remove a container from the count, as a release does. */
+        public int removeContainer() {
+            return containers.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package brooklyn.location.docker;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import brooklyn.entity.BrooklynAppUnitTestSupport;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.BasicEntity;
+import brooklyn.entity.basic.SoftwareProcess;
+import brooklyn.entity.container.DockerAttributes;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.location.docker.DockerHostResources.Requirements;
+import brooklyn.location.jclouds.JcloudsLocationConfig;
+
+import com.google.common.collect.ImmutableMap;
+
+public class DockerHostResourcesTest extends BrooklynAppUnitTestSupport {
+
+    @Test
+    public void testRequirementsFromProvisioningProperties() {
+        Entity entity = app.createAndManageChild(EntitySpec.create(BasicEntity.class)
+                .configure(SoftwareProcess.PROVISIONING_PROPERTIES, ImmutableMap.<String, Object>of("minRam", 2048, "minCores", "2")));
+
+        Requirements requirements = Requirements.of(entity);
+        assertEquals(requirements.getCores(), 2d);
+        assertEquals(requirements.getMemory(), 2048);
+        assertEquals(requirements.getDisk(), 0);
+    }
+
+    @Test
+    public void testDockerMemoryOverridesMinRam() {
+        Entity entity = app.createAndManageChild(EntitySpec.create(BasicEntity.class)
+                .configure(DockerAttributes.DOCKER_MEMORY, 512)
+                .configure(JcloudsLocationConfig.MIN_RAM, 2048));
+
+        assertEquals(Requirements.of(entity).getMemory(), 512);
+    }
+
+    @Test
+    public void testCpuSharesUsedWithoutCores() {
+        Entity entity = app.createAndManageChild(EntitySpec.create(BasicEntity.class)
+                .configure(DockerAttributes.DOCKER_CPU_SHARES, 512));
+
+        assertEquals(Requirements.of(entity).getCores(), 0.5d);
+    }
+
+    @Test
+    public void testCoresOverrideCpuShares() {
+        Entity entity = app.createAndManageChild(EntitySpec.create(BasicEntity.class)
+                .configure(DockerAttributes.DOCKER_CPU_SHARES, 512)
+                .configure(JcloudsLocationConfig.MIN_CORES, 4));
+
+        assertEquals(Requirements.of(entity).getCores(), 4d);
+    }
+
+    @Test
+    public void testFitsUnboundedDimensions() {
+        Requirements free = new Requirements(1d, null, null, null);
+        assertTrue(free.fits(new Requirements(1d, 8192, 100, 10)));
+        assertFalse(free.fits(new Requirements(1.5d, 0, 0, 0)));
+    }
+}
@@ -0,0 +1,74 @@
+package brooklyn.location.docker;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.util.os.Os;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+public class DockerImageCacheTest {
+
+    private File directory;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        directory = Files.createTempDir();
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (directory != null) Os.deleteRecursively(directory);
+    }
+
+    @Test
+    public void testKeyIgnoresMapOrder() {
+        assertEquals(DockerImageCache.key("content", ImmutableMap.of("a", 1, "b", 2)),
+                DockerImageCache.key("content", ImmutableMap.of("b", 2, "a", 1)));
+    }
+
+    @Test
+    public void testKeySeparatesParts() {
+        assertNotEquals(DockerImageCache.key("ab", "c"), DockerImageCache.key("a", "bc"));
+    }
+
+    @Test
+    public void testStreamHashFollowsContent() {
+        assertEquals(DockerImageCache.hash(new ByteArrayInputStream(new byte[] { 1, 2, 3 })),
+                DockerImageCache.hash(new ByteArrayInputStream(new byte[] { 1, 2, 3 })));
+        assertNotEquals(DockerImageCache.hash(new ByteArrayInputStream(new byte[] { 1, 2, 3 })),
+                DockerImageCache.hash(new ByteArrayInputStream(new byte[] { 1, 2, 4 })));
+    }
+
+    @Test
+    public void testDirectoryHashFollowsContent() throws Exception {
+        Files.write("FROM ubuntu", new File(directory, "Dockerfile"), Charsets.UTF_8);
+        File scripts = new File(directory, "scripts");
+        scripts.mkdir();
+        Files.write("echo hello", new File(scripts, "run.sh"), Charsets.UTF_8);
+        String before = DockerImageCache.hash(directory);
+        assertEquals(DockerImageCache.hash(directory), before);
+
+        Files.write("echo goodbye", new File(scripts, "run.sh"), Charsets.UTF_8);
+        assertNotEquals(DockerImageCache.hash(directory), before);
+    }
+
+    @Test
+    public void testBaseImage() {
+        assertEquals(DockerImageCache.getBaseImage("# comment\nfrom ubuntu:14.04\nRUN true\n"), Optional.of("ubuntu:14.04"));
+        assertEquals(DockerImageCache.getBaseImage("FROM registry:5000/team/base\n"), Optional.of("registry:5000/team/base"));
+        assertFalse(DockerImageCache.getBaseImage("FROM ${fullyQualifiedImageName}\n").isPresent());
+        assertFalse(DockerImageCache.getBaseImage("RUN true\n").isPresent());
+    }
+}
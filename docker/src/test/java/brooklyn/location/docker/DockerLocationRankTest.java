@@ -0,0 +1,80 @@
+package brooklyn.location.docker;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import brooklyn.entity.Entity;
+import brooklyn.location.docker.strategy.AbstractDockerPlacementStrategy;
+import brooklyn.location.docker.strategy.DockerAwareScoringStrategy;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class DockerLocationRankTest {
+
+    private final DockerHostLocation first = new DockerHostLocation();
+    private final DockerHostLocation second = new DockerHostLocation();
+    private final List<DockerHostLocation> hosts = ImmutableList.of(first, second);
+
+    @Test
+    public void testSmallDifferenceIsNotAmplified() {
+        DockerAwareScoringStrategy cpu = new FixedScores(ImmutableMap.of(first, -0.50d, second, -0.51d), 1d);
+        double[] total = DockerLocation.combine(ImmutableList.of(cpu), hosts, null);
+        assertEquals(total[0], 0.01d, 1e-9);
+        assertEquals(total[1], 0d, 1e-9);
+    }
+
+    @Test
+    public void testSmallDifferenceDoesNotOutweighLargeOne() {
+        DockerAwareScoringStrategy cpu = new FixedScores(ImmutableMap.of(first, -0.50d, second, -0.51d), 1d);
+        DockerAwareScoringStrategy containers = new FixedScores(ImmutableMap.of(first, -4d, second, -2d), 1d);
+        double[] total = DockerLocation.combine(ImmutableList.of(cpu, containers), hosts, null);
+        assertTrue(total[1] > total[0], "Totals " + total[0] + ", " + total[1]);
+    }
+
+    @Test
+    public void testLargeSpreadIsNormalised() {
+        DockerAwareScoringStrategy containers = new FixedScores(ImmutableMap.of(first, -10d, second, -2d), 2d);
+        double[] total = DockerLocation.combine(ImmutableList.of(containers), hosts, null);
+        assertEquals(total[0], 0d, 1e-9);
+        assertEquals(total[1], 2d, 1e-9);
+    }
+
+    @Test
+    public void testEqualScoresAreIgnored() {
+        DockerAwareScoringStrategy same = new FixedScores(ImmutableMap.of(first, 3d, second, 3d), 1d);
+        double[] total = DockerLocation.combine(ImmutableList.of(same), hosts, null);
+        assertEquals(total[0], 0d);
+        assertEquals(total[1], 0d);
+    }
+
+    private static class FixedScores extends AbstractDockerPlacementStrategy implements DockerAwareScoringStrategy {
+        private final Map<DockerHostLocation, Double> scores;
+        private final double weight;
+
+        public FixedScores(Map<DockerHostLocation, Double> scores, double weight) {
+            this.scores = scores;
+            this.weight = weight;
+        }
+
+        @Override
+        public boolean accept(DockerHostLocation location, Entity context) { return true; }
+
+        @Override
+        public double score(DockerHostLocation location, Entity context) { return scores.get(location); }
+
+        @Override
+        public double getWeight() { return weight; }
+
+        @Override
+        public double getScale() { return 1d; }
+
+        @Override
+        public List<DockerHostLocation> filterLocations(List<DockerHostLocation> locations, Entity context) { return locations; }
+    }
+}
@@ -0,0 +1,55 @@
+package brooklyn.location.docker;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class DockerPermitsTest {
+
+    @Test
+    public void testAcquireUpToLimit() {
+        DockerPermits permits = new DockerPermits(2);
+        assertTrue(permits.acquire().isDone());
+        assertTrue(permits.acquire().isDone());
+        assertFalse(permits.acquire().isDone());
+        assertEquals(permits.getAvailable(), 0);
+        assertEquals(permits.getWaiting(), 1);
+    }
+
+    @Test
+    public void testReleasePassesPermitInOrder() {
+        DockerPermits permits = new DockerPermits(1);
+        permits.acquire();
+        ListenableFuture<Void> first = permits.acquire();
+        ListenableFuture<Void> second = permits.acquire();
+
+        permits.release();
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+
+        permits.release();
+        assertTrue(second.isDone());
+
+        permits.release();
+        assertEquals(permits.getAvailable(), 1);
+        assertEquals(permits.getWaiting(), 0);
+    }
+
+    @Test
+    public void testCancelledWaiterSkipped() {
+        DockerPermits permits = new DockerPermits(1);
+        permits.acquire();
+        ListenableFuture<Void> cancelled = permits.acquire();
+        ListenableFuture<Void> waiting = permits.acquire();
+        cancelled.cancel(false);
+
+        permits.release();
+        assertTrue(waiting.isDone());
+        assertFalse(waiting.isCancelled());
+        assertEquals(permits.getAvailable(), 0);
+    }
+}
@@ -0,0 +1,63 @@
+package brooklyn.location.docker;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import java.io.File;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.location.docker.DockerPlacementTrace.HostState;
+import brooklyn.location.docker.DockerPlacementTrace.Request;
+import brooklyn.location.docker.strategy.DockerAwarePlacementStrategy;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class DockerPlacementTraceTest {
+
+    private File file;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        file = File.createTempFile("placement", ".trace");
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (file != null) file.delete();
+    }
+
+    @Test
+    public void testTraceIsAppended() {
+        record(new DockerPlacementTrace(file), "first");
+        record(new DockerPlacementTrace(file), "second");
+
+        List<Request> requests = DockerPlacementTrace.read(file);
+        assertEquals(requests.size(), 2);
+        assertEquals(requests.get(0).flags.get("imageId"), "first");
+        assertEquals(requests.get(1).flags.get("imageId"), "second");
+    }
+
+    @Test
+    public void testSecretFlagsAreMasked() {
+        DockerPlacementTrace trace = new DockerPlacementTrace(file);
+        trace.record(null, ImmutableMap.of("password", "hunter2", "imageId", "image"),
+                ImmutableList.<DockerAwarePlacementStrategy>of(), ImmutableList.<HostState>of(), null, Stopwatch.createStarted());
+        trace.close();
+
+        Request request = DockerPlacementTrace.read(file).get(0);
+        assertFalse(request.flags.get("password").contains("hunter2"));
+        assertEquals(request.flags.get("imageId"), "image");
+    }
+
+    private void record(DockerPlacementTrace trace, String imageId) {
+        trace.record(null, ImmutableMap.of("imageId", imageId),
+                ImmutableList.<DockerAwarePlacementStrategy>of(), ImmutableList.<HostState>of(), null, Stopwatch.createStarted());
+        trace.close();
+    }
+}
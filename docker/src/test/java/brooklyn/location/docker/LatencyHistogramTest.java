@@ -0,0 +1,58 @@
+package brooklyn.location.docker;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import brooklyn.location.docker.DockerPlacementStatistics.LatencyHistogram;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmptySummary() {
+        Map<String, Double> summary = new LatencyHistogram().summary();
+        assertEquals(summary.get("count"), 0d);
+        assertEquals(summary.get("mean"), 0d);
+        assertEquals(summary.get("p99"), 0d);
+        assertEquals(summary.get("max"), 0d);
+    }
+
+    @Test
+    public void testPercentilesUseBucketBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(80L);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(4000L);
+        }
+        Map<String, Double> summary = histogram.summary();
+        assertEquals(summary.get("count"), 100d);
+        assertEquals(summary.get("p50"), 0.1d);
+        assertEquals(summary.get("p95"), 4d);
+        assertEquals(summary.get("p99"), 4d);
+        assertEquals(summary.get("max"), 4d);
+        assertEquals(summary.get("mean"), 0.472d);
+    }
+
+    @Test
+    public void testPercentileCappedAtMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1200L);
+        Map<String, Double> summary = histogram.summary();
+        assertEquals(summary.get("p50"), 1.2d);
+        assertEquals(summary.get("max"), 1.2d);
+    }
+
+    @Test
+    public void testValuesOnBoundary() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10L);
+        histogram.record(1000000000L);
+        Map<String, Double> summary = histogram.summary();
+        assertEquals(summary.get("p50"), 0.01d);
+        assertEquals(summary.get("p99"), 1000000d);
+    }
+}
@@ -0,0 +1,42 @@
+package brooklyn.location.docker.strategy;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class ZoneSpreadPlacementStrategyTest {
+
+    @Test
+    public void testEvenZonesAcceptAnyZone() {
+        Map<String, Integer> members = ImmutableMap.of("a", 1, "b", 1, "c", 1);
+        assertTrue(ZoneSpreadPlacementStrategy.withinSkew(members, "a", 1));
+        assertTrue(ZoneSpreadPlacementStrategy.withinSkew(members, "c", 1));
+    }
+
+    @Test
+    public void testFullerZoneRejectedAtMaxSkew() {
+        Map<String, Integer> members = ImmutableMap.of("a", 2, "b", 1, "c", 1);
+        assertFalse(ZoneSpreadPlacementStrategy.withinSkew(members, "a", 1));
+        assertTrue(ZoneSpreadPlacementStrategy.withinSkew(members, "b", 1));
+        assertTrue(ZoneSpreadPlacementStrategy.withinSkew(members, "a", 2));
+    }
+
+    @Test
+    public void testEmptyZoneHoldsBackOthers() {
+        Map<String, Integer> members = ImmutableMap.of("a", 1, "b", 0);
+        assertFalse(ZoneSpreadPlacementStrategy.withinSkew(members, "a", 1));
+        assertTrue(ZoneSpreadPlacementStrategy.withinSkew(members, "b", 1));
+    }
+
+    @Test
+    public void testUnknownZoneCountsAsEmpty() {
+        Map<String, Integer> members = ImmutableMap.of("a", 0, "b", 0);
+        assertTrue(ZoneSpreadPlacementStrategy.withinSkew(members, "", 1));
+        assertTrue(ZoneSpreadPlacementStrategy.withinSkew(ImmutableMap.<String, Integer>of(), "a", 1));
+    }
+}
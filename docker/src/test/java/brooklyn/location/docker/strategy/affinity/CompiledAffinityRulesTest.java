@@ -0,0 +1,120 @@
+package brooklyn.location.docker.strategy.affinity;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.BrooklynAppUnitTestSupport;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.BasicEntity;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.location.docker.DockerHostEntities;
+import brooklyn.location.docker.DockerHostLocation;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+public class CompiledAffinityRulesTest extends BrooklynAppUnitTestSupport {
+
+    private Entity entity;
+    private List<List<Entity>> hosts;
+    private List<String> rules;
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        TestApplication other = ApplicationBuilder.newManagedApp(TestApplication.class, mgmt);
+
+        entity = app.createAndManageChild(EntitySpec.create(BasicEntity.class).displayName("alpha-new"));
+        Entity alpha = app.createAndManageChild(EntitySpec.create(BasicEntity.class).displayName("alpha"));
+        Entity beta = app.createAndManageChild(EntitySpec.create(BasicEntity.class).displayName("beta"));
+        Entity test = app.createAndManageChild(EntitySpec.create(TestEntity.class).displayName("alpha-test"));
+        Entity remote = other.createAndManageChild(EntitySpec.create(BasicEntity.class).displayName("remote"));
+
+        hosts = ImmutableList.<List<Entity>>of(
+                ImmutableList.<Entity>of(),
+                ImmutableList.of(alpha),
+                ImmutableList.of(alpha, beta),
+                ImmutableList.of(test),
+                ImmutableList.of(alpha, test),
+                ImmutableList.of(remote),
+                ImmutableList.of(beta, remote));
+        rules = ImmutableList.of(
+                "TYPE",
+                "NOT TYPE",
+                "TYPE " + TestEntity.class.getName(),
+                "NOT TYPE TestEntity",
+                "NAME alpha",
+                "NOT NAME beta",
+                "ID",
+                "NOT ID " + alpha.getId(),
+                "APPLICATION",
+                "NOT APPLICATION",
+                "APPLICATION " + other.getId(),
+                "PREDICATE " + NamedAlpha.class.getName(),
+                "NOT PREDICATE " + NamedAlpha.class.getName(),
+                "EMPTY",
+                "NOT EMPTY");
+    }
+
+    @Test
+    public void testSingleRulesMatchAffinityRules() {
+        for (String rule : rules) {
+            assertParity(ImmutableList.of(rule));
+        }
+    }
+
+    @Test
+    public void testCombinedRulesMatchAffinityRules() {
+        for (String first : rules) {
+            for (String second : rules) {
+                assertParity(ImmutableList.of(first, second));
+            }
+        }
+    }
+
+    @Test
+    public void testPredicateRulesAreNotCached() {
+        List<String> predicate = ImmutableList.of("PREDICATE " + NamedAlpha.class.getName());
+        assertNotSame(CompiledAffinityRules.compile(predicate), CompiledAffinityRules.compile(predicate));
+
+        List<String> type = ImmutableList.of("NOT TYPE");
+        assertSame(CompiledAffinityRules.compile(type), CompiledAffinityRules.compile(type));
+    }
+
+    private void assertParity(List<String> ruleList) {
+        CompiledAffinityRules compiled = CompiledAffinityRules.compile(ruleList);
+        for (List<Entity> deployed : hosts) {
+            AffinityRules expected = AffinityRules.rulesFor(entity).parse(ruleList);
+            boolean allowed = deployed.isEmpty() ? expected.allowEmptyLocations() : Iterables.all(deployed, expected);
+            assertEquals(compiled.allows(entity, index(deployed)), allowed, "Rules " + ruleList + " on " + deployed);
+        }
+    }
+
+    private DockerHostEntities index(List<Entity> deployed) {
+        DockerHostEntities index = new DockerHostEntities(new DockerHostLocation());
+        for (Entity each : deployed) {
+            index.add(each);
+        }
+        return index;
+    }
+
+    public static class NamedAlpha implements Predicate<Entity> {
+        @Override
+        public boolean apply(@Nullable Entity input) {
+            return input.getDisplayName().startsWith("alpha");
+        }
+    }
+}